@@ -0,0 +1,194 @@
+#!/usr/bin/env python3
+import sys, random, socket, struct, importlib.util, time
+from subprocess import Popen, run, PIPE, STDOUT, DEVNULL
+from getopt import getopt, GetoptError
+from os import getcwd, makedirs
+from os.path import abspath, dirname, exists, join
+
+USAGE = """\
+Usage: python3 genrepo.py OPTIONS DIR
+
+Create a gitlet repository with a synthetic history in the new directory
+DIR, by running gitlet commands on files it writes itself.  The same
+options and seed always give the same history.
+
+   OPTIONS may include
+       --commits=N      Number of commits after the first (default 100).
+       --files=N        Number of tracked files (default 100).
+       --size=BYTES     Size of each file (default 1024).
+       --branches=N     Number of branches besides master (default 0).
+                        Commits go to master and the branches in turn.
+       --merge-every=K  Merge a branch into master after every K commits
+                        made on it; 0 never merges (default 0).
+       --churn=N        Files changed by each commit (default 1).
+       --seed=N         Seed of the random contents (default 0).
+       --progdir=DIR    Directory or JAR file containing the gitlet
+                        application (default is ..).
+       --verbose        Print each command and its output.
+
+The first commit adds every file.  Each branch owns the files whose number
+is congruent to its own modulo the number of branches plus one, and
+changes only those, so merges never conflict.  The commands run in one
+"java gitlet.Main server" process, so that large histories are quick to
+build.
+"""
+
+CLIENT = join(dirname(dirname(abspath(__file__))), "gitlet-client.py")
+
+LINE = 64
+
+def loadClient():
+    """Return the gitlet-client.py module, whose protocol Gitlet uses."""
+    spec = importlib.util.spec_from_file_location("gitlet_client", CLIENT)
+    client = importlib.util.module_from_spec(spec)
+    spec.loader.exec_module(client)
+    return client
+
+class Gitlet:
+    """Runs gitlet commands in the working directory DIR, with the gitlet
+    application in PROGDIR.  Each command starts a JVM of its own unless
+    SERVER, in which case all but init run in one server process, started
+    by the first.  Call close() to stop the server."""
+
+    def __init__(self, dir, progdir, server=False, verbose=False):
+        self.dir = abspath(dir)
+        self.progdir = abspath(progdir)
+        self.verbose = verbose
+        self.server = None
+        self.client = loadClient() if server else None
+
+    def __call__(self, *args):
+        """Run the command ARGS and return its output."""
+        if self.client is None or args[0] == "init":
+            out = run(["java", "-cp", self.progdir, "gitlet.Main"]
+                      + list(args), cwd=self.dir, stdin=DEVNULL,
+                      stdout=PIPE, stderr=STDOUT,
+                      universal_newlines=True).stdout
+        else:
+            out = self.request(args)
+        if self.verbose:
+            print("> " + " ".join(args))
+            print(out, end="")
+        return out
+
+    def request(self, args):
+        """Run the command ARGS on the server and return its output."""
+        if self.server is None:
+            self.server = Popen(["java", "-cp", self.progdir, "gitlet.Main",
+                                 "server"], cwd=self.dir, stdin=DEVNULL,
+                                stdout=PIPE, stderr=STDOUT,
+                                universal_newlines=True)
+            line = self.server.stdout.readline()
+            if not line.startswith("Serving"):
+                self.close()
+                raise ValueError("could not start server: " + line.strip())
+        client = self.client
+        conn = socket.socket(socket.AF_UNIX, socket.SOCK_STREAM)
+        out = b""
+        try:
+            conn.connect(join(self.dir, client.SOCKET_FILE))
+            conn.sendall(client.request(list(args)))
+            while True:
+                kind, = struct.unpack(">b", client.readFully(conn, 1))
+                size, = struct.unpack(">i", client.readFully(conn, 4))
+                if kind == client.EXIT:
+                    return out.decode("utf-8")
+                out += client.readFully(conn, size)
+        finally:
+            conn.close()
+
+    def close(self):
+        """Stop the server, if one is running."""
+        if self.server is not None:
+            self.server.terminate()
+            self.server.wait()
+            self.server = None
+
+def fileName(n):
+    return "file{:06d}.txt".format(n)
+
+def contents(rng, size):
+    """Return SIZE bytes of random lines of text, drawn from RNG."""
+    chars = rng.choices("abcdefghijklmnopqrstuvwxyz ", k=size)
+    for i in range(LINE - 1, size, LINE):
+        chars[i] = "\n"
+    return "".join(chars)
+
+def writeFile(dir, n, rng, size):
+    with open(join(dir, fileName(n)), "w") as out:
+        out.write(contents(rng, size))
+
+def generate(dir, gitlet, commits=100, files=100, size=1024, branches=0,
+             merge_every=0, churn=1, seed=0):
+    """Build the history described in USAGE in the new working directory
+    DIR, running commands with GITLET."""
+    if files < branches + 1 or churn < 1:
+        raise ValueError("need at least one file per branch and a churn "
+                         "of at least 1")
+    rng = random.Random(seed)
+    makedirs(dir)
+    gitlet("init")
+    for n in range(files):
+        writeFile(dir, n, rng, size)
+        gitlet("add", fileName(n))
+    gitlet("commit", "generated files")
+    names = ["master"] + ["branch{}".format(b)
+                          for b in range(1, branches + 1)]
+    for name in names[1:]:
+        gitlet("branch", name)
+    owned = [list(range(b, files, len(names))) for b in range(len(names))]
+    made = [0] * len(names)
+    current = 0
+    for i in range(commits):
+        b = i % len(names)
+        if b != current:
+            gitlet("checkout", names[b])
+            current = b
+        for n in rng.sample(owned[b], min(churn, len(owned[b]))):
+            writeFile(dir, n, rng, size)
+            gitlet("add", fileName(n))
+        gitlet("commit", "commit {} on {}".format(i, names[b]))
+        made[b] += 1
+        if b != 0 and merge_every and made[b] % merge_every == 0:
+            gitlet("checkout", "master")
+            current = 0
+            gitlet("merge", names[b])
+    if current != 0:
+        gitlet("checkout", "master")
+
+if __name__ == "__main__":
+    options = { "commits": 100, "files": 100, "size": 1024, "branches": 0,
+                "merge_every": 0, "churn": 1, "seed": 0 }
+    prog_dir = None
+    verbose = False
+    try:
+        opts, args = \
+            getopt(sys.argv[1:], '',
+                   ['commits=', 'files=', 'size=', 'branches=',
+                    'merge-every=', 'churn=', 'seed=', 'progdir=',
+                    'verbose'])
+        for opt, val in opts:
+            if opt == "--progdir":
+                prog_dir = val
+            elif opt == "--verbose":
+                verbose = True
+            else:
+                options[opt[2:].replace("-", "_")] = int(val)
+    except (GetoptError, ValueError):
+        print(USAGE)
+        sys.exit(1)
+    if len(args) != 1 or exists(args[0]):
+        print(USAGE)
+        sys.exit(1)
+    if prog_dir is None:
+        prog_dir = dirname(abspath(getcwd()))
+    start = time.time()
+    gitlet = Gitlet(args[0], prog_dir, server=True, verbose=verbose)
+    try:
+        generate(args[0], gitlet, **options)
+    except ValueError as excp:
+        print(excp.args[0], file=sys.stderr)
+        sys.exit(1)
+    finally:
+        gitlet.close()
+    print("Generated {} in {:.1f}s.".format(args[0], time.time() - start))
@@ -0,0 +1,89 @@
+package gitlet;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Building a commit from the staging area with Commit.setBlobs: reading
+ * the parent, hashing and storing each staged file, and clearing the
+ * staging area. Each invocation starts with a cold repository context and
+ * a freshly staged set of files.
+ * @author Sam Khano Tim Chan
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class CommitBenchmark {
+
+    /** Number of files the parent commit tracks. */
+    @Param({ "100", "10000" })
+    public int tracked;
+
+    /** Number of files staged. */
+    @Param({ "1", "100" })
+    public int staged;
+
+    /** Working directory of the repository. */
+    private File _work;
+
+    /** The repository, reopened for each invocation. */
+    private Repository _repository;
+
+    /** Id of the parent commit. */
+    private String _parent;
+
+    /** Make the parent commit. */
+    @Setup
+    public void setUp() {
+        _work = Fixtures.init();
+        Repository repository = Fixtures.open(_work);
+        _parent = Fixtures.chain(repository,
+                repository.loadRepo().getCurrentCommit(), 1, "parent",
+                Fixtures.blobs(tracked));
+    }
+
+    /** Stage the files and reopen the repository. */
+    @Setup(Level.Invocation)
+    public void stage() {
+        _repository = Fixtures.open(_work);
+        for (int i = 0; i < staged; i++) {
+            Utils.writeContents(
+                    new File(_repository.stagedDir() + "staged" + i),
+                    ("contents " + i + "\n").getBytes());
+        }
+    }
+
+    /** Delete the repository. */
+    @TearDown
+    public void tearDown() {
+        Fixtures.delete(_work);
+    }
+
+    /**
+     * Build a commit of the staged files on top of the parent.
+     * @return commit
+     */
+    @Benchmark
+    public Commit setBlobs() {
+        Commit c = new Commit("bench", Fixtures.TIME, _parent);
+        c.setBlobs(_repository);
+        return c;
+    }
+}
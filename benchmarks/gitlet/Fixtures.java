@@ -0,0 +1,98 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Repositories and histories for the benchmarks, built directly through
+ * Repository rather than by running commands, so that large ones are
+ * quick to make.
+ * @author Sam Khano Tim Chan
+ */
+final class Fixtures {
+
+    /** Time stamp given to every synthetic commit. */
+    static final String TIME = "Thu Jan 1 00:00:00 1970 -0000";
+
+    /** Not instantiable. */
+    private Fixtures() {
+    }
+
+    /**
+     * Return the working directory of a new, empty repository in a
+     * temporary directory.
+     * @return working directory
+     */
+    static File init() {
+        try {
+            File work = Files.createTempDirectory("gitlet-bench").toFile();
+            Gitlet.init(work.getPath());
+            return work;
+        } catch (IOException excp) {
+            throw new UncheckedIOException(excp);
+        }
+    }
+
+    /**
+     * Return a new context for the repository whose working directory is
+     * WORK, with no commits cached, and make it the current one.
+     * @param work working directory
+     * @return repository
+     */
+    static Repository open(File work) {
+        Repository repository = new Repository(
+                new File(work, ".gitlet").getPath() + File.separator);
+        Main.setRepository(repository);
+        return repository;
+    }
+
+    /**
+     * Return a map of FILES file names to blob ids, none of which need be
+     * stored.
+     * @param files number of files
+     * @return file name to blob id
+     */
+    static Map<String, String> blobs(int files) {
+        TreeMap<String, String> blobs = new TreeMap<>();
+        for (int i = 0; i < files; i++) {
+            blobs.put("dir" + (i % 100) + "/file" + i + ".txt",
+                    Utils.sha1("blobs", Integer.toString(i)));
+        }
+        return blobs;
+    }
+
+    /**
+     * Store a chain of LENGTH commits in REPOSITORY on top of the commit
+     * PARENT, each tracking BLOBS, with log messages starting with TAG,
+     * and return the id of the last.
+     * @param repository repository
+     * @param parent id of the first commit's parent
+     * @param length number of commits
+     * @param tag log message prefix, distinct for each chain
+     * @param blobs file name to blob id
+     * @return id of the last commit
+     */
+    static String chain(Repository repository, String parent, int length,
+            String tag, Map<String, String> blobs) {
+        for (int i = 0; i < length; i++) {
+            Commit c = new Commit(tag + " " + i, TIME, parent);
+            c.setBlobs(blobs);
+            parent = repository.saveCommit(c);
+        }
+        return parent;
+    }
+
+    /**
+     * Delete the directory WORK and everything in it.
+     * @param work directory
+     */
+    static void delete(File work) {
+        if (work != null && work.exists()) {
+            Utils.recursiveDelete(work);
+        }
+    }
+}
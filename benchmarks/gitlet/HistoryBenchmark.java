@@ -0,0 +1,100 @@
+package gitlet;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Walking a synthetic history: expanding an abbreviated commit id with
+ * Main.getFullId, and finding the split point of two branches with
+ * Main.findSplitCommit. The history is two branches of equal length that
+ * diverge from the initial commit. Each invocation starts with a cold
+ * repository context, as a command run from the shell does.
+ * @author Sam Khano Tim Chan
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class HistoryBenchmark {
+
+    /** Number of commits on each branch. */
+    @Param({ "100", "1000", "5000" })
+    public int depth;
+
+    /** Working directory of the repository. */
+    private File _work;
+
+    /** Head commit ids of the two branches. */
+    private String _master, _other;
+
+    /** The abbreviation expanded, of the last commit id in order. */
+    private String _abbrev;
+
+    /** The repository, reopened for each invocation. */
+    private Repository _repository;
+
+    /** Make the history. */
+    @Setup
+    public void setUp() {
+        _work = Fixtures.init();
+        Repository repository = Fixtures.open(_work);
+        String initial = repository.loadRepo().getCurrentCommit();
+        _master = Fixtures.chain(repository, initial, depth, "master",
+                Fixtures.blobs(1));
+        _other = Fixtures.chain(repository, initial, depth, "other",
+                Fixtures.blobs(1));
+        repository.refs().update("other", null, _other);
+        List<String> ids = Utils.plainFilenamesIn(repository.commitDir());
+        _abbrev = ids.get(ids.size() - 1).substring(0, 8);
+    }
+
+    /** Reopen the repository. */
+    @Setup(Level.Invocation)
+    public void open() {
+        _repository = Fixtures.open(_work);
+    }
+
+    /** Delete the repository. */
+    @TearDown
+    public void tearDown() {
+        Fixtures.delete(_work);
+    }
+
+    /**
+     * Expand the abbreviated id, which lists every commit.
+     * @return full id
+     */
+    @Benchmark
+    public String getFullId() {
+        return Main.getFullId(_abbrev);
+    }
+
+    /**
+     * Find the split point of the two branches, which reads both
+     * histories.
+     * @return split point
+     */
+    @Benchmark
+    public Commit findSplitCommit() {
+        return Main.findSplitCommit(_repository.loadCommit(_master),
+                _repository.loadCommit(_other), _repository.loadRepo(),
+                "other");
+    }
+}
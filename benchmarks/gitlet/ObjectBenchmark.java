@@ -0,0 +1,75 @@
+package gitlet;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Storing and reading a commit with Utils.saveObj and Utils.loadObj, whose
+ * cost grows with the number of files the commit tracks.
+ * @author Sam Khano Tim Chan
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ObjectBenchmark {
+
+    /** Number of files the commit tracks. */
+    @Param({ "10", "1000", "100000" })
+    public int entries;
+
+    /** Directory holding the stored commit. */
+    private File _dir;
+
+    /** The commit stored. */
+    private Commit _commit;
+
+    /** Path of the stored commit. */
+    private String _path;
+
+    /** Make the commit and store it once, for loadCommit. */
+    @Setup
+    public void setUp() {
+        _dir = Fixtures.init();
+        _commit = new Commit("bench", Fixtures.TIME, null);
+        _commit.setBlobs(Fixtures.blobs(entries));
+        _path = new File(_dir, _commit.hashId()).getPath();
+        Utils.saveObj(_commit, _path);
+    }
+
+    /** Delete the stored commit. */
+    @TearDown
+    public void tearDown() {
+        Fixtures.delete(_dir);
+    }
+
+    /** Store the commit, replacing the copy stored before. */
+    @Benchmark
+    public void saveCommit() {
+        Utils.saveObj(_commit, _path);
+    }
+
+    /**
+     * Read the stored commit.
+     * @return commit
+     */
+    @Benchmark
+    public Commit loadCommit() {
+        return Utils.loadObj(new Commit(""), _path);
+    }
+}
@@ -0,0 +1,52 @@
+package gitlet;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Hashing a blob with Utils.sha1, as add and commit do for every file.
+ * @author Sam Khano Tim Chan
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class Sha1Benchmark {
+
+    /** Size of the blob in bytes: a small file and a large one. */
+    @Param({ "64", "4096", "1048576" })
+    public int size;
+
+    /** The blob hashed. */
+    private byte[] _blob;
+
+    /** Fill the blob with random bytes. */
+    @Setup
+    public void setUp() {
+        _blob = new byte[size];
+        new Random(size).nextBytes(_blob);
+    }
+
+    /**
+     * Hash the blob as a blob id.
+     * @return blob id
+     */
+    @Benchmark
+    public String blobId() {
+        return Utils.sha1("blobs", _blob);
+    }
+}
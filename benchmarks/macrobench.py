@@ -0,0 +1,244 @@
+#!/usr/bin/env python3
+import sys, re, csv, json, random, time, tempfile
+from getopt import getopt, GetoptError
+from itertools import product
+from os import getcwd
+from os.path import abspath, dirname, join
+from shutil import copytree, ignore_patterns, rmtree
+from statistics import mean, median
+
+from genrepo import Gitlet, generate, fileName, writeFile
+
+USAGE = """\
+Usage: python3 macrobench.py OPTIONS
+
+For each scale, generate a repository as genrepo.py does, then time the
+commands add, commit, status, log, checkout, reset, merge, push and fetch
+on it, and print one row per scale and command: the scale, the number of
+runs, and the least, median, mean and greatest time in seconds.
+
+   OPTIONS may include
+       --commits=N,...  Commit counts to try (default 100,1000).
+       --files=N,...    File counts to try (default 100,1000).  Every
+                        combination of commit and file count is a scale.
+       --size=BYTES     Size of each file (default 1024).
+       --branches=N     Branches besides master (default 2).
+       --merge-every=K  As for genrepo.py (default 5).
+       --repeat=N       Times each command is timed (default 5).
+       --server         Run the commands on a "java gitlet.Main server"
+                        process, measuring them without JVM start-up.
+                        By default each runs in a JVM of its own, as
+                        from the shell.
+       --format=FMT     csv (the default) or json.
+       --output=FILE    Write the results to FILE rather than the
+                        standard output.
+       --workdir=DIR    Make repositories under DIR (default: a new
+                        temporary directory).
+       --keep           Keep the repositories.
+       --progdir=DIR    Directory or JAR file containing the gitlet
+                        application (default is ..).
+       --verbose        Print each command and its output.
+
+Each command is timed on a repository left as it was before, apart from
+the commits made to give it something to do: commit, merge and push each
+time a fresh commit, checkout and reset move between two commits that
+differ in a tenth of the files and in every file, and fetch follows a
+commit made in the remote, which starts as a copy of the repository.
+"""
+
+COMMANDS = ["generate", "add", "commit", "status", "log", "checkout",
+            "reset", "merge", "push", "fetch"]
+
+FIELDS = ["commits", "files", "size", "branches", "merge_every", "mode",
+          "command", "runs", "min", "median", "mean", "max"]
+
+def timed(gitlet, *args):
+    """Run the command ARGS with GITLET and return the seconds it took."""
+    start = time.perf_counter()
+    gitlet(*args)
+    return time.perf_counter() - start
+
+def change(gitlet, dir, n, rng, size, message):
+    """Rewrite file N of the working directory DIR and commit it."""
+    writeFile(dir, n, rng, size)
+    gitlet("add", fileName(n))
+    gitlet("commit", message)
+
+def commitIds(gitlet):
+    """Return the ids of the head commit and of the first in its history."""
+    ids = re.findall(r"Commit ([0-9a-f]{40})", gitlet("log"))
+    return ids[0], ids[-1]
+
+def measure(gitlet, remote, dir, remoteDir, files, size, repeat):
+    """Time each command REPEAT times on the repository in DIR, run with
+    GITLET, which has FILES files of SIZE bytes, and return a dictionary
+    of each command's times.  REMOTE runs commands in REMOTEDIR, which
+    becomes the remote."""
+    rng = random.Random(1)
+    times = { name: [] for name in COMMANDS[1:] }
+    for r in range(repeat):
+        times["status"].append(timed(gitlet, "status"))
+        times["log"].append(timed(gitlet, "log"))
+    for r in range(repeat):
+        writeFile(dir, 0, rng, size)
+        times["add"].append(timed(gitlet, "add", fileName(0)))
+    gitlet("commit", "bench add")
+    for r in range(repeat):
+        writeFile(dir, r % files, rng, size)
+        gitlet("add", fileName(r % files))
+        times["commit"].append(timed(gitlet, "commit", "bench " + str(r)))
+
+    gitlet("branch", "bench")
+    for n in range(0, files, 10):
+        writeFile(dir, n, rng, size)
+        gitlet("add", fileName(n))
+    gitlet("commit", "bench checkout")
+    for r in range(repeat):
+        times["checkout"].append(timed(gitlet, "checkout", "bench"))
+        times["checkout"].append(timed(gitlet, "checkout", "master"))
+
+    head, first = commitIds(gitlet)
+    for r in range(repeat):
+        times["reset"].append(timed(gitlet, "reset", first))
+        times["reset"].append(timed(gitlet, "reset", head))
+
+    for r in range(repeat):
+        branch = "merge" + str(r)
+        gitlet("branch", branch)
+        gitlet("checkout", branch)
+        change(gitlet, dir, 0, rng, size, "bench merge theirs")
+        gitlet("checkout", "master")
+        change(gitlet, dir, 1, rng, size, "bench merge ours")
+        times["merge"].append(timed(gitlet, "merge", branch))
+
+    gitlet.close()
+    copytree(dir, remoteDir, ignore=ignore_patterns("server.sock", "lock"))
+    gitlet("add-remote", "origin", join(remoteDir, ".gitlet"))
+    for r in range(repeat):
+        change(gitlet, dir, r % files, rng, size, "bench push " + str(r))
+        times["push"].append(timed(gitlet, "push", "origin", "master"))
+    for r in range(repeat):
+        change(remote, remoteDir, r % files, rng, size,
+               "bench fetch " + str(r))
+        times["fetch"].append(timed(gitlet, "fetch", "origin", "master"))
+    return times
+
+def row(scale, mode, command, samples):
+    result = dict(scale, mode=mode, command=command, runs=len(samples),
+                  min=min(samples), median=median(samples),
+                  mean=mean(samples), max=max(samples))
+    for key in ["min", "median", "mean", "max"]:
+        result[key] = round(result[key], 4)
+    return result
+
+def runScale(scale, workdir, progdir, server, repeat, verbose):
+    """Generate the repository of SCALE under WORKDIR, time the commands
+    on it, and return the rows of results."""
+    dir = join(workdir, "repo-{commits}-{files}".format(**scale))
+    remoteDir = dir + "-remote"
+    gitlet = Gitlet(dir, progdir, server=server, verbose=verbose)
+    remote = Gitlet(remoteDir, progdir, server=server, verbose=verbose)
+    builder = Gitlet(dir, progdir, server=True, verbose=verbose)
+    try:
+        start = time.perf_counter()
+        generate(dir, builder, seed=0, **scale)
+        builder.close()
+        rows = [row(scale, "server" if server else "jvm", "generate",
+                    [time.perf_counter() - start])]
+        times = measure(gitlet, remote, dir, remoteDir, scale["files"],
+                        scale["size"], repeat)
+    finally:
+        builder.close()
+        gitlet.close()
+        remote.close()
+    for command in COMMANDS[1:]:
+        rows.append(row(scale, "server" if server else "jvm", command,
+                        times[command]))
+    return rows
+
+def write(rows, format, out):
+    if format == "json":
+        json.dump(rows, out, indent=1)
+        out.write("\n")
+    else:
+        writer = csv.DictWriter(out, FIELDS)
+        writer.writeheader()
+        writer.writerows(rows)
+
+if __name__ == "__main__":
+    commits = [100, 1000]
+    files = [100, 1000]
+    size = 1024
+    branches = 2
+    merge_every = 5
+    repeat = 5
+    server = False
+    format = "csv"
+    output = None
+    workdir = None
+    keep = False
+    prog_dir = None
+    verbose = False
+    try:
+        opts, args = \
+            getopt(sys.argv[1:], '',
+                   ['commits=', 'files=', 'size=', 'branches=',
+                    'merge-every=', 'repeat=', 'server', 'format=',
+                    'output=', 'workdir=', 'keep', 'progdir=', 'verbose'])
+        for opt, val in opts:
+            if opt == "--commits":
+                commits = [int(n) for n in val.split(",")]
+            elif opt == "--files":
+                files = [int(n) for n in val.split(",")]
+            elif opt == "--size":
+                size = int(val)
+            elif opt == "--branches":
+                branches = int(val)
+            elif opt == "--merge-every":
+                merge_every = int(val)
+            elif opt == "--repeat":
+                repeat = int(val)
+            elif opt == "--server":
+                server = True
+            elif opt == "--format":
+                format = val
+            elif opt == "--output":
+                output = val
+            elif opt == "--workdir":
+                workdir = val
+            elif opt == "--keep":
+                keep = True
+            elif opt == "--progdir":
+                prog_dir = val
+            elif opt == "--verbose":
+                verbose = True
+    except (GetoptError, ValueError):
+        print(USAGE)
+        sys.exit(1)
+    if args or format not in ("csv", "json") or repeat < 1 \
+       or min(files) < max(2, branches + 1):
+        print(USAGE)
+        sys.exit(1)
+    if prog_dir is None:
+        prog_dir = dirname(abspath(getcwd()))
+    workdir = abspath(tempfile.mkdtemp(prefix="gitlet-macro", dir=workdir))
+
+    rows = []
+    try:
+        for c, f in product(commits, files):
+            scale = { "commits": c, "files": f, "size": size,
+                      "branches": branches, "merge_every": merge_every }
+            print("Scale: {} commits, {} files...".format(c, f),
+                  file=sys.stderr)
+            rows += runScale(scale, workdir, prog_dir, server, repeat,
+                             verbose)
+    finally:
+        if keep:
+            print("Repositories kept in " + workdir, file=sys.stderr)
+        else:
+            rmtree(workdir, ignore_errors=True)
+    if output is None:
+        write(rows, format, sys.stdout)
+    else:
+        with open(output, "w", newline="") as out:
+            write(rows, format, out)
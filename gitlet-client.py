@@ -0,0 +1,54 @@
+#!/usr/bin/env python3
+"""Usage: python3 gitlet-client.py COMMAND OPERANDS ...
+
+Run a gitlet command on the server started in the current directory with
+"java gitlet.Main server", printing its output and exiting with its status
+just as "java gitlet.Main COMMAND OPERANDS ..." would, without starting a
+JVM.  See the description of the protocol in gitlet/Server.java.
+"""
+
+import socket, struct, sys
+from os.path import join
+
+SOCKET_FILE = join(".gitlet", "server.sock")
+
+EXIT, OUT, ERR = 0, 1, 2
+
+def readFully(conn, n):
+    data = b""
+    while len(data) < n:
+        chunk = conn.recv(n - len(data))
+        if not chunk:
+            raise EOFError("connection closed")
+        data += chunk
+    return data
+
+def request(args):
+    msg = struct.pack(">?i", sys.stderr.isatty(), len(args))
+    for arg in args:
+        data = arg.encode("utf-8")
+        msg += struct.pack(">i", len(data)) + data
+    return msg
+
+def run(args):
+    conn = socket.socket(socket.AF_UNIX, socket.SOCK_STREAM)
+    try:
+        conn.connect(SOCKET_FILE)
+        conn.sendall(request(args))
+        while True:
+            kind, = struct.unpack(">b", readFully(conn, 1))
+            size, = struct.unpack(">i", readFully(conn, 4))
+            if kind == EXIT:
+                return size
+            dest = sys.stderr if kind == ERR else sys.stdout
+            dest.buffer.write(readFully(conn, size))
+            dest.flush()
+    finally:
+        conn.close()
+
+if __name__ == "__main__":
+    try:
+        sys.exit(run(sys.argv[1:]))
+    except (OSError, EOFError):
+        print("Could not reach the gitlet server.", file=sys.stderr)
+        sys.exit(1)
@@ -0,0 +1,128 @@
+package gitlet;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs a script of gitlet commands, one per line, in a single process.
+ * Each line is split into words the way a shell would split it: words are
+ * separated by blanks, and text between single or double quotes, or after
+ * a backslash, is taken literally, so that a line such as
+ * commit "fix the tests" carries a message with spaces. Blank lines and
+ * lines starting with # are skipped. Every command behaves as if it had
+ * been run on its own, printing its own output, and one failing, however
+ * it fails, does not stop the ones after it; the repository's caches stay
+ * warm in between. After each command, a status line #N ok or #N error,
+ * where N is the command's line number in the script, tells the caller
+ * which command each result belongs to.
+ * @author Sam Khano Tim Chan
+ */
+class Batch {
+
+    /**
+     * Run the commands read from IN until its end.
+     * @param in script
+     * @throws IOException if the script cannot be read
+     */
+    static void run(BufferedReader in) throws IOException {
+        int number = 0;
+        for (String line = in.readLine(); line != null;
+             line = in.readLine()) {
+            number += 1;
+            if (line.trim().startsWith("#")) {
+                continue;
+            }
+            List<String> words;
+            try {
+                words = split(line);
+            } catch (IllegalArgumentException excp) {
+                System.err.println(excp.getMessage());
+                status(number, false);
+                continue;
+            }
+            if (words.isEmpty()) {
+                continue;
+            }
+            boolean ok = false;
+            try {
+                String command = words.get(0);
+                if (command.equals("batch") || command.equals("server")
+                        || command.equals("serve")) {
+                    throw new UsageException(
+                            "Cannot run that command in a batch.");
+                }
+                Main.run(words.toArray(new String[0]));
+                ok = true;
+            } catch (GitletException excp) {
+                System.out.flush();
+                System.err.println(excp.getMessage());
+            } catch (RuntimeException excp) {
+                System.out.flush();
+                System.err.println(excp);
+            }
+            status(number, ok);
+        }
+    }
+
+    /**
+     * Print the status line of the command on line NUMBER of the script,
+     * which succeeded iff OK, once its output and errors are written.
+     * @param number line number
+     * @param ok true iff the command succeeded
+     */
+    private static void status(int number, boolean ok) {
+        System.err.flush();
+        System.out.println("#" + number + (ok ? " ok" : " error"));
+        System.out.flush();
+    }
+
+    /**
+     * Return the words of LINE.
+     * @param line command line
+     * @return words
+     * @throws IllegalArgumentException if a quote is not closed
+     */
+    static List<String> split(String line) {
+        ArrayList<String> words = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        boolean inWord = false;
+        char quote = 0;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                } else if (c == '\\' && quote == '"'
+                           && i + 1 < line.length()) {
+                    word.append(line.charAt(++i));
+                } else {
+                    word.append(c);
+                }
+            } else if (Character.isWhitespace(c)) {
+                if (inWord) {
+                    words.add(word.toString());
+                    word.setLength(0);
+                    inWord = false;
+                }
+            } else {
+                inWord = true;
+                if (c == '"' || c == '\'') {
+                    quote = c;
+                } else if (c == '\\' && i + 1 < line.length()) {
+                    word.append(line.charAt(++i));
+                } else {
+                    word.append(c);
+                }
+            }
+        }
+        if (quote != 0) {
+            throw new IllegalArgumentException("Unmatched quote.");
+        }
+        if (inWord) {
+            words.add(word.toString());
+        }
+        return words;
+    }
+}
@@ -0,0 +1,75 @@
+package gitlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+/** Tests for splitting batch script lines into words and running them.
+ *  @author Sam Khano Tim Chan
+ */
+public class BatchTest {
+
+    @Test
+    public void splitTest() {
+        assertEquals(Arrays.asList("add", "f.txt"),
+                Batch.split("  add   f.txt "));
+        assertEquals(Arrays.asList("commit", "two words"),
+                Batch.split("commit \"two words\""));
+        assertEquals(Arrays.asList("commit", "it's \"quoted\""),
+                Batch.split("commit \"it's \\\"quoted\\\"\""));
+        assertEquals(Arrays.asList("commit", "a b\\c"),
+                Batch.split("commit 'a b\\c'"));
+        assertEquals(Arrays.asList("find", "a b"),
+                Batch.split("find a\\ b"));
+        assertEquals(Arrays.asList("commit", ""), Batch.split("commit ''"));
+        assertEquals(Collections.emptyList(), Batch.split("   "));
+    }
+
+    @Test
+    public void unmatchedTest() {
+        try {
+            Batch.split("commit \"unclosed");
+            fail();
+        } catch (IllegalArgumentException excp) {
+            assertEquals("Unmatched quote.", excp.getMessage());
+        }
+    }
+
+    @Test
+    public void statusTest() throws IOException {
+        String work = "batch-work";
+        Utils.recursiveDelete(new File(work));
+        new File(work, "dir").mkdirs();
+        Utils.writeContents(new File(work, "f.txt"), "one\n".getBytes());
+        Main.setRepository(new Repository(work + "/.gitlet/"));
+        PrintStream stdout = System.out;
+        PrintStream stderr = System.err;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        try {
+            System.setOut(new PrintStream(out, true));
+            System.setErr(new PrintStream(err, true));
+            Main.init();
+            Batch.run(new BufferedReader(new StringReader(
+                    "add dir\n\n# comment\nadd f.txt\nrm nosuch\n")));
+        } finally {
+            System.setOut(stdout);
+            System.setErr(stderr);
+            Main.setRepository(new Repository(Main.DEFAULT_GIT_DIR));
+            Utils.recursiveDelete(new File(work));
+        }
+        assertEquals("#1 error\n#4 ok\n#5 error\n", out.toString());
+        assertTrue(err.toString().contains("must be a normal file"));
+    }
+}
@@ -4,6 +4,7 @@ import java.io.File;
 import java.io.Serializable;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.TreeSet;
 
 /**
@@ -13,6 +14,9 @@ import java.util.TreeSet;
 
 public class Commit implements Serializable {
 
+    /** Pinned so that commits written by earlier builds stay readable. */
+    private static final long serialVersionUID = 3730556756878806374L;
+
     /**
      * Creates an initial commit with respective metadata
      * and no parent.
@@ -60,21 +64,23 @@ public class Commit implements Serializable {
         return _blobs;
     }
 
-    /** Set the mappings between staged files and respective blobs
-     *  as well as the files this commit tracks. */
-    public void setBlobs() {
+    /** Set the mappings between the files staged in REPOSITORY and
+     *  respective blobs as well as the files this commit tracks.
+     *  @param repository repository committed to */
+    public void setBlobs(Repository repository) {
         Commit parent = null;
         TreeSet<String> parentTracked = null;
-        List<String> stagedFiles = Utils.plainFilenamesIn(Main.getStagedDir());
+        List<String> stagedFiles = Utils
+                .plainFilenamesIn(repository.stagedDir());
         List<String> removedFiles = Utils
-                .plainFilenamesIn(Main.getRemovedDir());
+                .plainFilenamesIn(repository.removedDir());
         if (stagedFiles.size() == 0 && removedFiles.size() == 0
                 && _parent != null) {
-            Main.error("No changes added to the commit.");
+            throw new StateException("No changes added to the commit.");
         }
 
         if (_parent != null) {
-            parent = Utils.loadObj(this, Main.getCommitDir() + _parent);
+            parent = repository.loadCommit(_parent);
             parentTracked = parent._tracked;
             for (String tracked : parentTracked) {
                 if (!stagedFiles.contains(tracked)
@@ -86,19 +92,29 @@ public class Commit implements Serializable {
         }
 
         for (String file : stagedFiles) {
-            File f = new File(Main.getStagedDir() + file);
+            File f = new File(repository.stagedDir() + file);
             byte[] blob = Utils.readContents(f);
             String blobHash = Utils.sha1("blobs", blob);
-            addBlob(blob, file, blobHash);
-            f.delete();
+            addBlob(repository, blob, file, blobHash);
+            repository.delete(f);
         }
 
         for (String remove : removedFiles) {
-            File rm = new File(Main.getRemovedDir() + remove);
-            rm.delete();
+            File rm = new File(repository.removedDir() + remove);
+            repository.delete(rm);
         }
     }
 
+    /**
+     * Set the mappings between files and blobs, and so the files this
+     * commit tracks, to BLOBS, whose blobs must already be stored.
+     * @param blobs file name to blob id
+     */
+    public void setBlobs(Map<String, String> blobs) {
+        _blobs.putAll(blobs);
+        _tracked.addAll(blobs.keySet());
+    }
+
     @Override
     public int hashCode() {
         final int prime = 31;
@@ -131,14 +147,17 @@ public class Commit implements Serializable {
     }
 
     /**
-     * Create a new blob and add reference from FILE to blob.
+     * Create a new blob in REPOSITORY, unless one with the same HASH is
+     * already stored, and add reference from FILE to blob.
+     * @param repository repository storing the blob
      * @param blob contents
      * @param file name
      * @param hash blob hash code
      */
-    public void addBlob(byte[] blob, String file, String hash) {
+    public void addBlob(Repository repository, byte[] blob, String file,
+            String hash) {
         _tracked.add(file);
-        Utils.writeContents(new File(Main.getGitletDir() + hash), blob);
+        repository.storeObject(repository.object(hash), blob, hash);
         _blobs.put(file, hash);
     }
 
@@ -0,0 +1,90 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * Repository settings, kept as key=value lines in the config file of a
+ * .gitlet directory.
+ * @author Sam Khano Tim Chan
+ */
+class Config {
+
+    /** Name of the config file inside the .gitlet directory. */
+    static final String CONFIG_FILE = "config";
+
+    /**
+     * Load the settings of the .gitlet directory GITLETDIR.
+     * @param gitletDir path of the .gitlet directory
+     */
+    Config(String gitletDir) {
+        _file = new File(gitletDir + CONFIG_FILE);
+        _props = new Properties();
+        if (_file.isFile()) {
+            try (InputStream in = new FileInputStream(_file)) {
+                _props.load(in);
+            } catch (IOException excp) {
+                throw new StorageException("Could not read config.");
+            }
+        }
+    }
+
+    /**
+     * Return the value of KEY, or DEFAULTVALUE if it is not set.
+     * @param key name of the setting
+     * @param defaultValue fallback
+     * @return value
+     */
+    String get(String key, String defaultValue) {
+        return _props.getProperty(key, defaultValue);
+    }
+
+    /**
+     * Return the integer value of KEY, or DEFAULTVALUE if it is not set or
+     * is not a number.
+     * @param key name of the setting
+     * @param defaultValue fallback
+     * @return value
+     */
+    int getInt(String key, int defaultValue) {
+        try {
+            return Integer.parseInt(get(key, "").trim());
+        } catch (NumberFormatException excp) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Set KEY to VALUE and save the settings.
+     * @param key name of the setting
+     * @param value new value
+     */
+    void set(String key, String value) {
+        _props.setProperty(key, value);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            _props.store(out, null);
+            Utils.writeContents(_file, out.toByteArray());
+        } catch (IOException | IllegalArgumentException excp) {
+            throw new StorageException("Could not write config.");
+        }
+    }
+
+    /**
+     * Return the file these settings are kept in.
+     * @return config file
+     */
+    File getFile() {
+        return _file;
+    }
+
+    /** The config file. */
+    private File _file;
+
+    /** Current settings. */
+    private Properties _props;
+}
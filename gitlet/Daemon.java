@@ -0,0 +1,304 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * Serves a repository to gitlet:// remotes over a loopback TCP socket.
+ * Each connection carries one request. The daemon opens it by advertising
+ * its branches without waiting for the client, and a fetching client sends
+ * its request without waiting for the advertisement, so a fetch costs a
+ * single round trip: the client names the branch it wants, the commits
+ * it has, its shallow boundary and a depth limit, and the daemon answers
+ * with the branch's tip, a pack stream (see Transfer) of the objects the
+ * client lacks, and the commits it sent without their parents. A pushing
+ * client reads the advertisement first, to learn what the daemon has,
+ * then sends the branch update and its pack in one message; the daemon
+ * moves the branch only if it still points where the client saw it, and
+ * only forward. Connections are served one at a time, so requests never
+ * race on the repository.
+ * @author Sam Khano Tim Chan
+ */
+class Daemon {
+
+    /** First word sent by both sides of a connection. */
+    static final int MAGIC = 0x67746c74;
+
+    /** Protocol version, sent after MAGIC. */
+    static final int VERSION = 3;
+
+    /** Port served when none is given. */
+    static final int DEFAULT_PORT = 9418;
+
+    /** Request to fetch a branch. */
+    static final byte FETCH = 'F';
+
+    /** Request to push to a branch. */
+    static final byte PUSH = 'P';
+
+    /** Reply to a request that succeeded. */
+    static final byte OK = 0;
+
+    /** Reply to a request naming a branch that does not exist. */
+    static final byte NO_BRANCH = 1;
+
+    /** Reply to a push whose branch moved since it was advertised. */
+    static final byte STALE = 2;
+
+    /** Reply to a push that would not fast-forward the branch, or whose
+     *  commit was not sent. */
+    static final byte REJECTED = 3;
+
+    /**
+     * A daemon serving REPOSITORY on PORT of the loopback interface, or on
+     * any free port if PORT is 0.
+     * @param repository repository served
+     * @param port port number
+     * @throws IOException if the port cannot be bound
+     */
+    Daemon(Repository repository, int port) throws IOException {
+        _repository = repository;
+        _socket = new ServerSocket(port, 0, InetAddress.getLoopbackAddress());
+    }
+
+    /**
+     * Return the port this daemon listens on.
+     * @return port number
+     */
+    int port() {
+        return _socket.getLocalPort();
+    }
+
+    /** Serve connections until this daemon is closed. A connection that
+     *  fails, breaks the protocol or cannot be served is dropped, and the
+     *  next one is served. */
+    void serve() {
+        while (!_socket.isClosed()) {
+            try (Socket client = _socket.accept()) {
+                handle(client);
+            } catch (IOException | RuntimeException excp) {
+                continue;
+            }
+        }
+    }
+
+    /**
+     * Stop serving.
+     * @throws IOException on failure
+     */
+    void close() throws IOException {
+        _socket.close();
+    }
+
+    /**
+     * Serve the one request carried by the connection CLIENT.
+     * @param client connection
+     * @throws IOException on failure
+     */
+    private void handle(Socket client) throws IOException {
+        DataInputStream in = new DataInputStream(
+                new BufferedInputStream(client.getInputStream()));
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(client.getOutputStream()));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        writeRefs(out, _repository.loadRepo().getBranchInfo());
+        out.flush();
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            return;
+        }
+        switch (in.readByte()) {
+        case FETCH:
+            fetch(in, out);
+            break;
+        case PUSH:
+            push(in, out);
+            break;
+        default:
+            break;
+        }
+    }
+
+    /**
+     * Serve a fetch request read from IN, replying on OUT.
+     * @param in request
+     * @param out reply
+     * @throws IOException on failure
+     */
+    private void fetch(DataInputStream in, DataOutputStream out)
+            throws IOException {
+        String branch = in.readUTF();
+        List<String> haves = readIds(in);
+        List<String> shallow = readIds(in);
+        int depth = in.readInt();
+        String tip = _repository.loadRepo().getBranchInfo().get(branch);
+        if (tip == null) {
+            out.writeByte(NO_BRANCH);
+            out.flush();
+            return;
+        }
+        out.writeByte(OK);
+        out.writeUTF(tip);
+        Transfer transfer = new Transfer(_repository.dir(), null);
+        transfer.addHaves(haves);
+        transfer.addShallow(shallow);
+        transfer.setDepth(depth);
+        transfer.writePack(out, transfer.missingCommits(tip));
+        writeIds(out, transfer.boundary());
+        out.flush();
+    }
+
+    /**
+     * Serve a push request read from IN, replying on OUT. The pack is read
+     * into a directory of its own inside the .gitlet directory, and its
+     * objects are stored only if the branch is moved, so that a rejected
+     * push leaves nothing behind.
+     * @param in request
+     * @param out reply
+     * @throws IOException on failure
+     */
+    private void push(DataInputStream in, DataOutputStream out)
+            throws IOException {
+        String branch = in.readUTF();
+        String expected = in.readUTF();
+        String tip = in.readUTF();
+        File incoming = Utils.tempFile(
+                Paths.get(_repository.dir() + "incoming")).toFile();
+        String staged = incoming.getPath() + File.separator;
+        byte result;
+        try {
+            new File(staged + Repository.COMMITS).mkdirs();
+            new Transfer(null, staged).readPack(in);
+            result = accept(branch, expected, tip, staged);
+        } finally {
+            Utils.recursiveDelete(incoming);
+        }
+        out.writeByte(result);
+        out.flush();
+    }
+
+    /**
+     * Move BRANCH from EXPECTED, or from nothing if EXPECTED is empty, to
+     * TIP, whose new objects are in the directory STAGED, if that
+     * fast-forwards it, storing those objects first. This is done under
+     * the repository's write lock, as a command run in it would be; a
+     * lock held by another command counts as the branch having moved.
+     * @param branch branch name
+     * @param expected head the pusher last saw, or empty
+     * @param tip new head
+     * @param staged directory holding the pushed objects
+     * @return OK, STALE or REJECTED
+     * @throws IOException if the objects cannot be stored
+     */
+    private byte accept(String branch, String expected, String tip,
+            String staged) throws IOException {
+        try (Lock lock = _repository.lock()) {
+            Journal.recover(_repository);
+            Repo repo = _repository.loadRepo();
+            String current = repo.getBranchInfo().get(branch);
+            if (!Objects.equals(current,
+                    expected.isEmpty() ? null : expected)) {
+                return STALE;
+            } else if (!Utils.isId(tip)
+                    || (!Repository.commitFile(staged, tip).isFile()
+                        && !_repository.commitFile(tip).isFile())
+                    || (current != null
+                        && !Transfer.isAncestor(_repository.dir(), staged,
+                                current, tip))) {
+                return REJECTED;
+            }
+            Transfer.storeIncoming(staged, _repository.dir());
+            repo.updateBranch(branch, tip);
+            _repository.refs().setMessage("push");
+            _repository.saveRepo(repo);
+            return OK;
+        } catch (StateException excp) {
+            return STALE;
+        }
+    }
+
+    /**
+     * Write the branches BRANCHES, mapping names to head commits, to OUT.
+     * A branch with no commit is written with an empty id.
+     * @param out destination
+     * @param branches branch name to commit id
+     * @throws IOException on failure
+     */
+    static void writeRefs(DataOutputStream out, Map<String, String> branches)
+            throws IOException {
+        out.writeInt(branches.size());
+        for (Map.Entry<String, String> branch : branches.entrySet()) {
+            out.writeUTF(branch.getKey());
+            out.writeUTF(branch.getValue() == null ? "" : branch.getValue());
+        }
+    }
+
+    /**
+     * Read branches written by writeRefs from IN.
+     * @param in source
+     * @return branch name to commit id, or to null if it has none
+     * @throws IOException on failure
+     */
+    static Map<String, String> readRefs(DataInputStream in)
+            throws IOException {
+        int count = in.readInt();
+        TreeMap<String, String> branches = new TreeMap<>();
+        for (int i = 0; i < count; i++) {
+            String name = in.readUTF();
+            String id = in.readUTF();
+            branches.put(name, id.isEmpty() ? null : id);
+        }
+        return branches;
+    }
+
+    /**
+     * Write the ids IDS to OUT, leaving out nulls.
+     * @param out destination
+     * @param ids commit ids
+     * @throws IOException on failure
+     */
+    static void writeIds(DataOutputStream out, Collection<String> ids)
+            throws IOException {
+        ArrayList<String> present = new ArrayList<>(ids);
+        present.removeIf(Objects::isNull);
+        out.writeInt(present.size());
+        for (String id : present) {
+            out.writeUTF(id);
+        }
+    }
+
+    /**
+     * Read ids written by writeIds from IN.
+     * @param in source
+     * @return ids
+     * @throws IOException on failure
+     */
+    static List<String> readIds(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        ArrayList<String> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ids.add(in.readUTF());
+        }
+        return ids;
+    }
+
+    /** The repository served. */
+    private final Repository _repository;
+
+    /** The listening socket. */
+    private final ServerSocket _socket;
+}
@@ -0,0 +1,160 @@
+package gitlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tests for gitlet:// remotes.
+ *  @author Sam Khano Tim Chan
+ */
+public class DaemonTest {
+
+    /** Served .gitlet directory. */
+    private static final String SERVER = "daemon-server/";
+
+    /** Client .gitlet directory. */
+    private static final String CLIENT = "daemon-client/";
+
+    @Before
+    public void setUp() throws IOException {
+        removeDirs();
+        for (String dir : new String[] { SERVER, CLIENT }) {
+            new File(dir + "commits").mkdirs();
+        }
+        _daemon = new Daemon(new Repository(SERVER), 0);
+        Thread thread = new Thread(_daemon::serve);
+        thread.setDaemon(true);
+        thread.start();
+        _remote = new NetRemote(Repo.URL_PREFIX + "localhost:"
+                + _daemon.port() + "/");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        _daemon.close();
+        removeDirs();
+    }
+
+    /** Delete the test directories. */
+    private static void removeDirs() {
+        for (String dir : new String[] { SERVER, CLIENT }) {
+            if (new File(dir).exists()) {
+                Utils.recursiveDelete(new File(dir));
+            }
+        }
+    }
+
+    /** Store in DIR a commit named NAME with parent PARENT, tracking one
+     *  file whose contents are NAME, and return its id. */
+    private static String commit(String dir, String name, String parent) {
+        Commit c = new Commit(name, "", parent);
+        String blob = Utils.sha1("blobs", name);
+        c.setBlobs(Collections.singletonMap("f.txt", blob));
+        Utils.writeContents(new File(dir + blob), name.getBytes());
+        String id = c.hashId();
+        Utils.saveObj(c, dir + "commits/" + id);
+        return id;
+    }
+
+    /** Make the served repository's master branch point at HEAD. */
+    private static void setMaster(String head) {
+        Repository server = new Repository(SERVER);
+        Repo repo = new Repo(server);
+        repo.updateBranch("master", head);
+        server.saveRepo(repo);
+    }
+
+    @Test
+    public void fetchTest() {
+        String c1 = commit(SERVER, "one", null);
+        String c2 = commit(SERVER, "two", c1);
+        setMaster(c2);
+        assertEquals(c2, _remote.fetch("master", CLIENT,
+                Collections.emptyList(), 0, null));
+        assertTrue(new File(CLIENT + "commits/" + c1).isFile());
+        assertTrue(new File(CLIENT + "commits/" + c2).isFile());
+        assertTrue(new File(CLIENT + Utils.sha1("blobs", "two")).isFile());
+    }
+
+    @Test
+    public void shallowFetchTest() {
+        String c1 = commit(SERVER, "one", null);
+        String c2 = commit(SERVER, "two", c1);
+        setMaster(c2);
+        _remote.fetch("master", CLIENT, Collections.emptyList(), 1, null);
+        assertTrue(new File(CLIENT + "commits/" + c2).isFile());
+        assertFalse(new File(CLIENT + "commits/" + c1).exists());
+        assertEquals(Collections.singleton(c2), Shallow.load(CLIENT));
+
+        _remote.fetch("master", CLIENT, Collections.singleton(c2), 2, null);
+        assertTrue(new File(CLIENT + "commits/" + c1).isFile());
+        assertTrue(Shallow.load(CLIENT).isEmpty());
+    }
+
+    @Test
+    public void pushTest() {
+        String c1 = commit(SERVER, "one", null);
+        setMaster(c1);
+        commit(CLIENT, "one", null);
+        String c2 = commit(CLIENT, "two", c1);
+        _remote.push("master", CLIENT, c2, null);
+        Repo repo = new Repository(SERVER).loadRepo();
+        assertEquals(c2, repo.getCommit("master"));
+        assertTrue(new File(SERVER + "commits/" + c2).isFile());
+        assertTrue(new File(SERVER + Utils.sha1("blobs", "two")).isFile());
+    }
+
+    @Test
+    public void stalePushTest() throws IOException {
+        String c1 = commit(SERVER, "one", null);
+        setMaster(c1);
+        commit(CLIENT, "one", null);
+        String c2 = commit(CLIENT, "two", c1);
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(),
+                _daemon.port())) {
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            DataOutputStream out =
+                new DataOutputStream(socket.getOutputStream());
+            in.readInt();
+            in.readInt();
+            Daemon.readRefs(in);
+            out.writeInt(Daemon.MAGIC);
+            out.writeInt(Daemon.VERSION);
+            out.writeByte(Daemon.PUSH);
+            out.writeUTF("master");
+            out.writeUTF(c2);
+            out.writeUTF(c2);
+            Transfer transfer = new Transfer(CLIENT, null);
+            transfer.addHaves(Collections.singletonList(c1));
+            transfer.writePack(out, transfer.missingCommits(c2));
+            out.flush();
+            assertEquals(Daemon.STALE, in.readByte());
+        }
+        assertFalse(new File(SERVER + "commits/" + c2).exists());
+        assertFalse(new File(SERVER + Utils.sha1("blobs", "two")).exists());
+        for (String name : new File(SERVER).list()) {
+            assertFalse(name.endsWith(Utils.TEMP_SUFFIX));
+        }
+
+        _remote.push("master", CLIENT, c2, null);
+        assertEquals(c2, new Repository(SERVER).loadRepo().getCommit("master"));
+    }
+
+    /** The daemon under test. */
+    private Daemon _daemon;
+
+    /** A client of the daemon. */
+    private NetRemote _remote;
+}
@@ -0,0 +1,426 @@
+package gitlet;
+
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Line diff engine. Lines are interned to integer ids first, so that the
+ * algorithms below only ever compare ints. Two algorithms are offered:
+ * Myers' O(ND) algorithm in its linear-space form, which finds a shortest
+ * edit script, and a histogram diff, which anchors on the rarest common
+ * lines first and falls back to Myers where there are none, and which
+ * tends to line up blocks of code the way a reader expects.
+ * @author Sam Khano Tim Chan
+ */
+class Diff {
+
+    /** Name of Myers' algorithm, as given in the diff.algorithm setting. */
+    static final String MYERS = "myers";
+
+    /** Name of the histogram algorithm. */
+    static final String HISTOGRAM = "histogram";
+
+    /** Key of the setting that selects the algorithm. */
+    static final String ALGORITHM = "diff.algorithm";
+
+    /** Number of unchanged lines shown around each change. */
+    static final int CONTEXT = 3;
+
+    /** Lines occurring more often than this are never used as anchors by
+     *  the histogram algorithm. */
+    private static final int MAX_CHAIN = 64;
+
+    /** A region where lines [aStart, aEnd) of the old version were
+     *  replaced by lines [bStart, bEnd) of the new one. Either region may
+     *  be empty. */
+    static class Edit {
+
+        /**
+         * An edit replacing A[ASTART, AEND) by B[BSTART, BEND).
+         * @param aStart first old line
+         * @param aEnd end of old lines
+         * @param bStart first new line
+         * @param bEnd end of new lines
+         */
+        Edit(int aStart, int aEnd, int bStart, int bEnd) {
+            this.aStart = aStart;
+            this.aEnd = aEnd;
+            this.bStart = bStart;
+            this.bEnd = bEnd;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Edit[%d,%d)->[%d,%d)", aStart, aEnd,
+                    bStart, bEnd);
+        }
+
+        /** First replaced line of the old version. */
+        final int aStart;
+        /** End of the replaced lines of the old version. */
+        final int aEnd;
+        /** First replacing line of the new version. */
+        final int bStart;
+        /** End of the replacing lines of the new version. */
+        final int bEnd;
+    }
+
+    /**
+     * Split CONTENTS into lines, each keeping its line terminator. Bytes
+     * are mapped one-to-one onto chars, so joining the lines and encoding
+     * them as ISO-8859-1 gives back CONTENTS exactly.
+     * @param contents bytes of a file
+     * @return lines
+     */
+    static List<String> splitLines(byte[] contents) {
+        ArrayList<String> lines = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < contents.length; i++) {
+            if (contents[i] == '\n') {
+                lines.add(new String(contents, start, i + 1 - start,
+                        StandardCharsets.ISO_8859_1));
+                start = i + 1;
+            }
+        }
+        if (start < contents.length) {
+            lines.add(new String(contents, start, contents.length - start,
+                    StandardCharsets.ISO_8859_1));
+        }
+        return lines;
+    }
+
+    /**
+     * Return true iff CONTENTS looks like binary data, that is, has a NUL
+     * byte among its first few thousand bytes.
+     * @param contents bytes of a file
+     * @return boolean
+     */
+    static boolean isBinary(byte[] contents) {
+        int n = Math.min(contents.length, 8000);
+        for (int i = 0; i < n; i++) {
+            if (contents[i] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Return the edits turning lines A into lines B, in order, computed by
+     * the algorithm named ALGORITHM.
+     * @param a old lines
+     * @param b new lines
+     * @param algorithm MYERS or HISTOGRAM
+     * @return edits
+     */
+    static List<Edit> diff(List<String> a, List<String> b, String algorithm) {
+        HashMap<String, Integer> ids = new HashMap<>();
+        Diff d = new Diff(intern(a, ids), intern(b, ids));
+        if (HISTOGRAM.equals(algorithm)) {
+            d.histogram(0, d._a.length, 0, d._b.length);
+        } else {
+            d.myers(0, d._a.length, 0, d._b.length);
+        }
+        return d._edits;
+    }
+
+    /**
+     * Return the ids of LINES, assigning new ids in IDS as needed.
+     * @param lines lines
+     * @param ids interned lines
+     * @return line ids
+     */
+    private static int[] intern(List<String> lines,
+            HashMap<String, Integer> ids) {
+        int[] result = new int[lines.size()];
+        for (int i = 0; i < result.length; i++) {
+            Integer id = ids.get(lines.get(i));
+            if (id == null) {
+                id = ids.size();
+                ids.put(lines.get(i), id);
+            }
+            result[i] = id;
+        }
+        return result;
+    }
+
+    /**
+     * A diff of the interned sequences A and B.
+     * @param a old sequence
+     * @param b new sequence
+     */
+    private Diff(int[] a, int[] b) {
+        _a = a;
+        _b = b;
+        _edits = new ArrayList<>();
+    }
+
+    /**
+     * Record that A[A0, A1) was replaced by B[B0, B1), merging it with the
+     * previous edit if the two touch.
+     * @param a0 start of old region
+     * @param a1 end of old region
+     * @param b0 start of new region
+     * @param b1 end of new region
+     */
+    private void addEdit(int a0, int a1, int b0, int b1) {
+        if (a0 == a1 && b0 == b1) {
+            return;
+        }
+        int last = _edits.size() - 1;
+        if (last >= 0 && _edits.get(last).aEnd == a0
+                && _edits.get(last).bEnd == b0) {
+            Edit prev = _edits.remove(last);
+            _edits.add(new Edit(prev.aStart, a1, prev.bStart, b1));
+        } else {
+            _edits.add(new Edit(a0, a1, b0, b1));
+        }
+    }
+
+    /**
+     * Diff A[A0, A1) against B[B0, B1) with Myers' algorithm, splitting the
+     * problem at the middle snake of a shortest edit script so that only
+     * linear space is needed.
+     * @param a0 start of old region
+     * @param a1 end of old region
+     * @param b0 start of new region
+     * @param b1 end of new region
+     */
+    private void myers(int a0, int a1, int b0, int b1) {
+        while (a0 < a1 && b0 < b1 && _a[a0] == _b[b0]) {
+            a0 += 1;
+            b0 += 1;
+        }
+        while (a0 < a1 && b0 < b1 && _a[a1 - 1] == _b[b1 - 1]) {
+            a1 -= 1;
+            b1 -= 1;
+        }
+        if (a0 == a1 || b0 == b1) {
+            addEdit(a0, a1, b0, b1);
+            return;
+        }
+        int[] snake = middleSnake(a0, a1, b0, b1);
+        myers(a0, snake[0], b0, snake[1]);
+        myers(snake[2], a1, snake[3], b1);
+    }
+
+    /**
+     * Return the start and end {x, y, u, v} of the middle snake of a
+     * shortest edit script from A[A0, A1) to B[B0, B1), found by running
+     * the greedy search forwards from the start and backwards from the end
+     * until the two meet. Both regions must be non-empty and differ in
+     * their first and last elements.
+     * @param a0 start of old region
+     * @param a1 end of old region
+     * @param b0 start of new region
+     * @param b1 end of new region
+     * @return snake
+     */
+    private int[] middleSnake(int a0, int a1, int b0, int b1) {
+        int n = a1 - a0, m = b1 - b0;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int max = (n + m + 1) / 2;
+        int off = max + 1;
+        int[] vf = new int[2 * max + 3];
+        int[] vb = new int[2 * max + 3];
+        for (int d = 0; d <= max; d++) {
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && vf[off + k - 1] < vf[off + k + 1])) {
+                    x = vf[off + k + 1];
+                } else {
+                    x = vf[off + k - 1] + 1;
+                }
+                int y = x - k, xs = x, ys = y;
+                while (x < n && y < m && _a[a0 + x] == _b[b0 + y]) {
+                    x += 1;
+                    y += 1;
+                }
+                vf[off + k] = x;
+                int kb = delta - k;
+                if (odd && kb >= -(d - 1) && kb <= d - 1
+                        && x + vb[off + kb] >= n) {
+                    return new int[] { a0 + xs, b0 + ys, a0 + x, b0 + y };
+                }
+            }
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && vb[off + k - 1] < vb[off + k + 1])) {
+                    x = vb[off + k + 1];
+                } else {
+                    x = vb[off + k - 1] + 1;
+                }
+                int y = x - k, xs = x, ys = y;
+                while (x < n && y < m
+                        && _a[a1 - 1 - x] == _b[b1 - 1 - y]) {
+                    x += 1;
+                    y += 1;
+                }
+                vb[off + k] = x;
+                int kf = delta - k;
+                if (!odd && kf >= -d && kf <= d && x + vf[off + kf] >= n) {
+                    return new int[] { a1 - x, b1 - y, a1 - xs, b1 - ys };
+                }
+            }
+        }
+        throw new IllegalStateException("no middle snake");
+    }
+
+    /**
+     * Diff A[A0, A1) against B[B0, B1) with the histogram algorithm: find
+     * the longest run of common lines around the line of A[A0, A1) with the
+     * fewest occurrences that also appears in B[B0, B1), keep it, and
+     * recurse on both sides of it.
+     * @param a0 start of old region
+     * @param a1 end of old region
+     * @param b0 start of new region
+     * @param b1 end of new region
+     */
+    private void histogram(int a0, int a1, int b0, int b1) {
+        while (a0 < a1 && b0 < b1 && _a[a0] == _b[b0]) {
+            a0 += 1;
+            b0 += 1;
+        }
+        while (a0 < a1 && b0 < b1 && _a[a1 - 1] == _b[b1 - 1]) {
+            a1 -= 1;
+            b1 -= 1;
+        }
+        if (a0 == a1 || b0 == b1) {
+            addEdit(a0, a1, b0, b1);
+            return;
+        }
+        HashMap<Integer, ArrayList<Integer>> where = new HashMap<>();
+        for (int i = a0; i < a1; i++) {
+            where.computeIfAbsent(_a[i], key -> new ArrayList<>()).add(i);
+        }
+        int bestCount = MAX_CHAIN + 1, bestLen = 0;
+        int bestA = 0, bestB = 0;
+        for (int j = b0; j < b1; j++) {
+            ArrayList<Integer> occurrences = where.get(_b[j]);
+            if (occurrences == null || occurrences.size() > bestCount) {
+                continue;
+            }
+            for (int i : occurrences) {
+                int s = i, t = j, e = i + 1, f = j + 1;
+                while (s > a0 && t > b0 && _a[s - 1] == _b[t - 1]) {
+                    s -= 1;
+                    t -= 1;
+                }
+                while (e < a1 && f < b1 && _a[e] == _b[f]) {
+                    e += 1;
+                    f += 1;
+                }
+                int count = occurrences.size();
+                if (count < bestCount
+                        || (count == bestCount && e - s > bestLen)) {
+                    bestCount = count;
+                    bestLen = e - s;
+                    bestA = s;
+                    bestB = t;
+                }
+            }
+        }
+        if (bestLen == 0) {
+            myers(a0, a1, b0, b1);
+            return;
+        }
+        histogram(a0, bestA, b0, bestB);
+        histogram(bestA + bestLen, a1, bestB + bestLen, b1);
+    }
+
+    /**
+     * Write the EDITS from lines A to lines B to OUT as a unified diff with
+     * CONTEXT lines of context, naming the two versions ANAME and BNAME.
+     * Lines are written back as the bytes they were read from.
+     * @param out destination
+     * @param aName label of the old version
+     * @param bName label of the new version
+     * @param a old lines
+     * @param b new lines
+     * @param edits edits from A to B
+     * @param context number of context lines
+     */
+    static void writeUnified(PrintStream out, String aName, String bName,
+            List<String> a, List<String> b, List<Edit> edits, int context) {
+        out.print("--- " + aName + "\n");
+        out.print("+++ " + bName + "\n");
+        int first = 0;
+        while (first < edits.size()) {
+            int last = first;
+            while (last + 1 < edits.size()
+                    && edits.get(last + 1).aStart - edits.get(last).aEnd
+                    <= 2 * context) {
+                last += 1;
+            }
+            Edit head = edits.get(first), tail = edits.get(last);
+            int aStart = Math.max(0, head.aStart - context);
+            int bStart = head.bStart - (head.aStart - aStart);
+            int aEnd = Math.min(a.size(), tail.aEnd + context);
+            int bEnd = tail.bEnd + (aEnd - tail.aEnd);
+            out.print("@@ -" + range(aStart, aEnd - aStart) + " +"
+                    + range(bStart, bEnd - bStart) + " @@\n");
+            int i = aStart;
+            for (int k = first; k <= last; k++) {
+                Edit edit = edits.get(k);
+                for (; i < edit.aStart; i++) {
+                    writeLine(out, ' ', a.get(i));
+                }
+                for (i = edit.aStart; i < edit.aEnd; i++) {
+                    writeLine(out, '-', a.get(i));
+                }
+                for (int j = edit.bStart; j < edit.bEnd; j++) {
+                    writeLine(out, '+', b.get(j));
+                }
+            }
+            for (; i < aEnd; i++) {
+                writeLine(out, ' ', a.get(i));
+            }
+            first = last + 1;
+        }
+    }
+
+    /**
+     * Return the hunk header form of the range of LENGTH lines starting at
+     * line START (counting from 0).
+     * @param start first line
+     * @param length number of lines
+     * @return range
+     */
+    private static String range(int start, int length) {
+        if (length == 1) {
+            return Integer.toString(start + 1);
+        } else if (length == 0) {
+            return start + ",0";
+        } else {
+            return (start + 1) + "," + length;
+        }
+    }
+
+    /**
+     * Write LINE to OUT, preceded by PREFIX, as its original bytes.
+     * @param out destination
+     * @param prefix ' ', '-' or '+'
+     * @param line line, with its terminator if it had one
+     */
+    private static void writeLine(PrintStream out, char prefix, String line) {
+        out.write(prefix);
+        byte[] bytes = line.getBytes(StandardCharsets.ISO_8859_1);
+        out.write(bytes, 0, bytes.length);
+        if (!line.endsWith("\n")) {
+            out.print("\n\\ No newline at end of file\n");
+        }
+    }
+
+    /** Interned old sequence. */
+    private final int[] _a;
+
+    /** Interned new sequence. */
+    private final int[] _b;
+
+    /** Edits found so far, in order. */
+    private final ArrayList<Edit> _edits;
+}
@@ -0,0 +1,107 @@
+package gitlet;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/** Tests for the line diff engine.
+ *  @author Sam Khano Tim Chan
+ */
+public class DiffTest {
+
+    /** Return the lines of the words in TEXT, one word per line. */
+    private static List<String> lines(String text) {
+        ArrayList<String> result = new ArrayList<>();
+        for (String word : text.split(" ")) {
+            if (!word.isEmpty()) {
+                result.add(word + "\n");
+            }
+        }
+        return result;
+    }
+
+    /** Return A with EDITS applied, using the lines of B. */
+    private static List<String> apply(List<String> a, List<String> b,
+            List<Diff.Edit> edits) {
+        ArrayList<String> result = new ArrayList<>();
+        int i = 0;
+        for (Diff.Edit edit : edits) {
+            result.addAll(a.subList(i, edit.aStart));
+            result.addAll(b.subList(edit.bStart, edit.bEnd));
+            i = edit.aEnd;
+        }
+        result.addAll(a.subList(i, a.size()));
+        return result;
+    }
+
+    /** Return the number of lines deleted or inserted by EDITS. */
+    private static int cost(List<Diff.Edit> edits) {
+        int cost = 0;
+        for (Diff.Edit edit : edits) {
+            cost += edit.aEnd - edit.aStart + edit.bEnd - edit.bStart;
+        }
+        return cost;
+    }
+
+    /** Return the length of a shortest edit script from A to B. */
+    private static int shortest(List<String> a, List<String> b) {
+        int[][] lcs = new int[a.size() + 1][b.size() + 1];
+        for (int i = a.size() - 1; i >= 0; i--) {
+            for (int j = b.size() - 1; j >= 0; j--) {
+                lcs[i][j] = a.get(i).equals(b.get(j)) ? lcs[i + 1][j + 1] + 1
+                        : Math.max(lcs[i + 1][j], lcs[i][j + 1]);
+            }
+        }
+        return a.size() + b.size() - 2 * lcs[0][0];
+    }
+
+    @Test
+    public void randomTest() {
+        Random rand = new Random(61);
+        for (int trial = 0; trial < 500; trial++) {
+            ArrayList<String> a = new ArrayList<>();
+            ArrayList<String> b = new ArrayList<>();
+            for (int i = rand.nextInt(30); i > 0; i--) {
+                a.add(rand.nextInt(5) + "\n");
+            }
+            for (int i = rand.nextInt(30); i > 0; i--) {
+                b.add(rand.nextInt(5) + "\n");
+            }
+            List<Diff.Edit> myers = Diff.diff(a, b, Diff.MYERS);
+            assertEquals(b, apply(a, b, myers));
+            assertEquals(shortest(a, b), cost(myers));
+            List<Diff.Edit> hist = Diff.diff(a, b, Diff.HISTOGRAM);
+            assertEquals(b, apply(a, b, hist));
+        }
+    }
+
+    @Test
+    public void splitLinesTest() {
+        byte[] text = "one\ntwo\n\nlast".getBytes(StandardCharsets.UTF_8);
+        List<String> split = Diff.splitLines(text);
+        assertEquals(Arrays.asList("one\n", "two\n", "\n", "last"), split);
+        assertEquals(0, Diff.splitLines(new byte[0]).size());
+    }
+
+    @Test
+    public void unifiedTest() {
+        List<String> a = lines("a b c d e f g h i j");
+        List<String> b = lines("a b x d e f g h i j k");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes);
+        Diff.writeUnified(out, "a/f", "b/f", a, b,
+                Diff.diff(a, b, Diff.MYERS), Diff.CONTEXT);
+        out.flush();
+        assertEquals("--- a/f\n+++ b/f\n"
+                + "@@ -1,6 +1,6 @@\n a\n b\n-c\n+x\n d\n e\n f\n"
+                + "@@ -8,3 +8,4 @@\n h\n i\n j\n+k\n", bytes.toString());
+    }
+}
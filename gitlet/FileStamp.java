@@ -0,0 +1,73 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * What a file looked like when it was read, so that what was read from it
+ * can be kept until the file changes. A stamp holds the file's size,
+ * modification time and file key (its inode, where the system has one)
+ * and, on Unix, its status change time, each compared on its own. A
+ * rewrite that keeps the size changes the modification time; one within
+ * the same clock tick changes the file key when the file is replaced by a
+ * rename, as gitlet writes files, and the change time when it is edited in
+ * place. A missing file has a stamp of its own.
+ * @author Sam Khano Tim Chan
+ */
+final class FileStamp {
+
+    /** Attributes read on Unix. */
+    private static final String UNIX_ATTRIBUTES =
+        "unix:size,lastModifiedTime,fileKey,ctime";
+
+    /** Attributes read elsewhere. */
+    private static final String BASIC_ATTRIBUTES =
+        "basic:size,lastModifiedTime,fileKey";
+
+    /**
+     * A stamp of the attributes ATTRIBUTES.
+     * @param attributes attribute name to value, empty for a missing file
+     */
+    private FileStamp(Map<String, Object> attributes) {
+        _attributes = attributes;
+    }
+
+    /**
+     * Return the stamp of FILE as it is now.
+     * @param file file
+     * @return stamp
+     */
+    static FileStamp of(File file) {
+        Path path = file.toPath();
+        try {
+            try {
+                return new FileStamp(Files.readAttributes(path,
+                        UNIX_ATTRIBUTES));
+            } catch (UnsupportedOperationException
+                     | IllegalArgumentException excp) {
+                return new FileStamp(Files.readAttributes(path,
+                        BASIC_ATTRIBUTES));
+            }
+        } catch (IOException excp) {
+            return new FileStamp(Collections.emptyMap());
+        }
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof FileStamp
+                && _attributes.equals(((FileStamp) obj)._attributes);
+    }
+
+    @Override
+    public int hashCode() {
+        return _attributes.hashCode();
+    }
+
+    /** Attribute name to value, empty for a missing file. */
+    private final Map<String, Object> _attributes;
+}
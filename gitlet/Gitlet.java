@@ -0,0 +1,220 @@
+package gitlet;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A gitlet repository opened from Java, for programs that embed gitlet
+ * instead of running its command line. Each method does what the command
+ * of the same name does, but reports failures by throwing a subclass of
+ * GitletException rather than printing a message, and never ends the
+ * process. A Gitlet must be used by one thread at a time, but threads may
+ * work on different repositories at once.
+ * @author Sam Khano Tim Chan
+ */
+public final class Gitlet {
+
+    /**
+     * The repository REPOSITORY.
+     * @param repository repository
+     */
+    private Gitlet(Repository repository) {
+        _repository = repository;
+    }
+
+    /**
+     * Return the repository whose working directory is PATH.
+     * @param path working directory
+     * @return repository
+     * @throws NotFoundException if PATH holds no repository
+     */
+    public static Gitlet open(String path) {
+        Repository repository = new Repository(gitletDir(path));
+        if (!new File(repository.dir()).isDirectory()) {
+            throw new NotFoundException(
+                    "Not in an initialized gitlet directory.");
+        }
+        return new Gitlet(repository);
+    }
+
+    /**
+     * Create a repository whose working directory is PATH, creating PATH
+     * if needed, as the init command does, and return it.
+     * @param path working directory
+     * @return repository
+     * @throws StateException if PATH already holds a repository
+     */
+    public static Gitlet init(String path) {
+        new File(path).mkdirs();
+        Gitlet gitlet = new Gitlet(new Repository(gitletDir(path)));
+        gitlet._repository.refs().setMessage("init");
+        gitlet.bind(Main::init);
+        return gitlet;
+    }
+
+    /**
+     * Return the path of the .gitlet directory in the working directory
+     * PATH.
+     * @param path working directory
+     * @return path, ending with a separator
+     */
+    private static String gitletDir(String path) {
+        return new File(path, ".gitlet").getPath() + File.separator;
+    }
+
+    /**
+     * Stage FILE, as the add command does.
+     * @param file name of the file in the working directory
+     */
+    public void add(String file) {
+        call(() -> Main.add(file), "add", file);
+    }
+
+    /**
+     * Unstage FILE or mark it for removal, as the rm command does.
+     * @param file name of the file in the working directory
+     */
+    public void remove(String file) {
+        call(() -> Main.remove(file), "rm", file);
+    }
+
+    /**
+     * Commit the staged changes with log message MESSAGE, as the commit
+     * command does, and return the new commit's id.
+     * @param message log message
+     * @return commit id
+     */
+    public String commit(String message) {
+        call(() -> Main.commit(message), "commit", message);
+        return head();
+    }
+
+    /**
+     * Create the branch NAME at the head commit.
+     * @param name branch name
+     */
+    public void branch(String name) {
+        call(() -> Main.branch(name), "branch", name);
+    }
+
+    /**
+     * Delete the branch NAME.
+     * @param name branch name
+     */
+    public void removeBranch(String name) {
+        call(() -> Main.removeBranch(name), "rm-branch", name);
+    }
+
+    /**
+     * Check out the branch NAME, as checkout [branch name] does.
+     * @param name branch name
+     */
+    public void checkout(String name) {
+        call(() -> Main.checkout("checkout", name), "checkout", name);
+    }
+
+    /**
+     * Restore FILE from the commit COMMITID, which may be abbreviated, as
+     * checkout [commit id] -- [file name] does.
+     * @param commitId commit id
+     * @param file name of the file
+     */
+    public void checkoutFile(String commitId, String file) {
+        call(() -> Main.checkout("checkout", commitId, "--", file),
+                "checkout", commitId, "--", file);
+    }
+
+    /**
+     * Move the current branch to the commit COMMITID, as the reset command
+     * does.
+     * @param commitId commit id
+     */
+    public void reset(String commitId) {
+        call(() -> Main.reset(commitId), "reset", commitId);
+    }
+
+    /**
+     * Merge the branch NAME into the current branch, as the merge command
+     * does, and return true iff that only fast-forwarded it.
+     * @param name branch name
+     * @return true iff the current branch was fast-forwarded
+     * @throws MergeConflictException if the merge conflicts
+     */
+    public boolean merge(String name) {
+        boolean[] fastForwarded = new boolean[1];
+        call(() -> fastForwarded[0] = Main.merge(name), "merge", name);
+        return fastForwarded[0];
+    }
+
+    /**
+     * Return the id of the head commit.
+     * @return commit id
+     */
+    public String head() {
+        return _repository.loadRepo().getCurrentCommit();
+    }
+
+    /**
+     * Return the name of the current branch.
+     * @return branch name
+     */
+    public String currentBranch() {
+        return _repository.loadRepo().getCurrentBranchName();
+    }
+
+    /**
+     * Return the branches, mapping each name to its head commit.
+     * @return branch name to commit id
+     */
+    public Map<String, String> branches() {
+        return Collections.unmodifiableMap(
+                new TreeMap<>(_repository.loadRepo().getBranchInfo()));
+    }
+
+    /**
+     * Return the history of the current branch, newest first, as the log
+     * command prints it. Commits are read as the iteration reaches them.
+     * The commits returned are shared and must not be changed.
+     * @return commits
+     */
+    public Iterator<Commit> log() {
+        return _repository.history(head());
+    }
+
+    /**
+     * Run COMMAND on this repository, holding its write lock, as the
+     * command line ARGS does, and record ARGS in the reflogs of the
+     * branches it changes.
+     * @param command command to run
+     * @param args command line
+     * @throws StateException if another command holds the lock
+     */
+    private void call(Runnable command, String... args) {
+        _repository.refs().setMessage(String.join(" ", args));
+        try (Lock lock = _repository.lock()) {
+            Journal.recover(_repository);
+            _repository.migrate();
+            bind(command);
+        }
+    }
+
+    /**
+     * Run COMMAND with this thread's commands acting on this repository.
+     * @param command command to run
+     */
+    private void bind(Runnable command) {
+        Repository previous = Main.repository();
+        Main.setRepository(_repository);
+        try {
+            command.run();
+        } finally {
+            Main.setRepository(previous);
+        }
+    }
+
+    /** The repository. */
+    private final Repository _repository;
+}
@@ -0,0 +1,18 @@
+package gitlet;
+
+/**
+ * A failure of a gitlet command, carrying the message the user is shown.
+ * Commands throw one of its subclasses to stop early, and only the entry
+ * point that ran the command, such as Main.main, reports the message.
+ * @author Sam Khano Tim Chan
+ */
+public class GitletException extends RuntimeException {
+
+    /**
+     * A failure reported to the user as MSG.
+     * @param msg message
+     */
+    public GitletException(String msg) {
+        super(msg);
+    }
+}
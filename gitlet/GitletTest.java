@@ -0,0 +1,167 @@
+package gitlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tests for using gitlet as a library.
+ *  @author Sam Khano Tim Chan
+ */
+public class GitletTest {
+
+    /** Directory holding the test repositories. */
+    private static final String WORK = "gitlet-api";
+
+    @Before
+    public void setUp() {
+        removeDir();
+    }
+
+    @After
+    public void tearDown() {
+        removeDir();
+    }
+
+    /** Delete the test directory. */
+    private static void removeDir() {
+        if (new File(WORK).exists()) {
+            Utils.recursiveDelete(new File(WORK));
+        }
+    }
+
+    /** Write CONTENTS to NAME in the working directory DIR. */
+    private static void write(String dir, String name, String contents) {
+        Utils.writeContents(new File(dir, name), contents.getBytes());
+    }
+
+    @Test
+    public void commitLogTest() {
+        String dir = WORK + "/a";
+        Gitlet gitlet = Gitlet.init(dir);
+        write(dir, "f.txt", "one\n");
+        gitlet.add("f.txt");
+        String first = gitlet.commit("one");
+        write(dir, "f.txt", "two\n");
+        gitlet.add("f.txt");
+        String second = gitlet.commit("two");
+        assertEquals(second, gitlet.head());
+        assertEquals("master", gitlet.currentBranch());
+
+        Iterator<Commit> log = Gitlet.open(dir).log();
+        assertEquals(second, log.next().hashId());
+        assertEquals(first, log.next().hashId());
+        assertEquals("initial commit", log.next().getLogMessage());
+        assertFalse(log.hasNext());
+
+        gitlet.branch("ahead");
+        gitlet.checkout("ahead");
+        write(dir, "f.txt", "three\n");
+        gitlet.add("f.txt");
+        String third = gitlet.commit("three");
+        gitlet.checkout("master");
+        assertTrue(gitlet.merge("ahead"));
+        assertEquals(third, gitlet.head());
+    }
+
+    @Test
+    public void checkoutCopyTest() throws IOException {
+        String dir = WORK + "/l";
+        Gitlet gitlet = Gitlet.init(dir);
+        write(dir, "f.txt", "one\n");
+        gitlet.add("f.txt");
+        String first = gitlet.commit("one");
+        write(dir, "f.txt", "two\n");
+        gitlet.checkoutFile(first, "f.txt");
+        Path object = new Repository(dir + "/.gitlet/")
+            .object(Utils.sha1("blobs", "one\n".getBytes())).toPath();
+        Path file = Paths.get(dir, "f.txt");
+        assertTrue(Files.isWritable(object));
+        assertFalse(Files.isSameFile(object, file));
+        Files.write(file, "edited\n".getBytes());
+        assertEquals("one\n", new String(Files.readAllBytes(object)));
+    }
+
+    @Test
+    public void errorsTest() {
+        try {
+            Gitlet.open(WORK + "/none");
+            fail();
+        } catch (NotFoundException excp) {
+            assertEquals("Not in an initialized gitlet directory.",
+                    excp.getMessage());
+        }
+        String dir = WORK + "/b";
+        Gitlet gitlet = Gitlet.init(dir);
+        try {
+            gitlet.checkout("nowhere");
+            fail();
+        } catch (NotFoundException excp) {
+            assertEquals("No such branch exists.", excp.getMessage());
+        }
+        write(dir, "f.txt", "base\n");
+        gitlet.add("f.txt");
+        gitlet.commit("base");
+        gitlet.branch("other");
+        write(dir, "f.txt", "master\n");
+        gitlet.add("f.txt");
+        gitlet.commit("master");
+        gitlet.checkout("other");
+        write(dir, "f.txt", "other\n");
+        gitlet.add("f.txt");
+        gitlet.commit("other");
+        gitlet.checkout("master");
+        try {
+            gitlet.merge("other");
+            fail();
+        } catch (MergeConflictException excp) {
+            assertEquals("Encountered a merge conflict.", excp.getMessage());
+        }
+        assertTrue(gitlet.branches().containsKey("other"));
+    }
+
+    @Test
+    public void threadsTest() throws InterruptedException {
+        ArrayList<Thread> threads = new ArrayList<>();
+        ArrayList<Throwable> failures = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            String dir = WORK + "/t" + t;
+            Thread thread = new Thread(() -> {
+                try {
+                    Gitlet gitlet = Gitlet.init(dir);
+                    for (int i = 0; i < 10; i++) {
+                        write(dir, "f.txt", dir + i + "\n");
+                        gitlet.add("f.txt");
+                        gitlet.commit("commit " + i);
+                    }
+                } catch (RuntimeException excp) {
+                    synchronized (failures) {
+                        failures.add(excp);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(0, failures.size());
+        for (int t = 0; t < 4; t++) {
+            Iterator<Commit> log = Gitlet.open(WORK + "/t" + t).log();
+            assertEquals("commit 9", log.next().getLogMessage());
+        }
+    }
+}
@@ -0,0 +1,712 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * A write-ahead journal making one change of a repository, such as a
+ * commit, all or nothing. New objects are written at once, since nothing
+ * refers to them yet, and only their names, ids and lengths are
+ * recorded, never their contents; changes to existing state, namely
+ * branch moves, deletions and rewrites of files, are only recorded.
+ * Records are kept in memory until commit(), so a change abandoned
+ * before then leaves nothing behind but unreferenced objects. commit()
+ * appends the change to the journal and forces it to disk with one
+ * fsync, and only then applies the recorded changes, branch moves last.
+ * If the process dies before the journal is forced, none of the changes
+ * was made and the torn record is discarded on the next start; if it
+ * dies after, the next start replays the change.
+ *
+ * The files a change writes, its objects included, are not synced when
+ * it is applied: a checkpoint forces all the files a run of changes
+ * wrote to disk in one pass and then empties the journal. A checkpoint
+ * is made once the journal outgrows core.journalLimit bytes, after a
+ * recovery, and before a branch is moved outside the journal. Until then
+ * every start checks the changes still in the journal. One whose
+ * branches are still at their old heads is replayed, provided that each
+ * of its objects still hashes to its id. One whose branches are already
+ * at their new heads was applied, and only the lengths of its objects
+ * are checked. A change whose objects did not survive, which only a
+ * crash before the checkpoint can cause, is dropped together with every
+ * change after it, which may build on it: those already applied have
+ * their branches moved back, so that no branch is left at a damaged
+ * commit. Since a branch is moved outside the journal only after a
+ * checkpoint, a branch at a change's old head means the change was never
+ * applied, not that a later command undid it. The journal file is
+ * emptied, not deleted, so its directory entry is synced only when first
+ * made.
+ * @author Sam Khano Tim Chan
+ */
+class Journal {
+
+    /** Name of the journal file inside the .gitlet directory. */
+    static final String JOURNAL_FILE = "journal";
+
+    /** Key selecting whether the journal is forced to disk. */
+    static final String FSYNC = "core.fsync";
+
+    /** Key setting how many bytes the journal may hold before a
+     *  checkpoint empties it. */
+    static final String LIMIT = "core.journalLimit";
+
+    /** Default size of the journal that triggers a checkpoint. */
+    static final int DEFAULT_LIMIT = 1 << 20;
+
+    /** Record kinds. */
+    private static final byte OBJECT = 1, REPLACE = 2, DELETE = 3, REF = 4,
+        COMMIT = 5;
+
+    /** Bytes framing each change in the journal: its length before it, and
+     *  the commit mark and checksum after it. */
+    private static final int FRAME = Integer.BYTES + 1 + Long.BYTES;
+
+    /**
+     * Return the id under which the object CONTENTS is recorded, which
+     * for a blob is its name.
+     * @param contents contents of an object
+     * @return SHA-1 of CONTENTS as a blob
+     */
+    static String objectId(byte[] contents) {
+        return Utils.sha1("blobs", contents);
+    }
+
+    /**
+     * Begin a change of REPOSITORY. The change is synced to disk at commit
+     * iff SYNC.
+     * @param repository repository changed
+     * @param sync true iff commit forces the journal to disk
+     */
+    Journal(Repository repository, boolean sync) {
+        _repository = repository;
+        _sync = sync;
+    }
+
+    /**
+     * Return true iff the journal of REPOSITORY and the files it covers are
+     * forced to disk.
+     * @param repository repository
+     * @return true unless core.fsync is false
+     */
+    static boolean synced(Repository repository) {
+        return !repository.config().get(FSYNC, "true").equals("false");
+    }
+
+    /**
+     * Write CONTENTS, whose objectId is ID, as the object FILE, unless it
+     * is already stored, and record its name, ID and length.
+     * @param file object file inside the .gitlet directory
+     * @param contents contents
+     * @param id objectId of CONTENTS
+     */
+    void object(File file, byte[] contents, String id) {
+        if (file.exists()) {
+            return;
+        }
+        Utils.writeContents(file, contents);
+        record(OBJECT, file, null);
+        try {
+            _out.writeUTF(id);
+            _out.writeLong(contents.length);
+        } catch (IOException excp) {
+            throw new AssertionError(excp);
+        }
+    }
+
+    /**
+     * Record that FILE is to be replaced by CONTENTS.
+     * @param file file inside the .gitlet directory
+     * @param contents contents
+     */
+    void replace(File file, byte[] contents) {
+        record(REPLACE, file, contents);
+    }
+
+    /**
+     * Record that FILE is to be deleted.
+     * @param file file inside the .gitlet directory
+     */
+    void delete(File file) {
+        record(DELETE, file, null);
+    }
+
+    /**
+     * Record that the branch NAME is to be moved from EXPECTED to VALUE, as
+     * Refs.update does, or deleted if DELETE.
+     * @param name branch name
+     * @param expected head the caller last saw, or null
+     * @param value new head, or null
+     * @param delete true iff the branch is to be deleted
+     */
+    void ref(String name, String expected, String value, boolean delete) {
+        try {
+            _out.writeByte(REF);
+            _out.writeUTF(name);
+            _out.writeUTF(expected == null ? "" : expected);
+            _out.writeUTF(value == null ? "" : value);
+            _out.writeBoolean(delete);
+        } catch (IOException excp) {
+            throw new AssertionError(excp);
+        }
+    }
+
+    /**
+     * Make the recorded change durable with one fsync of the journal, and
+     * then apply it, checkpointing the journal if it has outgrown its
+     * limit. Every branch is checked before the journal is written, so
+     * that one found moved by another command fails the change before
+     * anything is changed.
+     * @throws StaleRefException if a branch was moved meanwhile
+     */
+    void commit() {
+        byte[] body = _bytes.toByteArray();
+        Change change = parse(_repository, body, 0, body.length);
+        for (Move move : change._moves) {
+            if (!Objects.equals(move._expected,
+                    _repository.refs().get(move._name))) {
+                throw new StaleRefException(move._name);
+            }
+        }
+        long size = seal(body);
+        change.apply(_repository, true);
+        if (size > _repository.config().getInt(LIMIT, DEFAULT_LIMIT)) {
+            checkpoint(_repository);
+        }
+    }
+
+    /**
+     * Append the recorded change to the journal and make it durable with
+     * one fsync, without applying it. After this, the change is made even
+     * if the process dies, by the next recover().
+     * @return size of the journal afterwards
+     */
+    long seal() {
+        return seal(_bytes.toByteArray());
+    }
+
+    /**
+     * Append BODY, the recorded change, to the journal between its length
+     * and its checksum, and make it durable as seal() does.
+     * @param body records of the change
+     * @return size of the journal afterwards
+     */
+    private long seal(byte[] body) {
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        ByteBuffer[] frame = {
+            ByteBuffer.allocate(Integer.BYTES).putInt(body.length).flip(),
+            ByteBuffer.wrap(body),
+            ByteBuffer.allocate(1 + Long.BYTES).put(COMMIT)
+                .putLong(crc.getValue()).flip()
+        };
+        Path path = journalFile(_repository).toPath();
+        boolean created = !Files.exists(path);
+        long size;
+        int phase = Trace.enter(Trace.WRITE);
+        try (FileChannel out = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            while (frame[2].hasRemaining()) {
+                out.write(frame);
+            }
+            Trace.count(Trace.BYTES_WRITTEN, body.length + FRAME);
+            size = out.size();
+            if (_sync) {
+                Trace.enter(Trace.SYNC);
+                out.force(false);
+            }
+        } catch (IOException excp) {
+            throw new StorageException("Could not write the journal.");
+        } finally {
+            Trace.exit(phase);
+        }
+        if (_sync && created) {
+            phase = Trace.enter(Trace.SYNC);
+            try {
+                force(path.getParent());
+            } finally {
+                Trace.exit(phase);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Finish the changes a process that died left in the journal of
+     * REPOSITORY, if any: replay those that were committed but not
+     * applied, discard a change torn by the crash, and drop, from the
+     * first change whose objects did not survive, every change, moving
+     * back the branches of those applied. The journal is checkpointed if
+     * anything was replayed or dropped.
+     * @param repository repository
+     */
+    static void recover(Repository repository) {
+        File file = journalFile(repository);
+        if (file.length() == 0) {
+            return;
+        }
+        byte[] journal = Utils.readContents(file);
+        Refs refs = repository.refs();
+        String message = refs.getMessage();
+        refs.setMessage("recover");
+        ArrayList<Change> changes = new ArrayList<>();
+        int end = 0;
+        for (int next = next(journal, end); next > 0;
+                next = next(journal, end)) {
+            changes.add(parse(repository, journal, end + Integer.BYTES,
+                    next - FRAME + Integer.BYTES));
+            end = next;
+        }
+        boolean replayed = false;
+        int intact = 0;
+        try {
+            for (; intact < changes.size(); intact += 1) {
+                Change change = changes.get(intact);
+                if (!change.intact(repository)) {
+                    break;
+                }
+                replayed |= change.replay(repository);
+            }
+            for (int i = changes.size() - 1; i >= intact; i -= 1) {
+                changes.get(i).undo(repository);
+            }
+        } finally {
+            refs.setMessage(message);
+        }
+        if (replayed || intact < changes.size() || end < journal.length) {
+            checkpoint(repository);
+        }
+    }
+
+    /**
+     * Force every file the changes in the journal of REPOSITORY wrote or
+     * deleted to disk, each once however many changes wrote it, and then
+     * empty the journal. The emptied journal need not be forced: a journal
+     * found still full after a crash holds only changes already applied.
+     * @param repository repository
+     */
+    static void checkpoint(Repository repository) {
+        File file = journalFile(repository);
+        if (file.length() == 0) {
+            return;
+        }
+        if (synced(repository)) {
+            byte[] journal = Utils.readContents(file);
+            LinkedHashSet<File> written = new LinkedHashSet<>();
+            int end = 0;
+            for (int next = next(journal, end); next > 0;
+                    next = next(journal, end)) {
+                parse(repository, journal, end + Integer.BYTES,
+                        next - FRAME + Integer.BYTES)
+                    .written(repository, written);
+                end = next;
+            }
+            sync(written);
+        }
+        int phase = Trace.enter(Trace.WRITE);
+        try (FileChannel out = FileChannel.open(file.toPath(),
+                StandardOpenOption.WRITE)) {
+            out.truncate(0);
+        } catch (IOException excp) {
+            throw new StorageException("Could not write the journal.");
+        } finally {
+            Trace.exit(phase);
+        }
+    }
+
+    /**
+     * Record an operation of kind KIND on FILE, with CONTENTS if they are
+     * not null. The object id and length of an OBJECT record follow.
+     * @param kind record kind
+     * @param file file inside the .gitlet directory
+     * @param contents contents, or null
+     */
+    private void record(byte kind, File file, byte[] contents) {
+        String path = file.getPath();
+        String dir = new File(_repository.dir()).getPath() + File.separator;
+        if (!path.startsWith(dir)) {
+            throw new IllegalArgumentException("not in the repository");
+        }
+        try {
+            _out.writeByte(kind);
+            _out.writeUTF(path.substring(dir.length()));
+            if (contents != null) {
+                _out.writeInt(contents.length);
+                _out.write(contents);
+            }
+        } catch (IOException excp) {
+            throw new AssertionError(excp);
+        }
+    }
+
+    /**
+     * Return the journal file of REPOSITORY.
+     * @param repository repository
+     * @return file
+     */
+    private static File journalFile(Repository repository) {
+        return new File(repository.dir() + JOURNAL_FILE);
+    }
+
+    /**
+     * Return the end of the committed change that starts at START in
+     * JOURNAL, or 0 if there is none there, because the journal ends or
+     * the change was torn by a crash.
+     * @param journal journal contents
+     * @param start offset of the change's frame
+     * @return offset just past the change's frame, or 0
+     */
+    private static int next(byte[] journal, int start) {
+        if (journal.length - start < FRAME) {
+            return 0;
+        }
+        ByteBuffer frame = ByteBuffer.wrap(journal);
+        int length = frame.getInt(start);
+        if (length < 0 || length > journal.length - start - FRAME) {
+            return 0;
+        }
+        int body = start + Integer.BYTES;
+        CRC32 crc = new CRC32();
+        crc.update(journal, body, length);
+        if (frame.get(body + length) != COMMIT
+                || frame.getLong(body + length + 1) != crc.getValue()) {
+            return 0;
+        }
+        return start + length + FRAME;
+    }
+
+    /**
+     * Return the change recorded in JOURNAL from START to END, whose files
+     * are those of REPOSITORY.
+     * @param repository repository
+     * @param journal journal contents
+     * @param start offset of the first record
+     * @param end offset just past the last record
+     * @return change
+     */
+    private static Change parse(Repository repository, byte[] journal,
+            int start, int end) {
+        Change change = new Change();
+        DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(journal, start, end - start));
+        try {
+            while (in.available() > 0) {
+                byte kind = in.readByte();
+                if (kind == REF) {
+                    change._moves.add(new Move(in.readUTF(),
+                            emptyToNull(in.readUTF()),
+                            emptyToNull(in.readUTF()), in.readBoolean()));
+                    continue;
+                }
+                File file = new File(repository.dir() + in.readUTF());
+                if (kind == OBJECT) {
+                    change._files.add(new Write(file, in.readUTF(),
+                            in.readLong()));
+                } else {
+                    byte[] contents = null;
+                    if (kind == REPLACE) {
+                        contents = new byte[in.readInt()];
+                        in.readFully(contents);
+                    }
+                    change._files.add(new Write(kind, file, contents));
+                }
+            }
+        } catch (EOFException excp) {
+            throw new StorageException("The journal is damaged.");
+        } catch (IOException excp) {
+            throw new AssertionError(excp);
+        }
+        return change;
+    }
+
+    /** One change recorded in the journal. */
+    private static class Change {
+
+        /**
+         * Apply this change to REPOSITORY, whose objects are already
+         * written: rewrite and delete its files, then move its branches,
+         * skipping those already moved unless LIVE.
+         * @param repository repository
+         * @param live true iff the change is being made now
+         */
+        void apply(Repository repository, boolean live) {
+            for (Write write : _files) {
+                if (write._kind == DELETE) {
+                    write._file.delete();
+                } else if (write._kind == REPLACE) {
+                    Utils.writeContents(write._file, write._contents);
+                }
+            }
+            for (Move move : _moves) {
+                if (!live && move.done(repository.refs())) {
+                    continue;
+                } else if (move._delete) {
+                    repository.refs().delete(move._name, move._expected);
+                } else {
+                    repository.refs().update(move._name, move._expected,
+                            move._value);
+                }
+            }
+        }
+
+        /**
+         * Return true iff this change, found in the journal of REPOSITORY
+         * at startup, is still to be applied: its branches are each at
+         * its old or new head, and not all at their new heads.
+         * @param repository repository
+         * @return true iff the change was cut short
+         */
+        boolean pending(Repository repository) {
+            Refs refs = repository.refs();
+            boolean applied = true;
+            boolean pending = true;
+            for (Move move : _moves) {
+                boolean done = move.done(refs);
+                applied &= done;
+                pending &= done || Objects.equals(refs.get(move._name),
+                        move._expected);
+            }
+            return pending && !applied;
+        }
+
+        /**
+         * Return true iff every object of this change survived in
+         * REPOSITORY: each is hashed if the change is still to be
+         * applied, and otherwise only its length is checked, since an
+         * applied change is checked at every start until the checkpoint.
+         * @param repository repository
+         * @return true iff no object is missing or damaged
+         */
+        boolean intact(Repository repository) {
+            boolean hash = pending(repository);
+            for (Write write : _files) {
+                if (write._kind != OBJECT) {
+                    continue;
+                } else if (!write._file.isFile()
+                        || write._file.length() != write._length) {
+                    return false;
+                } else if (hash && !write._id.equals(
+                        objectId(Utils.readContents(write._file)))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Finish this change in REPOSITORY at startup, applying it again
+         * if it was cut short. Any other change was applied, or was
+         * overtaken by later changes.
+         * @param repository repository
+         * @return true iff the change was applied now
+         */
+        boolean replay(Repository repository) {
+            if (pending(repository)) {
+                apply(repository, false);
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Move back each branch of this change that is at its new head in
+         * REPOSITORY to its old head, last move first.
+         * @param repository repository
+         */
+        void undo(Repository repository) {
+            Refs refs = repository.refs();
+            for (int i = _moves.size() - 1; i >= 0; i -= 1) {
+                Move move = _moves.get(i);
+                if (move.done(refs)) {
+                    refs.update(move._name, move._delete ? null : move._value,
+                            move._expected);
+                }
+            }
+        }
+
+        /**
+         * Add the files of REPOSITORY this change wrote or deleted to
+         * WRITTEN.
+         * @param repository repository
+         * @param written files written
+         */
+        void written(Repository repository, Set<File> written) {
+            for (Move move : _moves) {
+                written.addAll(repository.refs().files(move._name));
+            }
+            for (Write write : _files) {
+                written.add(write._file);
+            }
+        }
+
+        /** The branch moves, in the order recorded. */
+        private final ArrayList<Move> _moves = new ArrayList<>();
+
+        /** The objects written and files replaced or deleted, in the order
+         *  recorded. */
+        private final ArrayList<Write> _files = new ArrayList<>();
+    }
+
+    /** A recorded move of a branch. */
+    private static class Move {
+
+        /**
+         * A move of the branch NAME from EXPECTED to VALUE, or its deletion
+         * if DELETE.
+         * @param name branch name
+         * @param expected old head, or null
+         * @param value new head, or null
+         * @param delete true iff the branch is deleted
+         */
+        Move(String name, String expected, String value, boolean delete) {
+            _name = name;
+            _expected = expected;
+            _value = value;
+            _delete = delete;
+        }
+
+        /**
+         * Return true iff REFS already show this move made.
+         * @param refs branches
+         * @return true iff the branch is at its new head, or is gone if
+         *         deleted
+         */
+        boolean done(Refs refs) {
+            return _delete ? !refs.contains(_name)
+                    : Objects.equals(refs.get(_name), _value);
+        }
+
+        /** Branch name. */
+        private final String _name;
+
+        /** Old head, or null. */
+        private final String _expected;
+
+        /** New head, or null. */
+        private final String _value;
+
+        /** True iff the branch is deleted. */
+        private final boolean _delete;
+    }
+
+    /** A recorded object, rewrite or deletion of a file. */
+    private static class Write {
+
+        /**
+         * A record of kind KIND on FILE, with CONTENTS unless it is a
+         * deletion.
+         * @param kind REPLACE or DELETE
+         * @param file file
+         * @param contents contents, or null
+         */
+        Write(byte kind, File file, byte[] contents) {
+            _kind = kind;
+            _file = file;
+            _contents = contents;
+            _id = null;
+            _length = -1;
+        }
+
+        /**
+         * A record of the object FILE, whose objectId is ID and which is
+         * LENGTH bytes long.
+         * @param file object file
+         * @param id objectId of its contents
+         * @param length its length
+         */
+        Write(File file, String id, long length) {
+            _kind = OBJECT;
+            _file = file;
+            _contents = null;
+            _id = id;
+            _length = length;
+        }
+
+        /** Record kind. */
+        private final byte _kind;
+
+        /** File written or deleted. */
+        private final File _file;
+
+        /** Contents written, or null. */
+        private final byte[] _contents;
+
+        /** The objectId of an object, or null. */
+        private final String _id;
+
+        /** The length of an object, or -1. */
+        private final long _length;
+    }
+
+    /**
+     * Force FILES, those of them that exist, and the directories holding
+     * them to disk.
+     * @param files files written or deleted
+     */
+    private static void sync(Collection<File> files) {
+        int phase = Trace.enter(Trace.SYNC);
+        try {
+            LinkedHashSet<File> dirs = new LinkedHashSet<>();
+            for (File file : files) {
+                dirs.add(file.getAbsoluteFile().getParentFile());
+                if (file.isFile()) {
+                    force(file.toPath());
+                }
+            }
+            for (File dir : dirs) {
+                force(dir.toPath());
+            }
+        } finally {
+            Trace.exit(phase);
+        }
+    }
+
+    /**
+     * Force the file or directory PATH to disk, if the system allows it.
+     * @param path file or directory
+     */
+    private static void force(Path path) {
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException excp) {
+            /* Not every system can sync a directory. */
+        }
+    }
+
+    /**
+     * Return S, or null if S is empty.
+     * @param s string
+     * @return S or null
+     */
+    private static String emptyToNull(String s) {
+        return s.isEmpty() ? null : s;
+    }
+
+    /** The repository changed. */
+    private final Repository _repository;
+
+    /** True iff the journal is forced to disk. */
+    private final boolean _sync;
+
+    /** The records so far. */
+    private final ByteArrayOutputStream _bytes = new ByteArrayOutputStream();
+
+    /** Writes records to _bytes. */
+    private final DataOutputStream _out = new DataOutputStream(_bytes);
+}
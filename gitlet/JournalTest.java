@@ -0,0 +1,193 @@
+package gitlet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tests for the write-ahead journal.
+ *  @author Sam Khano Tim Chan
+ */
+public class JournalTest {
+
+    /** Working directory of the repository under test. */
+    private static final String WORK = "journal-work";
+
+    /** The repository under test. */
+    private Repository _repository;
+
+    @Before
+    public void setUp() {
+        tearDown();
+        Gitlet.init(WORK);
+        _repository = new Repository(WORK + "/.gitlet/");
+    }
+
+    @After
+    public void tearDown() {
+        if (new File(WORK).exists()) {
+            Utils.recursiveDelete(new File(WORK));
+        }
+    }
+
+    /** Return the journal file of the repository under test. */
+    private File journalFile() {
+        return new File(_repository.dir() + Journal.JOURNAL_FILE);
+    }
+
+    /**
+     * Record a change that moves master from its head to a new head and
+     * deletes and rewrites two files, in a journal that is not synced.
+     * @return the journal, not yet committed
+     */
+    private Journal change() {
+        Journal journal = new Journal(_repository, false);
+        String head = _repository.refs().get("master");
+        journal.ref("master", head, "1".repeat(40), false);
+        journal.replace(new File(_repository.dir() + "a"), "new".getBytes());
+        journal.delete(new File(_repository.dir() + "b"));
+        return journal;
+    }
+
+    @Test
+    public void commitTest() {
+        Utils.writeContents(new File(_repository.dir() + "b"), new byte[1]);
+        change().commit();
+        assertEquals("1".repeat(40), _repository.refs().get("master"));
+        assertArrayEquals("new".getBytes(),
+                Utils.readContents(new File(_repository.dir() + "a")));
+        assertFalse(new File(_repository.dir() + "b").exists());
+        assertTrue(journalFile().length() > 0);
+        Journal.checkpoint(_repository);
+        assertEquals(0, journalFile().length());
+    }
+
+    @Test
+    public void appliedTest() {
+        change().commit();
+        long size = journalFile().length();
+        Journal journal = new Journal(_repository, false);
+        journal.ref("master", "1".repeat(40), "2".repeat(40), false);
+        journal.commit();
+        assertTrue(journalFile().length() > size);
+        Utils.writeContents(new File(_repository.dir() + "a"),
+                "later".getBytes());
+        int entries = _repository.refs().log("master").size();
+        Journal.recover(_repository);
+        assertEquals(entries, _repository.refs().log("master").size());
+        assertArrayEquals("later".getBytes(),
+                Utils.readContents(new File(_repository.dir() + "a")));
+        assertTrue(journalFile().length() > 0);
+        Repo repo = _repository.loadRepo();
+        repo.updateBranch("1".repeat(40));
+        _repository.saveRepo(repo);
+        assertEquals(0, journalFile().length());
+    }
+
+    @Test
+    public void limitTest() {
+        Utils.writeContents(new File(_repository.dir() + Config.CONFIG_FILE),
+                (Journal.LIMIT + "=1\n").getBytes());
+        change().commit();
+        assertEquals("1".repeat(40), _repository.refs().get("master"));
+        assertEquals(0, journalFile().length());
+    }
+
+    @Test
+    public void staleTest() {
+        long size = journalFile().length();
+        Journal journal = change();
+        _repository.refs().update("master",
+                _repository.refs().get("master"), "2".repeat(40));
+        try {
+            journal.commit();
+            fail();
+        } catch (StaleRefException excp) {
+            assertEquals("master", excp.getBranch());
+        }
+        assertFalse(new File(_repository.dir() + "a").exists());
+        assertEquals(size, journalFile().length());
+    }
+
+    @Test
+    public void recoverTest() {
+        change().seal();
+        assertFalse(new File(_repository.dir() + "a").exists());
+        Repository restarted = new Repository(_repository.dir());
+        Journal.recover(restarted);
+        assertEquals("1".repeat(40), restarted.refs().get("master"));
+        assertTrue(new File(_repository.dir() + "a").exists());
+        assertEquals(0, journalFile().length());
+        int entries = restarted.refs().log("master").size();
+        assertEquals("recover",
+                restarted.refs().log("master").get(entries - 1).message());
+        Journal.recover(restarted);
+        assertEquals(entries, restarted.refs().log("master").size());
+    }
+
+    @Test
+    public void objectTest() {
+        File object = new File(_repository.dir() + "c");
+        byte[] contents = new byte[1 << 20];
+        Journal journal = change();
+        journal.object(object, contents, Journal.objectId(contents));
+        journal.seal();
+        assertTrue(journalFile().length() < 1024);
+        Journal.recover(_repository);
+        assertEquals("1".repeat(40), _repository.refs().get("master"));
+        assertArrayEquals(contents, Utils.readContents(object));
+    }
+
+    @Test
+    public void damagedTest() {
+        String head = _repository.refs().get("master");
+        File object = new File(_repository.dir() + "c");
+        Journal journal = change();
+        journal.object(object, "object".getBytes(),
+                Journal.objectId("object".getBytes()));
+        journal.seal();
+        Utils.writeContents(object, "damage".getBytes());
+        Journal.recover(_repository);
+        assertEquals(head, _repository.refs().get("master"));
+        assertFalse(new File(_repository.dir() + "a").exists());
+        assertEquals(0, journalFile().length());
+    }
+
+    @Test
+    public void undoTest() {
+        String head = _repository.refs().get("master");
+        File object = new File(_repository.dir() + "c");
+        Journal journal = change();
+        journal.object(object, "object".getBytes(),
+                Journal.objectId("object".getBytes()));
+        journal.commit();
+        journal = new Journal(_repository, false);
+        journal.ref("master", "1".repeat(40), "2".repeat(40), false);
+        journal.commit();
+        Utils.writeContents(object, new byte[0]);
+        Journal.recover(_repository);
+        assertEquals(head, _repository.refs().get("master"));
+        assertEquals(0, journalFile().length());
+    }
+
+    @Test
+    public void tornTest() {
+        String head = _repository.refs().get("master");
+        change().seal();
+        byte[] sealed = Utils.readContents(journalFile());
+        Utils.writeContents(journalFile(),
+                Arrays.copyOf(sealed, sealed.length - 1));
+        Journal.recover(_repository);
+        assertEquals(head, _repository.refs().get("master"));
+        assertFalse(new File(_repository.dir() + "a").exists());
+        assertEquals(0, journalFile().length());
+    }
+}
@@ -0,0 +1,104 @@
+package gitlet;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The write lock of a repository, held by the one command at a time that
+ * may change it. The lock is a file in the .gitlet directory that is
+ * created only if it is absent, so it excludes writers in other processes
+ * as well as in this one. Readers take no lock: every file a writer
+ * changes is replaced by renaming a complete new copy over it, and
+ * objects are written before anything refers to them, so a reader always
+ * sees some state the repository was in.
+ *
+ * Every command that changes the repository takes this one lock, even
+ * one that only moves a branch, such as a push accepted by the server,
+ * so writers to different branches wait for each other. Branch moves
+ * cannot do with the per-branch check of Refs alone: one made outside
+ * a journaled change first checkpoints the Journal, which would empty
+ * it under a commit that another writer has sealed but not yet applied,
+ * and a commit empties the staging area before it moves its branch, so
+ * a branch moved by another writer meanwhile would leave it half made.
+ * @author Sam Khano Tim Chan
+ */
+class Lock implements AutoCloseable {
+
+    /** Name of the lock file inside the .gitlet directory. */
+    static final String LOCK_FILE = "lock";
+
+    /** Key setting how long, in milliseconds, to wait for the lock. */
+    static final String TIMEOUT = "core.lockTimeout";
+
+    /** Default wait for the lock, in milliseconds. */
+    static final int DEFAULT_TIMEOUT = 1000;
+
+    /** Milliseconds between attempts to take the lock. */
+    private static final int RETRY_INTERVAL = 10;
+
+    /**
+     * Take the write lock of the repository in the .gitlet directory DIR,
+     * waiting up to TIMEOUT milliseconds for another command to release
+     * it. The lock file records the id of the process holding it.
+     * @param dir path of the .gitlet directory
+     * @param timeout longest wait, in milliseconds
+     * @throws StateException if another command keeps the lock
+     */
+    Lock(String dir, long timeout) {
+        _file = Paths.get(dir + LOCK_FILE);
+        long deadline = System.currentTimeMillis() + timeout;
+        int phase = Trace.enter(Trace.LOCK);
+        try {
+            while (!tryLock()) {
+                if (System.currentTimeMillis() >= deadline) {
+                    throw new StateException("Another gitlet command is"
+                            + " changing this repository; if none is"
+                            + " running, delete " + _file + ".");
+                }
+                try {
+                    Thread.sleep(RETRY_INTERVAL);
+                } catch (InterruptedException excp) {
+                    Thread.currentThread().interrupt();
+                    throw new StateException("Interrupted.");
+                }
+            }
+        } finally {
+            Trace.exit(phase);
+        }
+    }
+
+    /**
+     * Create the lock file unless it exists.
+     * @return true iff the lock was taken
+     */
+    private boolean tryLock() {
+        try {
+            Files.write(_file, (ProcessHandle.current().pid() + "\n")
+                    .getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE_NEW);
+            return true;
+        } catch (FileAlreadyExistsException excp) {
+            return false;
+        } catch (IOException excp) {
+            throw new StorageException("Could not lock the repository.");
+        }
+    }
+
+    /** Release the lock. */
+    @Override
+    public void close() {
+        try {
+            Files.deleteIfExists(_file);
+        } catch (IOException excp) {
+            throw new StorageException("Could not unlock the repository.");
+        }
+    }
+
+    /** The lock file. */
+    private final Path _file;
+}
@@ -1,11 +1,26 @@
 package gitlet;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.TreeSet;
 
 /**
@@ -14,30 +29,60 @@ import java.util.TreeSet;
  */
 public class Main {
 
-    /** Path for the .gitlet directory. */
-    private static String gitletDir = ".gitlet/";
-
     /** Path for the default .gitlet directory. */
     static final String DEFAULT_GIT_DIR = ".gitlet/";
 
-    /** Path to the default commit subdirectory. */
-    private static String commitDir = getGitletDir() + "commits/";
+    /** Commands that run without the repository's write lock: those that
+     *  only read it, and those that create a repository or run other
+     *  commands, which take the lock themselves. */
+    private static final Set<String> UNLOCKED = Set.of("log", "global-log",
+            "status", "find", "diff", "reflog", "init", "clone", "batch",
+            "server", "serve");
+
+    /** Error for a push that would need history beyond the shallow
+     *  boundary. */
+    static final String SHALLOW_PUSH =
+        "Cannot push history beyond the shallow boundary.";
+
+    /** Message of a merge that fast-forwarded the current branch. */
+    static final String FAST_FORWARDED = "Current branch fast-forwarded.";
 
-    /** Path to directory for staged files. */
-    private static String stagedDir = getGitletDir() + "staged/";
+    /** Name of the sparse-checkout rule file inside .gitlet. */
+    static final String SPARSE_FILE = "sparse-checkout";
 
-    /** Path to directory for removed files. */
-    private static String removedDir = getGitletDir() + "removed/";
+    /** Whether progress is reported to standard error, for each thread,
+     *  so that the server's commands can each answer their own user. */
+    private static final ThreadLocal<Boolean> INTERACTIVE =
+        ThreadLocal.withInitial(() -> System.console() != null);
 
-    /** Path the the repo file. */
-    private static String repoP = getGitletDir() + "repo.txt";
+    /** The repository commands act on, for each thread, so that threads
+     *  can work on different repositories at once. */
+    private static final ThreadLocal<Repository> REPOSITORY =
+        ThreadLocal.withInitial(() -> new Repository(DEFAULT_GIT_DIR));
+
+    /**
+     * Return the repository commands of this thread act on, which is the
+     * one in the current directory unless another was set.
+     * @return repository
+     */
+    static Repository repository() {
+        return REPOSITORY.get();
+    }
+
+    /**
+     * Make commands of this thread act on REPO.
+     * @param repo repository
+     */
+    static void setRepository(Repository repo) {
+        REPOSITORY.set(repo);
+    }
 
     /**
      * Load the current repository object.
      * @return Repo obj
      */
     static Repo loadRepo() {
-        return Utils.loadObj(new Repo("temp"), getGitletDir() + "repo.txt");
+        return repository().loadRepo();
     }
 
     /**
@@ -46,10 +91,9 @@ public class Main {
      * @return commit
      */
     static Commit loadCommit(String commitId) {
-        Commit currCommit = new Commit("temp");
-        currCommit = Utils.loadObj(currCommit, Main.commitDir + commitId);
+        Commit currCommit = repository().loadCommit(commitId);
         if (currCommit == null) {
-            error("No commit with that id exists.");
+            throw new NotFoundException("No commit with that id exists.");
         }
         return currCommit;
     }
@@ -71,28 +115,83 @@ public class Main {
      * will be the current branch.
      */
     static void init() {
-        File f = new File(getGitletDir());
+        File f = new File(repository().dir());
         if (f.mkdir()) {
-            Repo gRepo = new Repo();
-            Utils.saveObj(gRepo, repoP);
+            Repo gRepo = new Repo(repository());
+            repository().saveRepo(gRepo);
             commit("initial commit");
         } else {
-            error("A gitlet version-control system already exists"
-                    + " in the current directory.");
+            throw new StateException("A gitlet version-control system"
+                    + " already exists in the current directory.");
         }
     }
 
+    /**
+     * Make the current directory a copy of the repository at PATH, which
+     * names a .gitlet directory or the directory containing one. Every
+     * branch of the source is brought over as origin/[branch], the source's
+     * current branch is created and checked out, and the source is added
+     * as the remote origin. Objects are hard-linked from the source when
+     * possible, and copied otherwise.
+     * @param path source repository
+     */
+    static void clone(String path) {
+        File source = new File(path.replace("/", File.separator));
+        if (new File(source, ".gitlet").isDirectory()) {
+            source = new File(source, ".gitlet");
+        }
+        String sourceDir = source.getPath() + File.separator;
+        Repository sourceRepository = new Repository(sourceDir);
+        Repo sourceRepo = sourceRepository.loadRepo();
+        if (sourceRepo == null) {
+            throw new NotFoundException("Remote directory not found.");
+        }
+        if (new File(repository().dir()).exists()) {
+            throw new StateException("A gitlet version-control system"
+                    + " already exists in the current directory.");
+        }
+        String branch = sourceRepo.getCurrentBranchName();
+        String head = sourceRepo.getCurrentCommit();
+        Commit headCommit = sourceRepository.loadCommit(head);
+        for (String f : headCommit.getTracked()) {
+            if (repository().file(f).exists()) {
+                throw new StateException("There is an untracked file in the"
+                        + " way; delete it or add it first.");
+            }
+        }
+        new File(repository().dir()).mkdir();
+        Repo repo = new Repo(repository());
+        Transfer transfer = new Transfer(sourceDir, repository().dir());
+        transfer.linkObjects(true);
+        transfer.reportTo(progressStream(), "Cloning objects");
+        for (Map.Entry<String, String> b
+                : new TreeMap<>(sourceRepo.getBranchInfo()).entrySet()) {
+            if (b.getValue() != null && !b.getKey().contains("/")) {
+                transfer.send(transfer.missingCommits(b.getValue()),
+                        Transfer.DEFAULT_PARALLELISM);
+                repo.updateBranch("origin/" + b.getKey(), b.getValue());
+            }
+        }
+        repo.getBranchInfo().remove("master");
+        repo.updateBranch(branch, head);
+        repo.setCurrentBranch(branch);
+        repo.addRemote("origin",
+                source.getPath().replace(File.separator, "/") + "/");
+        repository().saveRepo(repo);
+        materialize(new Commit("temp"), headCommit);
+    }
+
     /**
      * Add a file to the staged directory.
      * @param file added
      */
     static void add(String file) {
-        File f = new File(file);
+        File f = repository().file(file);
         if (!f.exists()) {
-            error("File does not exist.");
+            throw new NotFoundException("File does not exist.");
         }
 
-        File checkRemoved = new File(removedDir + file);
+        File checkRemoved = new File(repository().removedDir() + file);
         if (checkRemoved.exists()) {
             checkRemoved.delete();
         }
@@ -102,7 +201,8 @@ public class Main {
         byte[] cpy = Utils.readContents(f);
         String cpyId = Utils.sha1("blobs", cpy);
         if (!cpyId.equals(currCommit.getBlobs().get(file))) {
-            Utils.writeContents(new File(stagedDir + file), cpy);
+            Utils.writeContents(new File(repository().stagedDir() + file),
+                    cpy);
         }
     }
 
@@ -112,19 +212,18 @@ public class Main {
      */
     static void commit(String s) {
         if (s.isEmpty()) {
-            error("Please enter a commit message.");
+            throw new UsageException("Please enter a commit message.");
         }
         Repo gRepo = loadRepo();
 
         String commitParent = gRepo.getCurrentCommit();
         String timeStamp = Utils.timeStamp();
         Commit c = new Commit(s, timeStamp, commitParent);
-        c.setBlobs();
-        String commitHash = c.hashId();
-        gRepo.updateBranch(commitHash);
-
-        Utils.saveObj(c, commitDir + commitHash);
-        Utils.saveObj(gRepo, repoP);
+        repository().journaled(() -> {
+            c.setBlobs(repository());
+            gRepo.updateBranch(repository().saveCommit(c));
+            repository().saveRepo(gRepo);
+        });
     }
 
     /**
@@ -135,18 +234,19 @@ public class Main {
         Repo repo = loadRepo();
         Commit currCommit = loadCurrCommit(repo);
 
-        File fInStaged = new File(stagedDir + file);
+        File fInStaged = new File(repository().stagedDir() + file);
         boolean staged = fInStaged.exists();
         Set<String> tracked = currCommit.getTracked();
-        File f = new File(file);
+        File f = repository().file(file);
         if (!f.exists() && !tracked.contains(file)) {
-            error("File does not exist.");
+            throw new NotFoundException("File does not exist.");
         }
 
         if (tracked.contains(file) || staged) {
             if (tracked.contains(file)) {
                 byte[] temp = new byte[1];
-                Utils.writeContents(new File(removedDir + file), temp);
+                Utils.writeContents(new File(repository().removedDir() + file),
+                        temp);
                 if (f.exists()) {
                     f.delete();
                 }
@@ -155,7 +255,7 @@ public class Main {
                 fInStaged.delete();
             }
         } else {
-            error("No reason to remove the file.");
+            throw new StateException("No reason to remove the file.");
         }
     }
 
@@ -173,14 +273,10 @@ public class Main {
      */
     static void log() {
         Repo gRepo = loadRepo();
-        Commit currCommit = new Commit("temp");
-        String currCommitId = gRepo.getCurrentCommit();
-        while (currCommitId != null) {
-            currCommit = Utils.loadObj(currCommit,
-                    Main.commitDir + currCommitId);
-
-            printCommit(currCommit);
-            currCommitId = currCommit.getParent();
+        Iterator<Commit> history =
+            repository().history(gRepo.getCurrentCommit());
+        while (history.hasNext()) {
+            printCommit(history.next());
         }
     }
 
@@ -199,14 +295,52 @@ public class Main {
      * @param proc implements PrintFucntion
      */
     static void searchCommits(PrintFunction proc) {
-        List<String> commits = Utils.plainFilenamesIn(Main.commitDir);
+        String commitDir = repository().commitDir();
+        List<String> commits = Utils.plainFilenamesIn(commitDir);
         Commit currCommit = new Commit("temp");
         for (String commitId : commits) {
-            currCommit = Utils.loadObj(currCommit, Main.commitDir + commitId);
+            currCommit = Utils.loadObj(currCommit, commitDir + commitId);
             proc.print(currCommit);
         }
     }
 
+    /**
+     * Print the reflog of a branch, newest change first: for each change,
+     * the head the branch was left at, or all zeros if it was deleted, the
+     * branch with the number of changes since, and the command that made
+     * the change. ARGS is reflog [branch name]; the current branch is
+     * used if none is given.
+     * @param args args
+     */
+    static void reflog(String... args) {
+        if (args.length > 2) {
+            throw new UsageException("Incorrect operands.");
+        }
+        String branch = args.length == 2 ? args[1]
+                : loadRepo().getCurrentBranchName();
+        List<Refs.Entry> entries = repository().refs().log(branch);
+        if (entries.isEmpty()) {
+            throw new NotFoundException(
+                    "A branch with that name does not exist.");
+        }
+        StringBuilder out = new StringBuilder();
+        for (int i = entries.size() - 1, n = 0; i >= 0; i -= 1, n += 1) {
+            Refs.Entry entry = entries.get(i);
+            out.append(entry.newId() == null ? Refs.NO_COMMIT
+                    : entry.newId()).append(' ').append(branch)
+                .append("@{").append(n).append("}: ")
+                .append(entry.message()).append('\n');
+        }
+        System.out.print(out);
+    }
+
+    /**
+     * Move the loose branches into the packed-refs file.
+     */
+    static void packRefs() {
+        repository().refs().pack();
+    }
+
     /**
      * Print log of all the commits.
      */
@@ -219,11 +353,12 @@ public class Main {
      * @param commitMsg log message for the commit/s
      */
     static void find(String commitMsg) {
-        List<String> commits = Utils.plainFilenamesIn(Main.commitDir);
+        String commitDir = repository().commitDir();
+        List<String> commits = Utils.plainFilenamesIn(commitDir);
         Commit currCommit = new Commit("temp");
         boolean found = false;
         for (String commitId : commits) {
-            currCommit = Utils.loadObj(currCommit, Main.commitDir + commitId);
+            currCommit = Utils.loadObj(currCommit, commitDir + commitId);
             String log = currCommit.getLogMessage();
             if (log.contains(commitMsg)) {
                 Utils.print(currCommit.hashId());
@@ -231,7 +366,7 @@ public class Main {
             }
         }
         if (!found) {
-            error("Found no commit with that message.");
+            throw new NotFoundException("Found no commit with that message.");
         }
     }
 
@@ -260,13 +395,15 @@ public class Main {
         System.out.println();
         System.out.println("=== Staged Files ===");
 
-        List<String> stagedFiles = Utils.plainFilenamesIn(stagedDir);
+        List<String> stagedFiles = Utils
+                .plainFilenamesIn(repository().stagedDir());
         Utils.printAll(stagedFiles);
 
         System.out.println();
         System.out.println("=== Removed Files ===");
 
-        List<String> removedFiles = Utils.plainFilenamesIn(removedDir);
+        List<String> removedFiles = Utils
+                .plainFilenamesIn(repository().removedDir());
         Utils.printAll(removedFiles);
 
         System.out.println();
@@ -295,7 +432,8 @@ public class Main {
             List<String> removed) {
         TreeSet<String> untracked = new TreeSet<>();
         TreeSet<String> tracked = currCommit.getTracked();
-        List<String> allFiles = Utils.plainFilenamesIn(new File("."));
+        List<String> allFiles = Utils.plainFilenamesIn(repository().workTree(),
+                repository().ignoreRules());
         for (String file : allFiles) {
             if (!tracked.contains(file) && !staged.contains(file)
                     && !removed.contains(file)) {
@@ -305,6 +443,30 @@ public class Main {
         return untracked;
     }
 
+    /**
+     * Return the settings of the repository commands act on.
+     * @return settings
+     */
+    static Config config() {
+        return repository().config();
+    }
+
+    /**
+     * Print the setting named in ARGS, or set it to the value given there.
+     * @param args command, key and optional value
+     */
+    static void config(String[] args) {
+        if (args.length == 2) {
+            String value = config().get(args[1], null);
+            if (value == null) {
+                throw new NotFoundException("No such setting.");
+            }
+            Utils.print(value);
+        } else {
+            config().set(args[1], args[2]);
+        }
+    }
+
     /**
      * Return a set of files that have been modified but not staged for commit.
      * @param currCommit c
@@ -317,7 +479,10 @@ public class Main {
         TreeSet<String> modifiedNotStaged = new TreeSet<>();
         File f;
         for (String tracked : currCommit.getTracked()) {
-            f = new File(tracked);
+            if (!inSparse(tracked)) {
+                continue;
+            }
+            f = repository().file(tracked);
             boolean staged = stagedFiles.contains(tracked);
             if (!f.exists() && !staged) {
                 if (!removedFiles.contains(tracked)) {
@@ -325,7 +490,7 @@ public class Main {
                 }
             } else if (!staged && !removedFiles.contains(tracked)) {
                 String oldBlobId = currCommit.getBlobs().get(tracked);
-                byte[] curr = Utils.readContents(new File(tracked));
+                byte[] curr = Utils.readContents(f);
                 String newBlobId = Utils.sha1("blobs", curr);
                 if (!oldBlobId.equals(newBlobId)) {
                     modifiedNotStaged.add(tracked + " (modified)");
@@ -334,13 +499,14 @@ public class Main {
         }
 
         for (String staged : stagedFiles) {
-            f = new File(staged);
+            f = repository().file(staged);
             if (!f.exists()) {
                 modifiedNotStaged.add(staged + " (deleted)");
             } else {
-                byte[] stg = Utils.readContents(new File(stagedDir + staged));
+                byte[] stg = Utils.readContents(
+                        new File(repository().stagedDir() + staged));
                 String stgBlobId = Utils.sha1("blobs", stg);
-                byte[] curr = Utils.readContents(new File(staged));
+                byte[] curr = Utils.readContents(f);
                 String currBlobId = Utils.sha1("blobs", curr);
                 if (!stgBlobId.equals(currBlobId)) {
                     modifiedNotStaged.add(staged + " (modified)");
@@ -360,44 +526,39 @@ public class Main {
         case 2:
             String postBranch = args[1];
             if (!repo.getBranchInfo().keySet().contains(postBranch)) {
-                error("No such branch exists.");
+                throw new NotFoundException("No such branch exists.");
             }
             String preBranch = repo.getCurrentBranchName();
             if (postBranch.equals(preBranch)) {
-                error("No need to checkout the current branch.");
+                throw new StateException(
+                        "No need to checkout the current branch.");
             }
             String postCommitId = repo.getCommit(postBranch);
             Commit postCommit = loadCommit(postCommitId);
             Commit preCommit = loadCommit(repo.getCurrentCommit());
-            List<String> staged = Utils.plainFilenamesIn(stagedDir);
-            List<String> removed = Utils.plainFilenamesIn(removedDir);
+            List<String> staged = Utils
+                    .plainFilenamesIn(repository().stagedDir());
+            List<String> removed = Utils
+                    .plainFilenamesIn(repository().removedDir());
             TreeSet<String> untracked = untracked(preCommit, staged, removed);
             Set<String> postCommitFiles = postCommit.getBlobs().keySet();
             for (String f : untracked) {
-                if (postCommitFiles.contains(f)) {
-                    error("There is an untracked file in the way; "
-                            + "delete it or add it first.");
-                }
-            }
-            for (String fName : postCommitFiles) {
-                overrideFile(postCommit, fName);
-            }
-            for (String f : preCommit.getBlobs().keySet()) {
-                if (!postCommitFiles.contains(f)) {
-                    File del = new File(f);
-                    del.delete();
+                if (postCommitFiles.contains(f) && inSparse(f)) {
+                    throw new StateException("There is an untracked file in the"
+                            + " way; delete it or add it first.");
                 }
             }
+            materialize(preCommit, postCommit);
             repo.setCurrentBranch(postBranch);
-            Utils.clearStage();
-            Utils.saveObj(repo, repoP);
+            Utils.clearStage(repository());
+            repository().saveRepo(repo);
             break;
         case 3:
             if (args[1].equals("--")) {
                 Commit currCommit = loadCurrCommit(repo);
                 overrideFile(currCommit, args[2]);
             } else {
-                error("Incorrect operands.");
+                throw new UsageException("Incorrect operands.");
             }
             break;
         case 4:
@@ -406,13 +567,148 @@ public class Main {
                 Commit commit = loadCommit(newCommitId);
                 overrideFile(commit, args[3]);
             } else {
-                error("Incorrect operands.");
+                throw new UsageException("Incorrect operands.");
             }
             break;
         default:
-            error("Incorrect operands.");
-            break;
+            throw new UsageException("Incorrect operands.");
+        }
+    }
+
+    /**
+     * Print a unified diff as given by ARGS, which has the form
+     * diff [commit] [commit] [-- file]. With no commits, the head commit is
+     * compared with the working directory; with one, that commit is; with
+     * two, the first commit is compared with the second. Files whose blob
+     * ids are equal on both sides are skipped without being read. Without
+     * a file, files deleted on one side and added on the other are paired
+     * up as renames when they are similar enough, and an added file left
+     * over is shown as a copy of the file on the first side, deleted or
+     * not, that it is most similar to, if any is similar enough.
+     * @param args command and operands
+     */
+    static void diff(String[] args) {
+        int operands = args.length - 1;
+        String only = null;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--")) {
+                if (i != args.length - 2) {
+                    throw new UsageException("Incorrect operands.");
+                }
+                only = args[i + 1];
+                operands = i - 1;
+            }
+        }
+        if (operands > 2) {
+            throw new UsageException("Incorrect operands.");
+        }
+        Repo repo = loadRepo();
+        Commit head = loadCurrCommit(repo);
+        Commit from = operands == 0 ? head : loadCommit(getFullId(args[1]));
+        TreeMap<String, String> fromIds = new TreeMap<>(from.getBlobs());
+        TreeMap<String, String> toIds;
+        HashMap<String, byte[]> work = new HashMap<>();
+        if (operands == 2) {
+            toIds = new TreeMap<>(loadCommit(getFullId(args[2])).getBlobs());
+        } else {
+            toIds = workingBlobs(head, work);
+        }
+        TreeSet<String> files = new TreeSet<>(fromIds.keySet());
+        files.addAll(toIds.keySet());
+        if (only != null) {
+            if (!files.contains(only)) {
+                throw new NotFoundException(
+                        "File does not exist in that commit.");
+            }
+            files.retainAll(Collections.singleton(only));
+        }
+        Map<String, String> renames = new TreeMap<>();
+        Map<String, String> copies = new TreeMap<>();
+        if (only == null) {
+            TreeMap<String, String> deleted = new TreeMap<>(fromIds);
+            deleted.keySet().removeAll(toIds.keySet());
+            TreeMap<String, String> added = new TreeMap<>(toIds);
+            added.keySet().removeAll(fromIds.keySet());
+            renames = Renames.detect(deleted, added,
+                f -> readBlob(deleted.get(f)),
+                f -> work.containsKey(f) ? work.get(f)
+                        : readBlob(added.get(f)),
+                config().getInt(Renames.THRESHOLD,
+                        Renames.DEFAULT_THRESHOLD),
+                config().getInt(Renames.LIMIT, Renames.DEFAULT_LIMIT));
+            files.removeAll(renames.values());
+            added.keySet().removeAll(renames.values());
+            copies = Renames.copies(fromIds, added,
+                f -> readBlob(fromIds.get(f)),
+                f -> work.containsKey(f) ? work.get(f)
+                        : readBlob(added.get(f)),
+                config().getInt(Renames.THRESHOLD,
+                        Renames.DEFAULT_THRESHOLD),
+                config().getInt(Renames.LIMIT, Renames.DEFAULT_LIMIT));
+        }
+        String algorithm = config().get(Diff.ALGORITHM, Diff.MYERS);
+        for (String name : files) {
+            boolean copy = copies.containsKey(name);
+            String f = copy ? copies.get(name) : name;
+            String g = copy ? name : renames.getOrDefault(name, name);
+            String fromId = fromIds.get(f);
+            String toId = toIds.get(g);
+            if (fromId != null && fromId.equals(toId) && f.equals(g)) {
+                continue;
+            }
+            System.out.println("diff a/" + f + " b/" + g);
+            if (!f.equals(g)) {
+                String kind = copy ? "copy" : "rename";
+                System.out.println(kind + " from " + f);
+                System.out.println(kind + " to " + g);
+                if (fromId.equals(toId)) {
+                    continue;
+                }
+            }
+            byte[] a = fromId == null ? new byte[0] : readBlob(fromId);
+            byte[] b = toId == null ? new byte[0] : work.containsKey(g)
+                    ? work.get(g) : readBlob(toId);
+            String aName = fromId == null ? "/dev/null" : "a/" + f;
+            String bName = toId == null ? "/dev/null" : "b/" + g;
+            if (Diff.isBinary(a) || Diff.isBinary(b)) {
+                System.out.println("Binary files " + aName + " and " + bName
+                        + " differ");
+                continue;
+            }
+            List<String> aLines = Diff.splitLines(a);
+            List<String> bLines = Diff.splitLines(b);
+            Diff.writeUnified(System.out, aName, bName, aLines, bLines,
+                    Diff.diff(aLines, bLines, algorithm), Diff.CONTEXT);
+        }
+        System.out.flush();
+    }
+
+    /**
+     * Return the blob ids the files staged or tracked by HEAD would have if
+     * they were added from the working directory now, leaving out files
+     * marked for removal or deleted. The contents read are kept in WORK.
+     * Tracked files outside the sparse-checkout set keep their ids in HEAD.
+     * @param head head commit
+     * @param work contents of the files read, by name
+     * @return file name to blob id
+     */
+    static TreeMap<String, String> workingBlobs(Commit head,
+            HashMap<String, byte[]> work) {
+        TreeSet<String> files = new TreeSet<>(head.getTracked());
+        files.addAll(Utils.plainFilenamesIn(repository().stagedDir()));
+        files.removeAll(Utils.plainFilenamesIn(repository().removedDir()));
+        TreeMap<String, String> ids = new TreeMap<>();
+        for (String f : files) {
+            File file = repository().file(f);
+            if (!inSparse(f) && head.getBlob(f) != null) {
+                ids.put(f, head.getBlob(f));
+            } else if (file.isFile()) {
+                byte[] contents = Utils.readContents(file);
+                work.put(f, contents);
+                ids.put(f, Utils.sha1("blobs", contents));
+            }
         }
+        return ids;
     }
 
     /**
@@ -423,7 +719,8 @@ public class Main {
      */
     static String getFullId(String newCommitId) {
         int abbrevLength = newCommitId.length();
-        List<String> commitList = Utils.plainFilenamesIn(commitDir);
+        List<String> commitList = Utils.plainFilenamesIn(
+                repository().commitDir());
         String currCommitId;
         for (String commitId : commitList) {
             currCommitId = commitId.substring(0, abbrevLength);
@@ -443,14 +740,123 @@ public class Main {
     static void overrideFile(Commit commit, String fileName) {
         HashMap<String, String> blobs = commit.getBlobs();
         if (blobs.containsKey(fileName)) {
-            File file = new File(getGitletDir() + blobs.get(fileName));
-            byte[] clone = Utils.readContents(file);
-            Utils.writeContents(new File(fileName), clone);
+            checkoutBlob(fileName, blobs.get(fileName));
+        } else {
+            throw new NotFoundException("File does not exist in that commit.");
+        }
+    }
+
+    /**
+     * Write version BLOBID of FILENAME to the working directory.
+     * @param fileName name to write over
+     * @param blobId SHA-1 of the version
+     */
+    static void checkoutBlob(String fileName, String blobId) {
+        Utils.checkoutContents(repository().object(blobId),
+                repository().file(fileName));
+    }
+
+    /**
+     * Replace the files of PRECOMMIT in the working directory with those of
+     * POSTCOMMIT. Only files inside the sparse-checkout set are written;
+     * files of PRECOMMIT that POSTCOMMIT lacks, or that are outside the set,
+     * are deleted.
+     * @param preCommit commit currently checked out
+     * @param postCommit commit to check out
+     */
+    static void materialize(Commit preCommit, Commit postCommit) {
+        Set<String> postCommitFiles = postCommit.getBlobs().keySet();
+        for (String f : postCommitFiles) {
+            if (inSparse(f)) {
+                overrideFile(postCommit, f);
+            }
+        }
+        for (String f : preCommit.getBlobs().keySet()) {
+            if (!postCommitFiles.contains(f) || !inSparse(f)) {
+                File del = repository().file(f);
+                del.delete();
+            }
+        }
+    }
+
+    /**
+     * Return true iff FILE belongs in the working directory, that is, if
+     * sparse checkout is off or FILE matches its rules.
+     * @param file name of the file
+     * @return boolean
+     */
+    static boolean inSparse(String file) {
+        PathRules rules = repository().sparseRules();
+        return rules.isEmpty() || rules.matches(file, false);
+    }
+
+    /**
+     * Run the sparse-checkout subcommand in ARGS: set replaces the rules
+     * with the remaining operands, disable removes them, and list prints
+     * them. After set or disable, the files of the head commit are added to
+     * or removed from the working directory to match the new rules.
+     * Files outside the set stay tracked and are carried into new commits
+     * from their parent unchanged.
+     * @param args command, subcommand and rules
+     */
+    static void sparseCheckout(String[] args) {
+        File file = new File(repository().dir() + SPARSE_FILE);
+        if (args.length == 2 && args[1].equals("list")) {
+            if (file.exists()) {
+                System.out.print(new String(Utils.readContents(file),
+                        StandardCharsets.UTF_8));
+            }
+            return;
+        }
+        Repo repo = loadRepo();
+        Commit currCommit = loadCurrCommit(repo);
+        TreeSet<String> before = new TreeSet<>();
+        for (String f : currCommit.getTracked()) {
+            if (inSparse(f)) {
+                before.add(f);
+            }
+        }
+        if (args.length >= 3 && args[1].equals("set")) {
+            StringBuilder rules = new StringBuilder();
+            for (int i = 2; i < args.length; i++) {
+                rules.append(args[i]).append('\n');
+            }
+            Utils.writeContents(file, rules.toString()
+                    .getBytes(StandardCharsets.UTF_8));
+        } else if (args.length == 2 && args[1].equals("disable")) {
+            file.delete();
         } else {
-            error("File does not exist in that commit.");
+            throw new UsageException("Incorrect operands.");
+        }
+        repository().reloadSparseRules();
+        for (String f : currCommit.getTracked()) {
+            File work = repository().file(f);
+            boolean wanted = inSparse(f);
+            if (wanted && !before.contains(f) && !work.exists()) {
+                overrideFile(currCommit, f);
+            } else if (!wanted && before.contains(f) && work.isFile()) {
+                byte[] contents = Utils.readContents(work);
+                if (Utils.sha1("blobs", contents)
+                        .equals(currCommit.getBlob(f))) {
+                    work.delete();
+                }
+            }
         }
     }
 
+    /**
+     * Stage version BLOBID of FILE straight from the object store, without
+     * writing it to the working directory.
+     * @param file name of the file
+     * @param blobId SHA-1 of the version to stage
+     */
+    static void stageBlob(String file, String blobId) {
+        File checkRemoved = new File(repository().removedDir() + file);
+        checkRemoved.delete();
+        Utils.checkoutContents(repository().object(blobId),
+                new File(repository().stagedDir() + file));
+    }
+
     /**
      * Create a new branch named BRANCH.
      * @param branch Name of the branch
@@ -458,7 +864,7 @@ public class Main {
     static void branch(String branch) {
         Repo repo = loadRepo();
         repo.newBranch(branch);
-        Utils.saveObj(repo, repoP);
+        repository().saveRepo(repo);
     }
 
     /**
@@ -468,7 +874,7 @@ public class Main {
     static void removeBranch(String branch) {
         Repo repo = loadRepo();
         repo.removeBranch(branch);
-        Utils.saveObj(repo, repoP);
+        repository().saveRepo(repo);
     }
 
     /**
@@ -486,37 +892,22 @@ public class Main {
         Commit preCommit = loadCommit(preCommitId);
 
         Set<String> postCommitFiles = postCommit.getBlobs().keySet();
-        Set<String> preCommitFiles = preCommit.getBlobs().keySet();
 
-        List<String> staged = Utils.plainFilenamesIn(stagedDir);
-        List<String> removed = Utils.plainFilenamesIn(removedDir);
+        List<String> staged = Utils.plainFilenamesIn(repository().stagedDir());
+        List<String> removed = Utils
+                .plainFilenamesIn(repository().removedDir());
         TreeSet<String> untracked = untracked(preCommit, staged, removed);
         for (String f : untracked) {
-            if (postCommitFiles.contains(f)) {
-                error("There is an untracked file in the way; "
-                        + "delete it or add it first.");
-            }
-        }
-        String[] args = new String[4];
-        args[0] = "checkout";
-        args[1] = postCommitId;
-        args[2] = "--";
-        for (String postFile : postCommitFiles) {
-            args[3] = postFile;
-            checkout(args);
-        }
-
-        File f;
-        for (String preFile : preCommitFiles) {
-            if (!postCommitFiles.contains(preFile)) {
-                f = new File(preFile);
-                f.delete();
+            if (postCommitFiles.contains(f) && inSparse(f)) {
+                throw new StateException("There is an untracked file in the"
+                        + " way; delete it or add it first.");
             }
         }
+        materialize(preCommit, postCommit);
 
         repo.updateBranch(postCommitId);
-        Utils.clearStage();
-        Utils.saveObj(repo, repoP);
+        Utils.clearStage(repository());
+        repository().saveRepo(repo);
     }
 
     /**
@@ -525,9 +916,9 @@ public class Main {
      */
     static int commitChainLength(String commitId) {
         int length = 0;
-        Commit currCommit = new Commit("temp");
+        Commit currCommit;
         while (commitId != null) {
-            currCommit = Utils.loadObj(currCommit, Main.commitDir + commitId);
+            currCommit = repository().loadCommit(commitId);
             length++;
             commitId = currCommit.getParent();
         }
@@ -545,21 +936,26 @@ public class Main {
     }
 
     /**
-     * Merge BRANCHNAME with the current branch.
+     * Merge BRANCHNAME with the current branch, and return whether that
+     * only fast-forwarded the current branch, which the caller reports.
      * @param branchName branch
+     * @return true iff the current branch was fast-forwarded
      */
-    static void merge(String branchName) {
+    static boolean merge(String branchName) {
         Repo repo = loadRepo();
         if (!repo.containsBranch(branchName)) {
-            error("A branch with that name does not exist.");
+            throw new NotFoundException(
+                    "A branch with that name does not exist.");
         }
-        List<String> stagedList = Utils.plainFilenamesIn(stagedDir);
-        List<String> removedList = Utils.plainFilenamesIn(removedDir);
+        List<String> stagedList = Utils
+                .plainFilenamesIn(repository().stagedDir());
+        List<String> removedList = Utils
+                .plainFilenamesIn(repository().removedDir());
         if (stagedList.size() != 0 || removedList.size() != 0) {
-            error("You have uncommitted changes.");
+            throw new StateException("You have uncommitted changes.");
         }
         if (branchName.equals(repo.getCurrentBranchName())) {
-            error("Cannot merge a branch with itself.");
+            throw new StateException("Cannot merge a branch with itself.");
         }
         String currCommitId = repo.getCurrentCommit();
         String mergingCommitId = repo.getCommit(branchName);
@@ -569,63 +965,84 @@ public class Main {
         TreeSet<String> untracked = untracked(currCommit, stagedList,
                 removedList);
         for (String f : untracked) {
-            if (mergeFiles.contains(f)) {
-                error("There is an untracked file in the way; "
-                        + "delete it or add it first.");
+            if (mergeFiles.contains(f) && inSparse(f)) {
+                throw new StateException("There is an untracked file in the"
+                        + " way; delete it or add it first.");
             }
         }
         Commit splitPointCommit = findSplitCommit(currCommit, mergingCommit,
                 repo, branchName);
+        if (splitPointCommit == null) {
+            return true;
+        }
         mergeHelper(splitPointCommit, mergingCommit, currCommit, mergeFiles,
                 mergingCommitId, repo, branchName);
+        return false;
     }
 
     /**
-     * Find the split point between two commits.
+     * Find the split point between two commits: the latest commit in the
+     * history of the current commit that is also in the history of the
+     * given one. Histories end at the shallow boundary, if any. If the
+     * split point is the current commit, the current branch is
+     * fast-forwarded to the given one instead.
      * @param currCommit head commit of current branch
      * @param mergingCommit head commit of given branch
      * @param repo repository
      * @param branchName name of the given branch
-     * @return split point Commit
+     * @return split point Commit, or null after a fast-forward
      */
     static Commit findSplitCommit(Commit currCommit,
             Commit mergingCommit, Repo repo, String branchName) {
         String mergingCommitId = repo.getCommit(branchName);
-        int currBranchLength = branchLength(repo.getCurrentBranchName());
-        int mergingBranchLength = branchLength(branchName);
-        int currMinusMerging = currBranchLength - mergingBranchLength;
-        if (currMinusMerging > 0) {
-            for (int i = currMinusMerging; i > 0; i--) {
-                currCommit = loadCommit(currCommit.getParent());
-            }
+        Set<String> shallow = Shallow.load(repository().dir());
+        HashSet<String> currHistory = new HashSet<>();
+        for (Commit c = currCommit; c != null; c = parent(c, shallow)) {
+            currHistory.add(c.hashId());
         }
-        if (currMinusMerging < 0) {
-            for (int i = currMinusMerging; i < 0; i++) {
-                mergingCommit = loadCommit(mergingCommit.getParent());
-            }
+        Commit split = mergingCommit;
+        while (split != null && !currHistory.contains(split.hashId())) {
+            split = parent(split, shallow);
         }
-        if (currCommit.equals(mergingCommit)) {
-            if (currMinusMerging < 0) {
-                String currBranchName = repo.getCurrentBranchName();
-                checkout(new String[] { "checkout", branchName });
-                repo.setCurrentBranch(currBranchName);
-                repo.updateBranch(mergingCommitId);
-                Utils.saveObj(repo, repoP);
-                System.out.println("Current branch fast-forwarded.");
-                System.exit(0);
-            } else {
-                error("Given branch is an ancestor of the current branch.");
-            }
+        if (split == null) {
+            throw new StateException(
+                    "No split point within the shallow history.");
         }
-        while (!currCommit.equals(mergingCommit)) {
-            currCommit = loadCommit(currCommit.getParent());
-            mergingCommit = loadCommit(mergingCommit.getParent());
+        if (split.equals(mergingCommit)) {
+            throw new StateException(
+                    "Given branch is an ancestor of the current branch.");
         }
-        return currCommit;
+        if (split.equals(currCommit)) {
+            String currBranchName = repo.getCurrentBranchName();
+            checkout(new String[] { "checkout", branchName });
+            repo.setCurrentBranch(currBranchName);
+            repo.updateBranch(mergingCommitId);
+            repository().saveRepo(repo);
+            return null;
+        }
+        return split;
     }
 
     /**
-     * Merge helper method.
+     * Return the parent of commit C, or null if it has none or if C is in
+     * SHALLOW, the shallow boundary.
+     * @param c commit
+     * @param shallow ids of commits whose parents are missing
+     * @return parent commit, or null
+     */
+    static Commit parent(Commit c, Set<String> shallow) {
+        if (c.getParent() == null || shallow.contains(c.hashId())) {
+            return null;
+        }
+        return loadCommit(c.getParent());
+    }
+
+    /**
+     * Merge helper method. The merged snapshot is worked out in memory
+     * first, as a map from file names to blob ids; if there are no
+     * conflicts it is committed directly, otherwise the merged files are
+     * staged. Either way, the working directory is then updated in a single
+     * pass that only touches the files whose blobs changed.
      * @param splitPointCommit s
      * @param mergingCommit m
      * @param currCommit c
@@ -644,8 +1061,15 @@ public class Main {
         fileUniverse.addAll(mergeFiles);
         fileUniverse.addAll(splitPointFiles);
 
-        boolean conflict = false;
+        TreeMap<String, String> merged = new TreeMap<>(currCommit.getBlobs());
+        TreeMap<String, Merge3> lineConflicts = new TreeMap<>();
+        TreeMap<String, String[]> fileConflicts = new TreeMap<>();
+        Set<String> handled = mergeRenames(splitPointCommit, currCommit,
+                mergingCommit, merged, lineConflicts, fileConflicts);
         for (String f : fileUniverse) {
+            if (handled.contains(f)) {
+                continue;
+            }
             String fm = mergingCommit.getBlob(f);
             String fc = currCommit.getBlob(f);
             String fs = splitPointCommit.getBlob(f);
@@ -653,29 +1077,253 @@ public class Main {
             inS = splitPointFiles.contains(f);
             inC = currFiles.contains(f);
             inM = mergeFiles.contains(f);
-            if (inS && inC && inM && !fc.equals(fm) && fs.equals(fc)) {
-                checkout(new String[] { "checkout", mergingCommitId, "--", f });
-                add(f);
-            } else if (inM && !inS && !inC) {
-                checkout(new String[] { "checkout", mergingCommitId, "--", f });
-                add(f);
+            if ((inS && inC && inM && !fc.equals(fm) && fs.equals(fc))
+                    || (inM && !inS && !inC)) {
+                merged.put(f, fm);
             } else if (!inM && inS && inC && fc.equals(fs)) {
-                remove(f);
+                merged.remove(f);
+            } else if (inS && inC && inM && !fc.equals(fm) && !fs.equals(fc)
+                    && !fs.equals(fm)) {
+                mergeThree(f, fs, fc, fm, merged, lineConflicts,
+                        fileConflicts);
             } else if ((!inS && inM && inC && !fc.equals(fm))
                     || (inS && !inC && inM && !fs.equals(fm))
-                    || (inS && inC && !inM && !fs.equals(fc))
-                    || (inS && inC && inM && !fc.equals(fm) && !fs.equals(fc)
-                            && !fs.equals(fm))) {
-                conflict = true;
-                Utils.resolveConflicts(currCommit, inC, mergingCommit, inM, f);
+                    || (inS && inC && !inM && !fs.equals(fc))) {
+                fileConflicts.put(f, new String[] { fc, fm });
             }
         }
+        boolean conflict = !fileConflicts.isEmpty()
+                || !lineConflicts.isEmpty();
         if (!conflict) {
+            if (merged.equals(currCommit.getBlobs())) {
+                throw new StateException("No changes added to the commit.");
+            }
             String msg = String.format("Merged %s with %s.",
                     repo.getCurrentBranchName(), branchName);
-            commit(msg);
+            commitSnapshot(repo, msg, merged);
         } else {
-            error("Encountered a merge conflict.");
+            stageSnapshot(currCommit.getBlobs(), merged);
+        }
+        updateWorkingTree(currCommit.getBlobs(), merged);
+        for (Map.Entry<String, String[]> f : fileConflicts.entrySet()) {
+            Utils.resolveConflicts(repository(), f.getValue()[0],
+                    f.getValue()[1], f.getKey());
+        }
+        for (String f : lineConflicts.keySet()) {
+            File work = repository().file(f);
+            work.delete();
+            try (OutputStream out = new BufferedOutputStream(
+                    new FileOutputStream(work))) {
+                lineConflicts.get(f).write(out);
+            } catch (IOException excp) {
+                throw new StorageException("Could not write " + f + ".");
+            }
+        }
+        if (conflict) {
+            throw new MergeConflictException("Encountered a merge conflict.");
+        }
+    }
+
+    /**
+     * Merge the files renamed since SPLIT on one side of a merge and left
+     * in place on the other, so that the changes made to the old name
+     * follow the file to its new name instead of becoming a conflict. The
+     * results go into MERGED, LINECONFLICTS and FILECONFLICTS as in
+     * mergeHelper.
+     * @param split split point
+     * @param curr current commit
+     * @param given given commit
+     * @param merged merged snapshot
+     * @param lineConflicts files conflicting line by line
+     * @param fileConflicts files conflicting as a whole
+     * @return the old and new names of the files merged here
+     */
+    static Set<String> mergeRenames(Commit split, Commit curr, Commit given,
+            TreeMap<String, String> merged,
+            TreeMap<String, Merge3> lineConflicts,
+            TreeMap<String, String[]> fileConflicts) {
+        HashSet<String> handled = new HashSet<>();
+        Map<String, String> inGiven = renames(split, given);
+        Map<String, String> inCurr = renames(split, curr);
+        for (Map.Entry<String, String> r : inGiven.entrySet()) {
+            String from = r.getKey();
+            String to = r.getValue();
+            if (inCurr.containsKey(from) || curr.getBlob(from) == null
+                    || curr.getBlob(to) != null) {
+                continue;
+            }
+            handled.add(from);
+            handled.add(to);
+            merged.remove(from);
+            mergeThree(to, split.getBlob(from), curr.getBlob(from),
+                    given.getBlob(to), merged, lineConflicts, fileConflicts);
+        }
+        for (Map.Entry<String, String> r : inCurr.entrySet()) {
+            String from = r.getKey();
+            String to = r.getValue();
+            if (inGiven.containsKey(from) || given.getBlob(from) == null
+                    || given.getBlob(to) != null) {
+                continue;
+            }
+            handled.add(from);
+            handled.add(to);
+            mergeThree(to, split.getBlob(from), curr.getBlob(to),
+                    given.getBlob(from), merged, lineConflicts,
+                    fileConflicts);
+        }
+        return handled;
+    }
+
+    /**
+     * Return the renames from the files of FROM to those of TO, as a map
+     * from old name to new name, using the rename settings.
+     * @param from older commit
+     * @param to newer commit
+     * @return old name to new name
+     */
+    static Map<String, String> renames(Commit from, Commit to) {
+        TreeMap<String, String> deleted = new TreeMap<>(from.getBlobs());
+        deleted.keySet().removeAll(to.getTracked());
+        TreeMap<String, String> added = new TreeMap<>(to.getBlobs());
+        added.keySet().removeAll(from.getTracked());
+        return Renames.detect(deleted, added,
+            f -> readBlob(deleted.get(f)), f -> readBlob(added.get(f)),
+            config().getInt(Renames.THRESHOLD, Renames.DEFAULT_THRESHOLD),
+            config().getInt(Renames.LIMIT, Renames.DEFAULT_LIMIT));
+    }
+
+    /**
+     * Merge file F, whose blob was FS at the split point, FC in the current
+     * branch and FM in the given branch, into MERGED, or record it in
+     * LINECONFLICTS or FILECONFLICTS.
+     * @param f name of the merged file
+     * @param fs blob at the split point
+     * @param fc blob in the current branch
+     * @param fm blob in the given branch
+     * @param merged merged snapshot
+     * @param lineConflicts files conflicting line by line
+     * @param fileConflicts files conflicting as a whole
+     */
+    static void mergeThree(String f, String fs, String fc, String fm,
+            TreeMap<String, String> merged,
+            TreeMap<String, Merge3> lineConflicts,
+            TreeMap<String, String[]> fileConflicts) {
+        if (fc.equals(fm) || fs.equals(fm)) {
+            merged.put(f, fc);
+        } else if (fs.equals(fc)) {
+            merged.put(f, fm);
+        } else {
+            Merge3 lines = mergeLines(fs, fc, fm);
+            if (lines == null) {
+                fileConflicts.put(f, new String[] { fc, fm });
+            } else if (lines.hasConflicts()) {
+                lineConflicts.put(f, lines);
+            } else {
+                merged.put(f, saveBlob(lines.contents()));
+            }
+        }
+    }
+
+    /**
+     * Return the contents of the blob BLOBID.
+     * @param blobId SHA-1 of the blob
+     * @return contents
+     */
+    static byte[] readBlob(String blobId) {
+        return repository().readBlob(blobId);
+    }
+
+    /**
+     * Merge line by line the blobs FC and FM, which both changed the blob
+     * FS.
+     * @param fs blob at the split point
+     * @param fc blob in the current branch
+     * @param fm blob in the given branch
+     * @return the merge, or null if one of the blobs is binary and they
+     *         can only conflict as a whole
+     */
+    static Merge3 mergeLines(String fs, String fc, String fm) {
+        byte[] base = readBlob(fs);
+        byte[] ours = readBlob(fc);
+        byte[] theirs = readBlob(fm);
+        if (Diff.isBinary(base) || Diff.isBinary(ours)
+                || Diff.isBinary(theirs)) {
+            return null;
+        }
+        return new Merge3(Diff.splitLines(base), Diff.splitLines(ours),
+                Diff.splitLines(theirs),
+                config().get(Diff.ALGORITHM, Diff.MYERS));
+    }
+
+    /**
+     * Store CONTENTS as a blob, unless it is already stored.
+     * @param contents contents of a file
+     * @return SHA-1 of the blob
+     */
+    static String saveBlob(byte[] contents) {
+        return repository().saveBlob(contents);
+    }
+
+    /**
+     * Make a commit with message MSG whose snapshot is BLOBS, on top of the
+     * current branch of REPO, without going through the staging area.
+     * @param repo repository
+     * @param msg log message
+     * @param blobs file name to blob id
+     */
+    static void commitSnapshot(Repo repo, String msg,
+            Map<String, String> blobs) {
+        Commit c = new Commit(msg, Utils.timeStamp(),
+                repo.getCurrentCommit());
+        c.setBlobs(blobs);
+        repository().journaled(() -> {
+            repo.updateBranch(repository().saveCommit(c));
+            repository().saveRepo(repo);
+        });
+    }
+
+    /**
+     * Stage the differences between snapshots PRE and POST: additions and
+     * changes are staged from the object store, and files missing from POST
+     * are marked for removal.
+     * @param pre file name to blob id before
+     * @param post file name to blob id after
+     */
+    static void stageSnapshot(Map<String, String> pre,
+            Map<String, String> post) {
+        for (Map.Entry<String, String> entry : post.entrySet()) {
+            if (!entry.getValue().equals(pre.get(entry.getKey()))) {
+                stageBlob(entry.getKey(), entry.getValue());
+            }
+        }
+        for (String f : pre.keySet()) {
+            if (!post.containsKey(f)) {
+                Utils.writeContents(new File(repository().removedDir() + f),
+                        new byte[1]);
+            }
+        }
+    }
+
+    /**
+     * Bring the working directory from snapshot PRE to snapshot POST,
+     * writing only the files whose blobs differ and which are inside the
+     * sparse-checkout set, and deleting the files POST lacks.
+     * @param pre file name to blob id before
+     * @param post file name to blob id after
+     */
+    static void updateWorkingTree(Map<String, String> pre,
+            Map<String, String> post) {
+        for (Map.Entry<String, String> entry : post.entrySet()) {
+            String f = entry.getKey();
+            if (!entry.getValue().equals(pre.get(f)) && inSparse(f)) {
+                checkoutBlob(f, entry.getValue());
+            }
+        }
+        for (String f : pre.keySet()) {
+            if (!post.containsKey(f)) {
+                File del = repository().file(f);
+                del.delete();
+            }
         }
     }
 
@@ -684,14 +1332,63 @@ public class Main {
      * <COMMAND> <OPERAND> ....
      */
     public static void main(String... args) {
-        File f = new File(Main.getGitletDir());
+        try {
+            run(args);
+        } catch (GitletException excp) {
+            System.err.println(excp.getMessage());
+            System.exit(0);
+        }
+    }
+
+    /**
+     * Run the command in ARGS, as main does, but report failures by
+     * throwing GitletException instead of ending the process. ARGS may
+     * start with --trace or --trace=FILE, which traces the command, as
+     * does setting GITLET_TRACE; see Trace.
+     * @param args command and operands
+     */
+    static void run(String... args) {
+        boolean optioned = args.length > 0
+                && args[0].startsWith(Trace.OPTION);
+        String destination = null;
+        if (optioned) {
+            destination = Trace.destination(args[0]);
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+        Trace trace = Trace.start(args, optioned, destination);
+        try {
+            execute(args);
+        } finally {
+            if (trace != null) {
+                trace.finish();
+            }
+        }
+    }
+
+    /**
+     * Run the command in ARGS, as run does, without tracing it.
+     * @param args command and operands
+     */
+    private static void execute(String... args) {
+        File f = new File(repository().dir());
         if (args.length == 0) {
-            error("Please enter a command.");
+            throw new UsageException("Please enter a command.");
+        }
+        if (!args[0].equals("init") && !args[0].equals("clone")
+                && !args[0].equals("batch") && !f.exists()) {
+            throw new NotFoundException(
+                    "Not in an initialized gitlet directory.");
         }
-        if (!args[0].equals("init") && !f.exists()) {
-            error("Not in an initialized gitlet directory.");
+        repository().refs().setMessage(String.join(" ", args));
+        if (UNLOCKED.contains(args[0])) {
+            commandInterpreter(args);
+        } else {
+            try (Lock lock = repository().lock()) {
+                Journal.recover(repository());
+                repository().migrate();
+                commandInterpreter(args);
+            }
         }
-        commandInterpreter(args);
     }
 
     /**
@@ -701,7 +1398,31 @@ public class Main {
     public static void commandInterpreter(String... args) {
         if (args[0].equals("checkout")) {
             checkout(args);
-            System.exit(0);
+            return;
+        }
+        if (args[0].equals("diff")) {
+            diff(args);
+            return;
+        }
+        if (args[0].equals("sparse-checkout")) {
+            sparseCheckout(args);
+            return;
+        }
+        if (args[0].equals("reflog")) {
+            reflog(args);
+            return;
+        }
+        if (args[0].equals("fetch")) {
+            fetch(args);
+            return;
+        }
+        if (args[0].equals("serve")) {
+            serve(args);
+            return;
+        }
+        if (args[0].equals("batch")) {
+            batch(args);
+            return;
         }
         if (args.length == 1) {
             switch (args[0]) {
@@ -717,12 +1438,16 @@ public class Main {
             case "global-log":
                 globalLog();
                 break;
-            case "commit":
-                error("Incorrect operands.");
+            case "pack-refs":
+                packRefs();
                 break;
-            default:
-                error("No command with that name exists.");
+            case "server":
+                server();
                 break;
+            case "commit":
+                throw new UsageException("Incorrect operands.");
+            default:
+                throw new UsageException("No command with that name exists.");
             }
         } else if (args.length == 2) {
             commmandTwo(args);
@@ -731,21 +1456,20 @@ public class Main {
             case "add-remote":
                 addRemote(args);
                 break;
+            case "config":
+                config(args);
+                break;
             case "push":
                 push(args);
                 break;
-            case "fetch":
-                fetch(args);
-                break;
             case "pull":
                 pull(args);
                 break;
             default:
-                error("Incorrect operands.");
-                break;
+                throw new UsageException("Incorrect operands.");
             }
         } else {
-            error("Incorrect operands.");
+            throw new UsageException("Incorrect operands.");
         }
     }
 
@@ -765,7 +1489,9 @@ public class Main {
             branch(args[1]);
             break;
         case "merge":
-            merge(args[1]);
+            if (merge(args[1])) {
+                System.out.println(FAST_FORWARDED);
+            }
             break;
         case "rm":
             remove(args[1]);
@@ -782,15 +1508,22 @@ public class Main {
         case "rm-remote":
             removeRemote(args[1]);
             break;
-        default:
-            error("Incorrect operands.");
+        case "clone":
+            clone(args[1]);
+            break;
+        case "config":
+            config(args);
             break;
+        default:
+            throw new UsageException("Incorrect operands.");
         }
     }
 
     /**
      * Attempts to append the current branch's commits to the end of the given
-     * branch at the given remote.
+     * branch at the given remote. Only the commits the remote lacks, and
+     * the blobs they use that it lacks, are copied. A directory remote is
+     * changed under its own write lock, as a command run in it would be.
      * @param args args
      */
     static void push(String[] args) {
@@ -798,132 +1531,212 @@ public class Main {
         String remoteName = args[1];
         String remoteBranchName = args[2];
         if (!localRepo.containsRemote(remoteName)) {
-            error("Remote directory not found.");
+            throw new NotFoundException("Remote directory not found.");
         }
-        File remotePath = new File(localRepo.getRepoPath(remoteName)
-                .replace("/", java.io.File.separator));
-        if (!remotePath.exists()) {
-            error("Remote directory not found.");
+        if (Repo.isUrl(localRepo.getRepoPath(remoteName))) {
+            new NetRemote(localRepo.getRepoPath(remoteName)).push(
+                    remoteBranchName, repository().dir(),
+                    localRepo.getCurrentCommit(), progressStream());
+            return;
         }
-        Commit currCommit = new Commit("temp");
-        ArrayList<Commit> localRepoCommits = new ArrayList<>();
-        ArrayList<String> localRepoCommitId = new ArrayList<>();
-        String currCommitId = localRepo.getCurrentCommit();
-        while (currCommitId != null) {
-            currCommit = Utils.loadObj(currCommit,
-                    Main.commitDir + currCommitId);
-            localRepoCommits.add(currCommit);
-            localRepoCommitId.add(currCommitId);
-            currCommitId = currCommit.getParent();
-        }
-        Repo remoteRepo = changeR(localRepo, remoteName);
-        currCommitId = remoteRepo.getBranchInfo().get(remoteBranchName);
-        if (currCommitId == null) {
-            remoteRepo.updateBranch(remoteBranchName, "unset");
-        } else if (!localRepoCommitId.contains(currCommitId)) {
-            error("Please pull down remote changes before pushing.");
-        }
-        ArrayList<Commit> remoteRepoCommits = new ArrayList<>();
-        while (currCommitId != null) {
-            currCommit = Utils.loadObj(currCommit,
-                    Main.commitDir + currCommitId);
-            remoteRepoCommits.add(0, currCommit);
-            currCommitId = currCommit.getParent();
-        }
-        resetPath();
-        HashMap<String, byte[]> pushBlobs = new HashMap<>();
-        int aheadBy = localRepoCommits.size() - remoteRepoCommits.size();
-        for (int i = 0; i < aheadBy; i++) {
-            HashMap<String, String> blobMap = localRepoCommits.get(i)
-                    .getBlobs();
-            for (String fileName : blobMap.keySet()) {
-                pushBlobs.put(blobMap.get(fileName), Utils.readContents(
-                        new File(getGitletDir() + blobMap.get(fileName))));
+        Repository remote = remote(localRepo, remoteName);
+        try (Lock lock = remote.lock()) {
+            Journal.recover(remote);
+            Repo remoteRepo = remote.loadRepo();
+            String head = localRepo.getCurrentCommit();
+            String remoteTip =
+                remoteRepo.getBranchInfo().get(remoteBranchName);
+            Transfer transfer = new Transfer(repository().dir(),
+                    remote.dir());
+            List<String> missing = transfer.missingCommits(head);
+            if (!transfer.boundary().isEmpty()) {
+                throw new StateException(SHALLOW_PUSH);
+            }
+            if (remoteTip != null && !Transfer.isAncestor(
+                    repository().dir(), remoteTip, head)) {
+                throw new StateException(
+                        "Please pull down remote changes before pushing.");
+            }
+            transfer.reportTo(progressStream(), "Writing objects");
+            transfer.send(missing, config().getInt(
+                    Transfer.PARALLELISM, Transfer.DEFAULT_PARALLELISM));
+            remoteRepo.updateBranch(remoteBranchName, head);
+            remote.refs().setMessage("push");
+            try {
+                remote.saveRepo(remoteRepo);
+            } catch (StaleRefException excp) {
+                throw new StateException(
+                        "Please pull down remote changes before pushing.");
             }
         }
-        changeRepo(localRepo, remoteName);
-        for (int i = 0; i < aheadBy; i++) {
-            Utils.saveObj(localRepoCommits.get(i),
-                    getCommitDir() + localRepoCommitId.get(i));
-        }
-        for (String blobId : pushBlobs.keySet()) {
-            Utils.writeContents(new File(getGitletDir() + blobId),
-                    pushBlobs.get(blobId));
-        }
-        remoteRepo.updateBranch(remoteBranchName, localRepo.getCurrentCommit());
-        Utils.saveObj(remoteRepo, getRepoP());
     }
 
     /**
-     * Helper to change Repo and return loaded Repo.
-     * @param local repo
-     * @param remote name
-     * @return loaded repo
+     * Return the stream long-running commands report progress to: standard
+     * error when the user sits at a terminal, and null otherwise, so
+     * scripts and redirected output never see progress lines.
+     * @return progress stream, or null
+     */
+    static PrintStream progressStream() {
+        return INTERACTIVE.get() ? System.err : null;
+    }
+
+    /**
+     * Say whether the user of this thread's commands sits at a terminal,
+     * according to INTERACTIVE.
+     * @param isInteractive true iff progress should be reported
      */
-    static Repo changeR(Repo local, String remote) {
-        changeRepo(local, remote);
-        return loadRepo();
+    static void setInteractive(boolean isInteractive) {
+        INTERACTIVE.set(isInteractive);
     }
 
     /**
-     * Brings down commits from the remote gitlet into the local gitlet.
+     * Return the repository in a directory that REPO has as the remote
+     * REMOTENAME.
+     * @param repo local repo
+     * @param remoteName name of the remote
+     * @return remote repository
+     */
+    static Repository remote(Repo repo, String remoteName) {
+        Repository remote = new Repository(repo.getRepoPath(remoteName)
+                .replace("/", File.separator));
+        if (!new File(remote.dir()).exists()) {
+            throw new NotFoundException("Remote directory not found.");
+        }
+        return remote;
+    }
+
+    /**
+     * Brings down commits from the remote gitlet into the local gitlet, as
+     * given by ARGS, which has the form
+     * fetch [remote name] [remote branch name] [--depth N].
+     * Only the commits the local gitlet lacks, and the blobs they use that
+     * it lacks, are copied, so fetching an up-to-date branch reads no
+     * objects at all. With a depth, at most N commits are brought down,
+     * and the oldest of them is added to the shallow boundary.
      * @param args args
      */
     static void fetch(String[] args) {
+        int depth = 0;
+        ArrayList<String> operands = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--depth") && i + 1 < args.length) {
+                i += 1;
+                try {
+                    depth = Integer.parseInt(args[i]);
+                } catch (NumberFormatException excp) {
+                    depth = -1;
+                }
+                if (depth < 1) {
+                    throw new UsageException("Incorrect operands.");
+                }
+            } else {
+                operands.add(args[i]);
+            }
+        }
+        if (operands.size() != 2) {
+            throw new UsageException("Incorrect operands.");
+        }
         Repo localRepo = loadRepo();
-        String remoteName = args[1];
-        String remoteBranchName = args[2];
+        String remoteName = operands.get(0);
+        String remoteBranchName = operands.get(1);
         if (!localRepo.containsRemote(remoteName)) {
-            error("Remote directory not found.");
+            throw new NotFoundException("Remote directory not found.");
         }
-        File remotePath = new File(localRepo.getRepoPath(remoteName)
-                .replace("/", java.io.File.separator));
-        if (!remotePath.exists()) {
-            error("Remote directory not found.");
+        if (Repo.isUrl(localRepo.getRepoPath(remoteName))) {
+            String tip = new NetRemote(localRepo.getRepoPath(remoteName))
+                .fetch(remoteBranchName, repository().dir(),
+                        localRepo.getBranchInfo().values(), depth,
+                        progressStream());
+            localRepo.updateBranch(remoteName + "/" + remoteBranchName, tip);
+            repository().saveRepo(localRepo);
+            return;
         }
-        changeRepo(localRepo, remoteName);
-        Repo remoteRepo = loadRepo();
-
+        Repository remote = remote(localRepo, remoteName);
+        Repo remoteRepo = remote.loadRepo();
         if (!remoteRepo.getBranchInfo().containsKey(remoteBranchName)) {
-            error("That remote does not have that branch.");
+            throw new NotFoundException(
+                    "That remote does not have that branch.");
         }
+        String remoteTip = remoteRepo.getBranchInfo().get(remoteBranchName);
+        Transfer transfer = new Transfer(remote.dir(), repository().dir());
+        transfer.setDepth(depth);
+        transfer.reportTo(progressStream(), "Receiving objects");
+        transfer.send(transfer.missingCommits(remoteTip), config().getInt(
+                Transfer.PARALLELISM, Transfer.DEFAULT_PARALLELISM));
+        Shallow.add(repository().dir(), transfer.boundary());
+        localRepo.updateBranch(remoteName + "/" + remoteBranchName,
+                remoteTip);
+        repository().saveRepo(localRepo);
+    }
 
-        Commit currCommit = new Commit("temp");
-        ArrayList<Commit> remoteRepoCommits = new ArrayList<>();
-        ArrayList<String> remoteRepoCommitId = new ArrayList<>();
-        String currCommitId = remoteRepo.getBranchInfo().get(remoteBranchName);
-        while (currCommitId != null) {
-            currCommit = Utils.loadObj(currCommit,
-                    getCommitDir() + currCommitId);
-            remoteRepoCommits.add(currCommit);
-            remoteRepoCommitId.add(currCommitId);
-            currCommitId = currCommit.getParent();
-        }
-
-        HashMap<String, byte[]> pullBlobs = new HashMap<>();
-        for (Commit remoteCommit : remoteRepoCommits) {
-            HashMap<String, String> blobMap = remoteCommit.getBlobs();
-            for (String fileName : blobMap.keySet()) {
-                String blobId = blobMap.get(fileName);
-                pullBlobs.put(blobId, Utils.readContents(
-                        new File(localRepo.getRepoPath(remoteName) + blobId)));
+    /**
+     * Serve this repository to gitlet:// remotes until killed, as given by
+     * ARGS, which has the form serve [port]. Port 0 picks a free port.
+     * @param args command and operands
+     */
+    static void serve(String[] args) {
+        int port = Daemon.DEFAULT_PORT;
+        if (args.length > 2) {
+            throw new UsageException("Incorrect operands.");
+        } else if (args.length == 2) {
+            try {
+                port = Integer.parseInt(args[1]);
+            } catch (NumberFormatException excp) {
+                throw new UsageException("Incorrect operands.");
             }
         }
+        Daemon daemon = null;
+        try {
+            daemon = new Daemon(repository(), port);
+        } catch (IOException | IllegalArgumentException excp) {
+            throw new StorageException(
+                    "Could not listen on port " + port + ".");
+        }
+        System.out.println("Serving on " + Repo.URL_PREFIX + "localhost:"
+                + daemon.port() + "/");
+        System.out.flush();
+        daemon.serve();
+    }
 
-        resetPath();
-
-        for (int i = 0; i < remoteRepoCommitId.size(); i++) {
-            Utils.saveObj(remoteRepoCommits.get(i),
-                    getCommitDir() + remoteRepoCommitId.get(i));
+    /**
+     * Run the commands read, one per line, from a file or from the
+     * standard input, as given by ARGS, which has the form batch [file].
+     * @param args command and operands
+     */
+    static void batch(String[] args) {
+        if (args.length > 2) {
+            throw new UsageException("Incorrect operands.");
+        }
+        try (BufferedReader in = args.length == 1
+                ? new BufferedReader(new InputStreamReader(System.in,
+                        StandardCharsets.UTF_8))
+                : Files.newBufferedReader(Paths.get(args[1]),
+                        StandardCharsets.UTF_8)) {
+            Batch.run(in);
+        } catch (IOException excp) {
+            throw new StorageException("Could not read "
+                    + (args.length == 1 ? "standard input" : args[1]) + ".");
         }
+    }
 
-        for (String blobId : pullBlobs.keySet()) {
-            Utils.writeContents(new File(getGitletDir() + blobId),
-                    pullBlobs.get(blobId));
+    /**
+     * Run commands sent by clients over the Unix-domain socket of this
+     * repository until killed, keeping the repository's caches warm
+     * between them.
+     */
+    static void server() {
+        Server server = null;
+        try {
+            server = new Server(repository());
+        } catch (IOException | UnsupportedOperationException excp) {
+            throw new StorageException("Could not listen on "
+                    + repository().dir() + Server.SOCKET_FILE + ".");
         }
-        localRepo.updateBranch(remoteName + "/" + remoteBranchName,
-                remoteRepoCommitId.get(0));
-        Utils.saveObj(localRepo, repoP);
+        System.out.println("Serving commands on " + repository().dir()
+                + Server.SOCKET_FILE);
+        System.out.flush();
+        server.serve();
     }
 
     /**
@@ -935,7 +1748,9 @@ public class Main {
         String remoteName = args[1];
         String remoteBranchName = args[2];
         fetch(new String[] { "fetch", remoteName, remoteBranchName });
-        merge(remoteName + "/" + remoteBranchName);
+        if (merge(remoteName + "/" + remoteBranchName)) {
+            System.out.println(FAST_FORWARDED);
+        }
     }
 
     /**
@@ -946,10 +1761,11 @@ public class Main {
         String remoteName = args[1];
         Repo repo = loadRepo();
         if (repo.containsBranch(remoteName)) {
-            error("A remote with that name already exists.");
+            throw new StateException("A remote with that name already exists.");
         }
-        repo.addRemote(remoteName, args[2] + "/");
-        Utils.saveObj(repo, repoP);
+        repo.addRemote(remoteName,
+                Repo.isUrl(args[2]) ? args[2] : args[2] + "/");
+        repository().saveRepo(repo);
     }
 
     /**
@@ -959,120 +1775,6 @@ public class Main {
     static void removeRemote(String remoteName) {
         Repo repo = loadRepo();
         repo.removeRemote(remoteName);
-        Utils.saveObj(repo, repoP);
-    }
-
-    /**
-     * Access a different repo named REPO.
-     * @param repo name of the repo.
-     * @param remoteRepoName name to the desired repo
-     */
-    static void changeRepo(Repo repo, String remoteRepoName) {
-        String repoPath = repo.getRepoPath(remoteRepoName);
-        setGitletDir(repoPath.replace("/", java.io.File.separator));
-        setStagedDir(getGitletDir() + "staged/");
-        setCommitDir(getGitletDir() + "commits/");
-        setRemovedDir(getGitletDir() + "removed/");
-        setRepoP(getGitletDir() + "repo.txt");
-    }
-
-    /**
-     * Reset the path of git directory to the local repo.
-     */
-    static void resetPath() {
-        setGitletDir(DEFAULT_GIT_DIR);
-        setStagedDir(getGitletDir() + "staged/");
-        setCommitDir(getGitletDir() + "commits/");
-        setRemovedDir(getGitletDir() + "removed/");
-        setRepoP(getGitletDir() + "repo.txt");
-    }
-
-    /**
-     * Reports an error and exit program.
-     * @param err error
-     */
-    static void error(String err) {
-        System.err.println(err);
-        System.exit(0);
-    }
-
-    /**
-     * Getter for gitletDir.
-     * @return string of the path
-     */
-    public static String getGitletDir() {
-        return gitletDir;
-    }
-
-    /**
-     * Setter for gitletDir.
-     * @param gitletPath string of the path
-     */
-    public static void setGitletDir(String gitletPath) {
-        gitletDir = gitletPath;
-    }
-
-    /**
-     * Getter for Commit Dir.
-     * @return string of the path
-     */
-    public static String getCommitDir() {
-        return commitDir;
-    }
-
-    /**
-     * Setter for commitDir.
-     * @param commitPath string of the path
-     */
-    public static void setCommitDir(String commitPath) {
-        Main.commitDir = commitPath;
-    }
-
-    /**
-     * Getter for stagedDir.
-     * @return string of the path
-     */
-    public static String getStagedDir() {
-        return stagedDir;
-    }
-
-    /**
-     * Setter for stagedDir.
-     * @param stagedPath string of the path
-     */
-    public static void setStagedDir(String stagedPath) {
-        Main.stagedDir = stagedPath;
-    }
-
-    /**
-     * Getter for removedDir.
-     * @return string of the path
-     */
-    public static String getRemovedDir() {
-        return removedDir;
-    }
-
-    /**
-     * Setter for removedDir.
-     * @param removedPath string of the path
-     */
-    public static void setRemovedDir(String removedPath) {
-        Main.removedDir = removedPath;
-    }
-
-    /**
-     * Getter for repoDir.
-     * @return string of the path
-     */
-    public static String getRepoP() {
-        return repoP;
-    }
-
-    /**
-     * Setter for repoP.
-     * @param repoPath string of the path
-     */
-    public static void setRepoP(String repoPath) {
-        Main.repoP = repoPath;
+        repository().saveRepo(repo);
     }
 }
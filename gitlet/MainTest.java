@@ -26,7 +26,7 @@ public class MainTest {
      */
     @Before
     public void setUp() {
-        File f = new File(Main.getGitletDir());
+        File f = new File(Main.repository().dir());
         if (f.exists()) {
             Utils.recursiveDelete(f);
         }
@@ -52,7 +52,7 @@ public class MainTest {
         assertNotNull(currCommit);
 
         Commit c = new Commit("temp");
-        c = Utils.loadObj(c, Main.getCommitDir() + currCommit);
+        c = Utils.loadObj(c, Main.repository().commitDir() + currCommit);
 
         assertNull(c.getParent());
         assertEquals("initial commit", c.getLogMessage());
@@ -64,11 +64,11 @@ public class MainTest {
         File f = initialize();
 
         Main.add("foo.txt");
-        File foo = new File(Main.getStagedDir() + "foo.txt");
+        File foo = new File(Main.repository().stagedDir() + "foo.txt");
         assertTrue(foo.exists());
 
         Main.add("barr.txt");
-        File barr = new File(Main.getStagedDir() + "barr.txt");
+        File barr = new File(Main.repository().stagedDir() + "barr.txt");
         assertTrue(barr.exists());
     }
 
@@ -77,24 +77,25 @@ public class MainTest {
     public void commitTest() {
         simpleRepo();
 
-        List<String> staged = Utils.plainFilenamesIn(Main.getStagedDir());
-        List<String> removed = Utils.plainFilenamesIn(Main.getRemovedDir());
+        Repository repository = Main.repository();
+        List<String> staged = Utils.plainFilenamesIn(repository.stagedDir());
+        List<String> removed = Utils.plainFilenamesIn(repository.removedDir());
         assertTrue(staged.size() == 0);
         assertTrue(removed.size() == 0);
 
         Repo repo = Main.loadRepo();
         String commit = repo.getCurrentCommit();
         Commit c2 = new Commit("temp");
-        c2 = Utils.loadObj(c2, Main.getCommitDir() + commit);
+        c2 = Utils.loadObj(c2, repository.commitDir() + commit);
         assertTrue(c2.getTracked().contains("foo.txt"));
         assertTrue(c2.getTracked().contains("barr.txt"));
         assertEquals("second commit", c2.getLogMessage());
 
-        Commit c1 = Utils.loadObj(c2, Main.getCommitDir() + c2.getParent());
+        Commit c1 = Utils.loadObj(c2, repository.commitDir() + c2.getParent());
         assertTrue(c1.getTracked().contains("foo.txt"));
         assertEquals("first commit", c1.getLogMessage());
 
-        Commit c0 = Utils.loadObj(c1, Main.getCommitDir() + c1.getParent());
+        Commit c0 = Utils.loadObj(c1, repository.commitDir() + c1.getParent());
         assertEquals("initial commit", c0.getLogMessage());
     }
 
@@ -107,8 +108,9 @@ public class MainTest {
     public void modifiedNotStagedTest() {
         simpleRepo();
 
-        List<String> staged = Utils.plainFilenamesIn(Main.getStagedDir());
-        List<String> rmvd = Utils.plainFilenamesIn(Main.getRemovedDir());
+        Repository repository = Main.repository();
+        List<String> staged = Utils.plainFilenamesIn(repository.stagedDir());
+        List<String> rmvd = Utils.plainFilenamesIn(repository.removedDir());
 
         Repo repo = Main.loadRepo();
         Commit c = Main.loadCurrCommit(repo);
@@ -121,8 +123,9 @@ public class MainTest {
     @Test
     public void untrackedTest() {
         simpleRepo();
-        List<String> staged = Utils.plainFilenamesIn(Main.getStagedDir());
-        List<String> rmvd = Utils.plainFilenamesIn(Main.getRemovedDir());
+        Repository repository = Main.repository();
+        List<String> staged = Utils.plainFilenamesIn(repository.stagedDir());
+        List<String> rmvd = Utils.plainFilenamesIn(repository.removedDir());
 
         Repo repo = Main.loadRepo();
         Commit c = Main.loadCurrCommit(repo);
@@ -215,7 +218,7 @@ public class MainTest {
 
     /** Initialize a new repository. */
     public static File initialize() {
-        File f = new File(Main.getGitletDir());
+        File f = new File(Main.repository().dir());
         Main.init();
         return f;
     }
@@ -0,0 +1,140 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Line-level three-way merge in the style of diff3. The current and given
+ * versions are each diffed against their common base; changes that touch
+ * different parts of the base are combined, identical changes are taken
+ * once, and only the regions both sides changed differently become
+ * conflicts, surrounded by the usual markers.
+ * @author Sam Khano Tim Chan
+ */
+class Merge3 {
+
+    /** Marker opening the current branch's side of a conflict. */
+    static final String HEAD_MARKER = "<<<<<<< HEAD\n";
+
+    /** Marker separating the two sides of a conflict. */
+    static final String SEPARATOR = "=======\n";
+
+    /** Marker closing the given branch's side of a conflict. */
+    static final String END_MARKER = ">>>>>>>\n";
+
+    /**
+     * Merge lines OURS and THEIRS, which both derive from lines BASE,
+     * diffing with ALGORITHM.
+     * @param base lines at the split point
+     * @param ours lines in the current branch
+     * @param theirs lines in the given branch
+     * @param algorithm name of the diff algorithm
+     */
+    Merge3(List<String> base, List<String> ours, List<String> theirs,
+            String algorithm) {
+        _merged = new ArrayList<>();
+        List<Diff.Edit> mine = Diff.diff(base, ours, algorithm);
+        List<Diff.Edit> yours = Diff.diff(base, theirs, algorithm);
+        int i = 0, j = 0, pos = 0, dOurs = 0, dTheirs = 0;
+        while (i < mine.size() || j < yours.size()) {
+            int lo;
+            if (j == yours.size() || (i < mine.size()
+                    && mine.get(i).aStart <= yours.get(j).aStart)) {
+                lo = mine.get(i).aStart;
+            } else {
+                lo = yours.get(j).aStart;
+            }
+            int hi = lo, firstMine = i, firstYours = j;
+            boolean grew = true;
+            while (grew) {
+                grew = false;
+                while (i < mine.size() && mine.get(i).aStart <= hi) {
+                    hi = Math.max(hi, mine.get(i).aEnd);
+                    i += 1;
+                    grew = true;
+                }
+                while (j < yours.size() && yours.get(j).aStart <= hi) {
+                    hi = Math.max(hi, yours.get(j).aEnd);
+                    j += 1;
+                    grew = true;
+                }
+            }
+            _merged.addAll(base.subList(pos, lo));
+            int oursStart = lo + dOurs, theirsStart = lo + dTheirs;
+            dOurs += shift(mine, firstMine, i);
+            dTheirs += shift(yours, firstYours, j);
+            List<String> ourPart = ours.subList(oursStart, hi + dOurs);
+            List<String> theirPart = theirs.subList(theirsStart,
+                    hi + dTheirs);
+            if (firstYours == j || ourPart.equals(theirPart)) {
+                _merged.addAll(ourPart);
+            } else if (firstMine == i) {
+                _merged.addAll(theirPart);
+            } else {
+                _conflict = true;
+                _merged.add(HEAD_MARKER);
+                _merged.addAll(ourPart);
+                _merged.add(SEPARATOR);
+                _merged.addAll(theirPart);
+                _merged.add(END_MARKER);
+            }
+            pos = hi;
+        }
+        _merged.addAll(base.subList(pos, base.size()));
+    }
+
+    /**
+     * Return the net number of lines added by EDITS[FROM, TO).
+     * @param edits edits
+     * @param from first edit
+     * @param to end of edits
+     * @return lines added minus lines removed
+     */
+    private static int shift(List<Diff.Edit> edits, int from, int to) {
+        int shift = 0;
+        for (int k = from; k < to; k++) {
+            Diff.Edit edit = edits.get(k);
+            shift += (edit.bEnd - edit.bStart) - (edit.aEnd - edit.aStart);
+        }
+        return shift;
+    }
+
+    /** Return true iff some region could not be merged. */
+    boolean hasConflicts() {
+        return _conflict;
+    }
+
+    /** Return the merged lines, including any conflict markers. */
+    List<String> lines() {
+        return _merged;
+    }
+
+    /** Return the merged file as the bytes its lines were read from. */
+    byte[] contents() {
+        StringBuilder text = new StringBuilder();
+        for (String line : _merged) {
+            text.append(line);
+        }
+        return text.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Write the merged file to OUT as the bytes its lines were read from.
+     * @param out destination
+     * @throws IOException on failure
+     */
+    void write(OutputStream out) throws IOException {
+        for (String line : _merged) {
+            out.write(line.getBytes(StandardCharsets.ISO_8859_1));
+        }
+    }
+
+    /** Merged lines. */
+    private final ArrayList<String> _merged;
+
+    /** True iff some region could not be merged. */
+    private boolean _conflict;
+}
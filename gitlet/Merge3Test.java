@@ -0,0 +1,83 @@
+package gitlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/** Tests for the three-way line merge.
+ *  @author Sam Khano Tim Chan
+ */
+public class Merge3Test {
+
+    /** Return the lines of the words in TEXT, one word per line. */
+    private static List<String> lines(String text) {
+        ArrayList<String> result = new ArrayList<>();
+        for (String word : text.split(" ")) {
+            if (!word.isEmpty()) {
+                result.add(word + "\n");
+            }
+        }
+        return result;
+    }
+
+    /** Return the result of merging OURS and THEIRS from BASE. */
+    private static Merge3 merge(String base, String ours, String theirs) {
+        return new Merge3(lines(base), lines(ours), lines(theirs),
+                Diff.MYERS);
+    }
+
+    @Test
+    public void cleanTest() {
+        Merge3 m = merge("a b c d e f g", "a B c d e f g", "a b c d e F g");
+        assertFalse(m.hasConflicts());
+        assertEquals(lines("a B c d e F g"), m.lines());
+
+        m = merge("a b c", "x a b c", "a b c y");
+        assertFalse(m.hasConflicts());
+        assertEquals(lines("x a b c y"), m.lines());
+
+        m = merge("a b c d e", "a c d e", "a b c d");
+        assertFalse(m.hasConflicts());
+        assertEquals(lines("a c d"), m.lines());
+    }
+
+    @Test
+    public void sameChangeTest() {
+        Merge3 m = merge("a b c d e f", "a X c d e Y", "a X c d e f");
+        assertFalse(m.hasConflicts());
+        assertEquals(lines("a X c d e Y"), m.lines());
+    }
+
+    @Test
+    public void conflictTest() {
+        Merge3 m = merge("a b c d e f g", "a B c d e F g", "a b c d e Q g");
+        assertTrue(m.hasConflicts());
+        List<String> expected = lines("a B c d e");
+        expected.add(Merge3.HEAD_MARKER);
+        expected.add("F\n");
+        expected.add(Merge3.SEPARATOR);
+        expected.add("Q\n");
+        expected.add(Merge3.END_MARKER);
+        expected.add("g\n");
+        assertEquals(expected, m.lines());
+    }
+
+    @Test
+    public void wholeFileTest() {
+        ArrayList<String> base = new ArrayList<>();
+        ArrayList<String> ours = new ArrayList<>();
+        ArrayList<String> theirs = new ArrayList<>();
+        base.add("s");
+        ours.add("c");
+        theirs.add("m");
+        Merge3 m = new Merge3(base, ours, theirs, Diff.HISTOGRAM);
+        assertTrue(m.hasConflicts());
+        assertEquals(Merge3.HEAD_MARKER + "c" + Merge3.SEPARATOR + "m"
+                + Merge3.END_MARKER, new String(m.contents()));
+    }
+}
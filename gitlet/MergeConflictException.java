@@ -0,0 +1,18 @@
+package gitlet;
+
+/**
+ * A merge that conflicted. Unlike other failures, it leaves the merged
+ * files, conflict markers included, in the working directory and the
+ * staging area.
+ * @author Sam Khano Tim Chan
+ */
+public class MergeConflictException extends StateException {
+
+    /**
+     * A failure reported to the user as MSG.
+     * @param msg message
+     */
+    public MergeConflictException(String msg) {
+        super(msg);
+    }
+}
@@ -0,0 +1,182 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.Socket;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The client side of a gitlet:// remote, served by a Daemon. See Daemon
+ * for the protocol.
+ * @author Sam Khano Tim Chan
+ */
+class NetRemote {
+
+    /**
+     * The remote at ADDRESS, of the form gitlet://host[:port][/].
+     * @param address remote address
+     */
+    NetRemote(String address) {
+        URI uri = validate(address);
+        _host = uri.getHost();
+        _port = uri.getPort() < 0 ? Daemon.DEFAULT_PORT : uri.getPort();
+    }
+
+    /**
+     * Check that ADDRESS is a gitlet:// address naming a host, and return
+     * it parsed.
+     * @param address remote address
+     * @return parsed address
+     * @throws UsageException if ADDRESS is not valid
+     */
+    static URI validate(String address) {
+        try {
+            URI uri = new URI(address);
+            if (uri.getHost() != null) {
+                return uri;
+            }
+        } catch (URISyntaxException excp) {
+            /* Reported below. */
+        }
+        throw new UsageException("Invalid remote address.");
+    }
+
+    /**
+     * Fetch the branch BRANCH into the .gitlet directory DIR, which has
+     * the commits HAVES, reporting progress to PROGRESS unless it is null.
+     * If DEPTH is not 0, at most DEPTH commits are fetched, and commits
+     * fetched without their parents are added to DIR's shallow boundary;
+     * a shallow DIR is deepened to DEPTH commits.
+     * @param branch remote branch name
+     * @param dir local .gitlet directory
+     * @param haves commits the local repository has
+     * @param depth largest number of commits to fetch, or 0
+     * @param progress where to report progress, or null
+     * @return the head commit of BRANCH
+     */
+    String fetch(String branch, String dir, Collection<String> haves,
+            int depth, PrintStream progress) {
+        try (Socket socket = new Socket(_host, _port)) {
+            DataInputStream in = input(socket);
+            DataOutputStream out = output(socket);
+            out.writeInt(Daemon.MAGIC);
+            out.writeInt(Daemon.VERSION);
+            out.writeByte(Daemon.FETCH);
+            out.writeUTF(branch);
+            Daemon.writeIds(out, haves);
+            Daemon.writeIds(out, Shallow.load(dir));
+            out.writeInt(depth);
+            out.flush();
+            readAdvertisement(in);
+            if (in.readByte() != Daemon.OK) {
+                throw new NotFoundException(
+                        "That remote does not have that branch.");
+            }
+            String tip = in.readUTF();
+            Transfer transfer = new Transfer(null, dir);
+            transfer.reportTo(progress, "Receiving objects");
+            transfer.readPack(in);
+            Shallow.add(dir, Daemon.readIds(in));
+            return tip;
+        } catch (IOException excp) {
+            throw new StorageException("Could not reach remote.");
+        }
+    }
+
+    /**
+     * Push the commit HEAD of the .gitlet directory DIR to the branch
+     * BRANCH, reporting progress to PROGRESS unless it is null.
+     * @param branch remote branch name
+     * @param dir local .gitlet directory
+     * @param head commit to push
+     * @param progress where to report progress, or null
+     */
+    void push(String branch, String dir, String head, PrintStream progress) {
+        try (Socket socket = new Socket(_host, _port)) {
+            DataInputStream in = input(socket);
+            DataOutputStream out = output(socket);
+            Map<String, String> refs = readAdvertisement(in);
+            String remoteTip = refs.get(branch);
+            Transfer transfer = new Transfer(dir, null);
+            transfer.addHaves(refs.values());
+            List<String> missing = transfer.missingCommits(head);
+            if (!transfer.boundary().isEmpty()) {
+                throw new StateException(Main.SHALLOW_PUSH);
+            }
+            if (remoteTip != null
+                    && !Transfer.isAncestor(dir, remoteTip, head)) {
+                throw new StateException(
+                        "Please pull down remote changes before pushing.");
+            }
+            transfer.reportTo(progress, "Writing objects");
+            out.writeInt(Daemon.MAGIC);
+            out.writeInt(Daemon.VERSION);
+            out.writeByte(Daemon.PUSH);
+            out.writeUTF(branch);
+            out.writeUTF(remoteTip == null ? "" : remoteTip);
+            out.writeUTF(head);
+            transfer.writePack(out, missing);
+            switch (in.readByte()) {
+            case Daemon.OK:
+                break;
+            case Daemon.STALE:
+                throw new StateException(
+                        "Please pull down remote changes before pushing.");
+            default:
+                throw new StateException("Remote rejected the push.");
+            }
+        } catch (IOException excp) {
+            throw new StorageException("Could not reach remote.");
+        }
+    }
+
+    /**
+     * Read the daemon's greeting and branch advertisement from IN.
+     * @param in connection
+     * @return branch name to commit id
+     * @throws IOException on failure or a protocol mismatch
+     */
+    private static Map<String, String> readAdvertisement(DataInputStream in)
+            throws IOException {
+        if (in.readInt() != Daemon.MAGIC || in.readInt() != Daemon.VERSION) {
+            throw new IOException("not a gitlet daemon");
+        }
+        return Daemon.readRefs(in);
+    }
+
+    /**
+     * Return a buffered input stream reading from SOCKET.
+     * @param socket connection
+     * @return stream
+     * @throws IOException on failure
+     */
+    private static DataInputStream input(Socket socket) throws IOException {
+        return new DataInputStream(
+                new BufferedInputStream(socket.getInputStream()));
+    }
+
+    /**
+     * Return a buffered output stream writing to SOCKET.
+     * @param socket connection
+     * @return stream
+     * @throws IOException on failure
+     */
+    private static DataOutputStream output(Socket socket) throws IOException {
+        return new DataOutputStream(
+                new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    /** Host name of the daemon. */
+    private final String _host;
+
+    /** Port of the daemon. */
+    private final int _port;
+}
@@ -0,0 +1,17 @@
+package gitlet;
+
+/**
+ * A failure to find what a command names: a commit, branch, file,
+ * remote, setting or repository.
+ * @author Sam Khano Tim Chan
+ */
+public class NotFoundException extends GitletException {
+
+    /**
+     * A failure reported to the user as MSG.
+     * @param msg message
+     */
+    public NotFoundException(String msg) {
+        super(msg);
+    }
+}
@@ -0,0 +1,209 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * A compiled list of glob rules in the style of .gitignore. Each rule is
+ * compiled to a regular expression once, when the rules are loaded, and
+ * the last rule that matches a path decides whether it is selected.
+ * @author Sam Khano Tim Chan
+ */
+class PathRules {
+
+    /** Name of the ignore file in the working directory. */
+    static final String IGNORE_FILE = ".gitletignore";
+
+    /**
+     * Compile the rules in LINES.
+     * @param lines one rule per line
+     */
+    PathRules(List<String> lines) {
+        _rules = new ArrayList<>();
+        for (String line : lines) {
+            Rule rule = Rule.compile(line);
+            if (rule != null) {
+                _rules.add(rule);
+            }
+        }
+    }
+
+    /**
+     * Load the rules stored in FILE. A missing FILE yields an empty set of
+     * rules that selects nothing.
+     * @param file rule file
+     * @return compiled rules
+     */
+    static PathRules load(File file) {
+        if (!file.isFile()) {
+            return new PathRules(new ArrayList<>());
+        }
+        try {
+            return new PathRules(Files.readAllLines(file.toPath(),
+                    StandardCharsets.UTF_8));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Compile the rules given as LINES.
+     * @param lines rules
+     * @return compiled rules
+     */
+    static PathRules of(String... lines) {
+        return new PathRules(Arrays.asList(lines));
+    }
+
+    /** Return true iff there are no rules at all. */
+    boolean isEmpty() {
+        return _rules.isEmpty();
+    }
+
+    /**
+     * Return true iff PATH is selected by these rules. PATH is relative to
+     * the working directory and uses '/' as its separator. A path inside a
+     * selected directory is selected as well, whatever the later rules say,
+     * so a walker may prune a selected directory without descending into it.
+     * @param path relative path
+     * @param isDir whether PATH names a directory
+     * @return boolean
+     */
+    boolean matches(String path, boolean isDir) {
+        if (_rules.isEmpty()) {
+            return false;
+        }
+        int slash = path.indexOf('/');
+        while (slash >= 0) {
+            if (matchesEntry(path.substring(0, slash), true)) {
+                return true;
+            }
+            slash = path.indexOf('/', slash + 1);
+        }
+        return matchesEntry(path, isDir);
+    }
+
+    /**
+     * Return the verdict of the last rule matching PATH alone, without
+     * looking at its parent directories.
+     * @param path relative path
+     * @param isDir whether PATH names a directory
+     * @return boolean
+     */
+    private boolean matchesEntry(String path, boolean isDir) {
+        String base = path.substring(path.lastIndexOf('/') + 1);
+        for (int i = _rules.size() - 1; i >= 0; i--) {
+            Rule rule = _rules.get(i);
+            if (rule._dirOnly && !isDir) {
+                continue;
+            }
+            String subject = rule._anchored ? path : base;
+            if (rule._pattern.matcher(subject).matches()) {
+                return !rule._negated;
+            }
+        }
+        return false;
+    }
+
+    /** A single compiled glob rule. */
+    private static class Rule {
+
+        /**
+         * Compile LINE, returning null for blank lines and comments.
+         * @param line text of the rule
+         * @return rule or null
+         */
+        static Rule compile(String line) {
+            String glob = line.replaceAll("\\s+$", "");
+            if (glob.isEmpty() || glob.startsWith("#")) {
+                return null;
+            }
+            Rule rule = new Rule();
+            if (glob.startsWith("!")) {
+                rule._negated = true;
+                glob = glob.substring(1);
+            } else if (glob.startsWith("\\!") || glob.startsWith("\\#")) {
+                glob = glob.substring(1);
+            }
+            if (glob.endsWith("/")) {
+                rule._dirOnly = true;
+                glob = glob.substring(0, glob.length() - 1);
+            }
+            rule._anchored = glob.contains("/");
+            if (glob.startsWith("/")) {
+                glob = glob.substring(1);
+            }
+            if (glob.isEmpty()) {
+                return null;
+            }
+            rule._pattern = Pattern.compile(toRegex(glob));
+            return rule;
+        }
+
+        /**
+         * Translate GLOB into an equivalent regular expression. '*' and '?'
+         * never match '/', while '**' matches across directories.
+         * @param glob glob
+         * @return regex
+         */
+        static String toRegex(String glob) {
+            StringBuilder regex = new StringBuilder();
+            int n = glob.length();
+            for (int i = 0; i < n; i++) {
+                char c = glob.charAt(i);
+                if (c == '*') {
+                    if (i + 1 < n && glob.charAt(i + 1) == '*') {
+                        i++;
+                        if (i + 1 < n && glob.charAt(i + 1) == '/') {
+                            i++;
+                            regex.append("(?:.*/)?");
+                        } else {
+                            regex.append(".*");
+                        }
+                    } else {
+                        regex.append("[^/]*");
+                    }
+                } else if (c == '?') {
+                    regex.append("[^/]");
+                } else if (c == '[' && glob.indexOf(']', i + 1) > i + 1) {
+                    int close = glob.indexOf(']', i + 1);
+                    String body = glob.substring(i + 1, close);
+                    if (body.startsWith("!")) {
+                        body = "^" + body.substring(1);
+                    }
+                    regex.append('[').append(body.replace("\\", "\\\\"))
+                        .append(']');
+                    i = close;
+                } else if (c == '\\' && i + 1 < n) {
+                    i++;
+                    regex.append(Pattern.quote(String.valueOf(glob.charAt(i))));
+                } else {
+                    regex.append(Pattern.quote(String.valueOf(c)));
+                }
+            }
+            return regex.toString();
+        }
+
+        /** Compiled form of the glob. */
+        private Pattern _pattern;
+
+        /** True if a match excludes the path again. */
+        private boolean _negated;
+
+        /** True if the rule only applies to directories. */
+        private boolean _dirOnly;
+
+        /** True if the rule is matched against the whole path rather than
+         *  just its last component. */
+        private boolean _anchored;
+    }
+
+    /** The rules, in the order they were given. */
+    private List<Rule> _rules;
+}
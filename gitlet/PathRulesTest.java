@@ -0,0 +1,52 @@
+package gitlet;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/** Tests for the glob rules used by .gitletignore.
+ *  @author Sam Khano Tim Chan
+ */
+public class PathRulesTest {
+
+    @Test
+    public void globTest() {
+        PathRules rules = PathRules.of("*.log", "data?.csv", "[ab]*.tmp");
+        assertTrue(rules.matches("build.log", false));
+        assertTrue(rules.matches("sub/dir/build.log", false));
+        assertTrue(rules.matches("data1.csv", false));
+        assertFalse(rules.matches("data10.csv", false));
+        assertTrue(rules.matches("b1.tmp", false));
+        assertFalse(rules.matches("c1.tmp", false));
+        assertFalse(rules.matches("foo.txt", false));
+    }
+
+    @Test
+    public void negationTest() {
+        PathRules rules = PathRules.of("# comment", "*.log", "!keep.log");
+        assertTrue(rules.matches("build.log", false));
+        assertFalse(rules.matches("keep.log", false));
+        rules = PathRules.of("!keep.log", "*.log");
+        assertTrue(rules.matches("keep.log", false));
+    }
+
+    @Test
+    public void directoryTest() {
+        PathRules rules = PathRules.of("out/", "/docs/**/*.pdf", "!out/x");
+        assertTrue(rules.matches("out", true));
+        assertFalse(rules.matches("out", false));
+        assertTrue(rules.matches("out/x", false));
+        assertTrue(rules.matches("out/a/b.txt", false));
+        assertTrue(rules.matches("docs/a.pdf", false));
+        assertTrue(rules.matches("docs/a/b/c.pdf", false));
+        assertFalse(rules.matches("src/docs/a.pdf", false));
+    }
+
+    @Test
+    public void emptyTest() {
+        PathRules rules = PathRules.of("", "   ", "# nothing");
+        assertTrue(rules.isEmpty());
+        assertFalse(rules.matches("foo.txt", false));
+    }
+}
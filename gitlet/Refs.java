@@ -0,0 +1,500 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * The branches of a repository. A branch is kept either in a loose file
+ * of its own under refs/ in the .gitlet directory, holding the id of the
+ * branch's head commit, or as a line of the packed-refs file, which holds
+ * many branches that rarely change; a loose file overrides a packed line.
+ * Branch names are encoded so that each is a single plain file name,
+ * whatever characters it has. A branch is changed only by update() and
+ * delete(), which compare the head they find with the one the caller
+ * expects and make the change only if they agree, so of two writers to
+ * the same branch the second fails instead of undoing the first. Commands
+ * still hold the repository's Lock while they move branches, whichever
+ * branches they move, so this check catches a writer that ignored the
+ * lock or a head read before it was taken, rather than letting writers
+ * to different branches run at once. Each change is
+ * appended to the branch's reflog under logs/, which is kept even after
+ * the branch is deleted, so that any head a branch had can be found
+ * again.
+ * @author Sam Khano Tim Chan
+ */
+class Refs {
+
+    /** Name of the directory of loose branch files inside the .gitlet
+     *  directory. */
+    static final String REFS_DIR = "refs";
+
+    /** Name of the packed branch file inside the .gitlet directory. */
+    static final String PACKED_FILE = "packed-refs";
+
+    /** Name of the directory of reflogs inside the .gitlet directory. */
+    static final String LOGS_DIR = "logs";
+
+    /** Id recorded in a reflog for a branch that did not exist, or had no
+     *  commit. */
+    static final String NO_COMMIT = "0".repeat(Utils.UID_LENGTH);
+
+    /** Suffix of the file locking a branch while it is updated. */
+    private static final String LOCK_SUFFIX = ".lock";
+
+    /** One change of a branch, as recorded in its reflog. */
+    static class Entry {
+
+        /**
+         * A change from the head OLDID to NEWID at TIME, made by the
+         * command MESSAGE.
+         * @param oldId previous head, or null
+         * @param newId new head, or null
+         * @param time milliseconds since the epoch
+         * @param message command that made the change
+         */
+        Entry(String oldId, String newId, long time, String message) {
+            _oldId = oldId;
+            _newId = newId;
+            _time = time;
+            _message = message;
+        }
+
+        /**
+         * Return the head before the change.
+         * @return commit id, or null
+         */
+        String oldId() {
+            return _oldId;
+        }
+
+        /**
+         * Return the head after the change.
+         * @return commit id, or null if the branch was deleted
+         */
+        String newId() {
+            return _newId;
+        }
+
+        /**
+         * Return when the change was made.
+         * @return milliseconds since the epoch
+         */
+        long time() {
+            return _time;
+        }
+
+        /**
+         * Return the command that made the change.
+         * @return command line
+         */
+        String message() {
+            return _message;
+        }
+
+        /** Head before the change. */
+        private final String _oldId;
+
+        /** Head after the change. */
+        private final String _newId;
+
+        /** Time of the change. */
+        private final long _time;
+
+        /** Command that made the change. */
+        private final String _message;
+    }
+
+    /**
+     * The branches of the .gitlet directory DIR.
+     * @param dir path of the .gitlet directory
+     */
+    Refs(String dir) {
+        _dir = new File(dir + REFS_DIR);
+        _packedFile = new File(dir + PACKED_FILE);
+        _logs = new File(dir + LOGS_DIR);
+    }
+
+    /**
+     * Say whether the branches are kept as refs yet; a repository
+     * written by an earlier build keeps them in its repo file.
+     * @return true iff the refs directory exists
+     */
+    boolean exists() {
+        return _dir.isDirectory();
+    }
+
+    /**
+     * Set the command recorded in the reflog for the changes that follow
+     * to MESSAGE.
+     * @param message command line
+     */
+    void setMessage(String message) {
+        _message = message.replace('\n', ' ');
+    }
+
+    /**
+     * Return the command recorded in the reflog for changes.
+     * @return command line
+     */
+    String getMessage() {
+        return _message;
+    }
+
+    /**
+     * Say whether there is a branch NAME.
+     * @param name branch name
+     * @return true iff the branch exists
+     */
+    boolean contains(String name) {
+        return file(name).isFile() || packed().containsKey(name);
+    }
+
+    /**
+     * Return the head of the branch NAME.
+     * @param name branch name
+     * @return commit id, or null if there is no such branch or it has no
+     *         commit yet
+     */
+    String get(String name) {
+        File file = file(name);
+        return file.isFile() ? read(file) : packed().get(name);
+    }
+
+    /**
+     * Return all branches.
+     * @return branch name to head commit id, or to null for a branch
+     *         with no commit yet, in order of name
+     */
+    TreeMap<String, String> all() {
+        TreeMap<String, String> refs = new TreeMap<>(packed());
+        String[] names = _dir.list();
+        if (names != null) {
+            for (String encoded : names) {
+                if (encoded.endsWith(LOCK_SUFFIX)
+                        || encoded.endsWith(Utils.TEMP_SUFFIX)) {
+                    continue;
+                }
+                refs.put(decode(encoded), read(new File(_dir, encoded)));
+            }
+        }
+        return refs;
+    }
+
+    /**
+     * Move the branch NAME from EXPECTED to VALUE, creating it if needed,
+     * provided that it is at EXPECTED when the update is made. The branch
+     * is locked while it is compared and written, and its new head
+     * becomes visible in one rename.
+     * @param name branch name
+     * @param expected head the caller last saw, or null if the branch
+     *                 should not exist or have no commit yet
+     * @param value new head, or null for a branch with no commit yet
+     * @throws StaleRefException if the branch is not at EXPECTED, or is
+     *                           being updated by another command
+     */
+    void update(String name, String expected, String value) {
+        change(name, expected, value, false);
+    }
+
+    /**
+     * Delete the branch NAME, provided that it is at EXPECTED, as update
+     * does. Its reflog is kept.
+     * @param name branch name
+     * @param expected head the caller last saw
+     * @throws StaleRefException if the branch is not at EXPECTED, or is
+     *                           being updated by another command
+     */
+    void delete(String name, String expected) {
+        change(name, expected, null, true);
+    }
+
+    /**
+     * Move every loose branch that has a commit into the packed-refs
+     * file, so that a repository with many branches keeps few files. A
+     * branch being updated meanwhile stays loose.
+     * @throws StaleRefException if another command is packing
+     */
+    void pack() {
+        TreeMap<String, String> refs = all();
+        refs.values().removeIf(Objects::isNull);
+        writePacked(refs);
+        for (Map.Entry<String, String> ref : refs.entrySet()) {
+            Path loose = file(ref.getKey()).toPath();
+            Path lock = lockFile(loose);
+            try {
+                Files.createFile(lock);
+            } catch (IOException excp) {
+                continue;
+            }
+            try {
+                if (ref.getValue().equals(read(loose.toFile()))) {
+                    Files.deleteIfExists(loose);
+                }
+            } catch (IOException excp) {
+                /* Still loose, and so still correct. */
+            } finally {
+                deleteLock(lock);
+            }
+        }
+    }
+
+    /**
+     * Return the reflog of the branch NAME.
+     * @param name branch name
+     * @return changes, oldest first; empty if there were none
+     */
+    List<Entry> log(String name) {
+        File file = new File(_logs, encode(name));
+        if (!file.isFile()) {
+            return Collections.emptyList();
+        }
+        ArrayList<Entry> entries = new ArrayList<>();
+        String contents = new String(Utils.readContents(file),
+                StandardCharsets.UTF_8);
+        for (String line : contents.split("\n")) {
+            String[] fields = line.split(" ", 4);
+            if (fields.length < 3) {
+                continue;
+            }
+            entries.add(new Entry(commitId(fields[0]), commitId(fields[1]),
+                    Long.parseLong(fields[2]),
+                    fields.length == 4 ? fields[3] : ""));
+        }
+        return entries;
+    }
+
+    /**
+     * Set the branch NAME to VALUE, or delete it if DELETE, provided that
+     * it is at EXPECTED, and record the change in its reflog.
+     * @param name branch name
+     * @param expected head the caller last saw
+     * @param value new head
+     * @param delete true iff the branch is to be deleted
+     */
+    private void change(String name, String expected, String value,
+            boolean delete) {
+        Path ref = file(name).toPath();
+        Path lock = lockFile(ref);
+        _dir.mkdirs();
+        try {
+            Files.write(lock, (value == null ? "" : value + "\n")
+                    .getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE_NEW);
+        } catch (FileAlreadyExistsException excp) {
+            throw new StaleRefException(name);
+        } catch (IOException excp) {
+            throw new StorageException("Could not update " + name + ".");
+        }
+        try {
+            if (!Objects.equals(expected, get(name))) {
+                throw new StaleRefException(name);
+            }
+            if (delete) {
+                Files.deleteIfExists(ref);
+                if (packed().containsKey(name)) {
+                    TreeMap<String, String> packed = new TreeMap<>(packed());
+                    packed.remove(name);
+                    writePacked(packed);
+                }
+            } else {
+                Utils.replace(lock, ref);
+            }
+            if (expected != null || value != null) {
+                appendLog(name, expected, value);
+            }
+        } catch (IOException excp) {
+            throw new StorageException("Could not update " + name + ".");
+        } finally {
+            deleteLock(lock);
+        }
+    }
+
+    /**
+     * Append the change of the branch NAME from OLDID to NEWID to its
+     * reflog.
+     * @param name branch name
+     * @param oldId previous head, or null
+     * @param newId new head, or null
+     * @throws IOException on failure
+     */
+    private void appendLog(String name, String oldId, String newId)
+            throws IOException {
+        _logs.mkdirs();
+        String line = (oldId == null ? NO_COMMIT : oldId) + " "
+                + (newId == null ? NO_COMMIT : newId) + " "
+                + System.currentTimeMillis() + " " + _message + "\n";
+        Files.write(new File(_logs, encode(name)).toPath(),
+                line.getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Return the packed branches, reading them again only if the
+     * packed-refs file changed.
+     * @return branch name to head commit id
+     */
+    private TreeMap<String, String> packed() {
+        FileStamp stamp = FileStamp.of(_packedFile);
+        if (_packed == null || !stamp.equals(_packedStamp)) {
+            _packed = new TreeMap<>();
+            _packedStamp = stamp;
+            if (_packedFile.isFile()) {
+                String contents = new String(
+                        Utils.readContents(_packedFile),
+                        StandardCharsets.UTF_8);
+                for (String line : contents.split("\n")) {
+                    int space = line.indexOf(' ');
+                    if (space > 0) {
+                        _packed.put(decode(line.substring(space + 1)),
+                                line.substring(0, space));
+                    }
+                }
+            }
+        }
+        return _packed;
+    }
+
+    /**
+     * Replace the packed-refs file with one holding REFS, under a lock of
+     * its own.
+     * @param refs branch name to head commit id
+     * @throws StaleRefException if another command is rewriting the file
+     */
+    private void writePacked(Map<String, String> refs) {
+        StringBuilder contents = new StringBuilder();
+        for (Map.Entry<String, String> ref : refs.entrySet()) {
+            contents.append(ref.getValue()).append(' ')
+                .append(encode(ref.getKey())).append('\n');
+        }
+        Path packed = _packedFile.toPath();
+        Path lock = lockFile(packed);
+        try {
+            Files.write(lock, contents.toString()
+                    .getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE_NEW);
+            Utils.replace(lock, packed);
+        } catch (FileAlreadyExistsException excp) {
+            throw new StaleRefException(PACKED_FILE);
+        } catch (IOException excp) {
+            throw new StorageException("Could not write " + PACKED_FILE
+                    + ".");
+        } finally {
+            deleteLock(lock);
+        }
+        _packed = null;
+    }
+
+    /**
+     * Return the lock file of FILE.
+     * @param file locked file
+     * @return lock file
+     */
+    private static Path lockFile(Path file) {
+        return file.resolveSibling(file.getFileName() + LOCK_SUFFIX);
+    }
+
+    /**
+     * Delete the lock file LOCK, if it is still there.
+     * @param lock lock file
+     */
+    private static void deleteLock(Path lock) {
+        try {
+            Files.deleteIfExists(lock);
+        } catch (IOException excp) {
+            /* Left for the next update to report. */
+        }
+    }
+
+    /**
+     * Return the files a change of the branch NAME may write: its loose
+     * file, its reflog and the packed branches.
+     * @param name branch name
+     * @return files, some of which may not exist
+     */
+    List<File> files(String name) {
+        return Arrays.asList(file(name), new File(_logs, encode(name)),
+                _packedFile);
+    }
+
+    /**
+     * Return the loose file of the branch NAME.
+     * @param name branch name
+     * @return file
+     */
+    private File file(String name) {
+        return new File(_dir, encode(name));
+    }
+
+    /**
+     * Return the branch name NAME encoded as a file name.
+     * @param name branch name
+     * @return file name
+     */
+    private static String encode(String name) {
+        return URLEncoder.encode(name, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Return the branch name encoded as ENCODED.
+     * @param encoded file name
+     * @return branch name
+     */
+    private static String decode(String encoded) {
+        return URLDecoder.decode(encoded, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Return the commit id ID as recorded in a reflog.
+     * @param id recorded id
+     * @return commit id, or null for NO_COMMIT
+     */
+    private static String commitId(String id) {
+        return id.equals(NO_COMMIT) ? null : id;
+    }
+
+    /**
+     * Return the commit id in the branch file FILE.
+     * @param file branch file
+     * @return commit id, or null if FILE does not exist or is empty
+     */
+    private static String read(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        String id = new String(Utils.readContents(file),
+                StandardCharsets.UTF_8).trim();
+        return id.isEmpty() ? null : id;
+    }
+
+    /** The directory of loose branch files. */
+    private final File _dir;
+
+    /** The packed-refs file. */
+    private final File _packedFile;
+
+    /** The directory of reflogs. */
+    private final File _logs;
+
+    /** Command recorded in the reflog for changes. */
+    private String _message = "update";
+
+    /** Packed branches, or null if not yet read. */
+    private TreeMap<String, String> _packed;
+
+    /** Stamp of the packed-refs file when _packed was read. */
+    private FileStamp _packedStamp;
+}
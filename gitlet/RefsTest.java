@@ -0,0 +1,138 @@
+package gitlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tests for branches stored as refs.
+ *  @author Sam Khano Tim Chan
+ */
+public class RefsTest {
+
+    /** Working directory of the repository under test. */
+    private static final String WORK = "refs-work";
+
+    /** Some commit ids. */
+    private static final String ONE = Utils.sha1("one"),
+        TWO = Utils.sha1("two"), THREE = Utils.sha1("three");
+
+    @Before
+    public void setUp() {
+        tearDown();
+        new File(WORK + "/.gitlet").mkdirs();
+        _repository = new Repository(WORK + "/.gitlet/");
+    }
+
+    @After
+    public void tearDown() {
+        if (new File(WORK).exists()) {
+            Utils.recursiveDelete(new File(WORK));
+        }
+    }
+
+    @Test
+    public void compareAndSwapTest() {
+        Refs refs = _repository.refs();
+        refs.update("master", null, ONE);
+        refs.update("origin/master", null, ONE);
+        assertEquals(ONE, refs.get("origin/master"));
+        refs.update("master", ONE, TWO);
+        try {
+            refs.update("master", ONE, THREE);
+            fail();
+        } catch (StaleRefException excp) {
+            assertEquals("master", excp.getBranch());
+        }
+        assertEquals(TWO, refs.get("master"));
+        refs.delete("origin/master", ONE);
+        assertNull(refs.get("origin/master"));
+        assertEquals(1, refs.all().size());
+    }
+
+    @Test
+    public void concurrentReposTest() {
+        Repo repo = new Repo(_repository);
+        repo.updateBranch("master", ONE);
+        repo.newBranch("other");
+        _repository.saveRepo(repo);
+        File repoFile = new File(_repository.repoFile());
+        long written = repoFile.lastModified();
+        repoFile.setLastModified(written - 10000);
+
+        Repo first = _repository.loadRepo();
+        Repo second = _repository.loadRepo();
+        assertEquals(ONE, second.getCurrentCommit());
+        first.updateBranch("master", TWO);
+        second.updateBranch("other", THREE);
+        _repository.saveRepo(first);
+        _repository.saveRepo(second);
+        assertEquals(written - 10000, repoFile.lastModified());
+
+        Repo third = _repository.loadRepo();
+        assertEquals(TWO, third.getCommit("master"));
+        assertEquals(THREE, third.getCommit("other"));
+        second.updateBranch("master", THREE);
+        try {
+            _repository.saveRepo(second);
+            fail();
+        } catch (StaleRefException excp) {
+            assertTrue(excp.getMessage().contains("master"));
+        }
+        assertEquals(TWO, _repository.loadRepo().getCommit("master"));
+    }
+
+    @Test
+    public void unbornTest() {
+        Repo repo = new Repo(_repository);
+        _repository.saveRepo(repo);
+        Repo loaded = _repository.loadRepo();
+        assertTrue(loaded.containsBranch("master"));
+        assertNull(loaded.getCurrentCommit());
+        loaded.newBranch("other");
+        loaded.removeBranch("other");
+        _repository.saveRepo(loaded);
+        assertFalse(_repository.loadRepo().containsBranch("other"));
+    }
+
+    /** The repository under test. */
+    private Repository _repository;
+
+    @Test
+    public void packedTest() {
+        Refs refs = _repository.refs();
+        refs.setMessage("branch");
+        refs.update("master", null, ONE);
+        refs.update("cold", null, TWO);
+        refs.pack();
+        assertFalse(new File(_repository.dir() + Refs.REFS_DIR, "cold")
+                .exists());
+        assertEquals(TWO, refs.get("cold"));
+        assertTrue(refs.contains("master"));
+        refs.setMessage("commit three");
+        refs.update("master", ONE, THREE);
+        assertEquals(THREE, refs.get("master"));
+        assertEquals(THREE, refs.all().get("master"));
+        refs.setMessage("rm-branch cold");
+        refs.delete("cold", TWO);
+        assertFalse(refs.contains("cold"));
+        assertEquals(1, refs.all().size());
+
+        List<Refs.Entry> log = refs.log("master");
+        assertEquals(2, log.size());
+        assertEquals(ONE, log.get(1).oldId());
+        assertEquals(THREE, log.get(1).newId());
+        assertEquals("commit three", log.get(1).message());
+        log = refs.log("cold");
+        assertEquals(TWO, log.get(1).oldId());
+        assertNull(log.get(1).newId());
+    }
+}
@@ -0,0 +1,320 @@
+package gitlet;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * Rename and copy detection between a set of old files and a set of added
+ * files. A rename pairs a deleted file with an added one, each used at
+ * most once; a copy pairs an added file with any old file, deleted or
+ * still present, and one old file may be the source of many copies.
+ * Files with identical blob ids are paired first, in linear time. The rest
+ * are compared by the sets of lines they contain: each file gets a MinHash
+ * signature, the signatures are split into bands and hashed into buckets
+ * (locality-sensitive hashing), and only files sharing a bucket are ever
+ * scored against each other, so similar pairs are found without comparing
+ * every deleted file with every added one.
+ * @author Sam Khano Tim Chan
+ */
+class Renames {
+
+    /** Key of the setting giving the minimum similarity, in percent, for
+     *  two different files to count as a rename. */
+    static final String THRESHOLD = "rename.threshold";
+
+    /** Key of the setting giving the largest number of deleted or added
+     *  files for which inexact renames are looked for. */
+    static final String LIMIT = "rename.limit";
+
+    /** Default minimum similarity, in percent. */
+    static final int DEFAULT_THRESHOLD = 50;
+
+    /** Default limit on the number of files. */
+    static final int DEFAULT_LIMIT = 1000;
+
+    /** Number of hash functions in a signature. */
+    private static final int HASHES = 32;
+
+    /** Number of signature values hashed together into one bucket. */
+    private static final int ROWS = 2;
+
+    /** Buckets holding more files than this are too common to tell files
+     *  apart, and are not used to propose candidates. */
+    private static final int MAX_BUCKET = 64;
+
+    /** Seeds of the hash functions. */
+    private static final long[] SEEDS = new long[HASHES];
+
+    static {
+        long seed = 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < HASHES; i++) {
+            seed = mix(seed + i);
+            SEEDS[i] = seed;
+        }
+    }
+
+    /**
+     * Return the renames from the files in DELETED to those in ADDED, each
+     * given as a map from file name to blob id, as a map from old name to
+     * new name. Files with equal blob ids are always paired; if neither map
+     * has more than LIMIT files left after that, the others are paired when
+     * their similarity is at least THRESHOLD percent, most similar first.
+     * OLDCONTENTS and NEWCONTENTS give the contents of a deleted or added
+     * file, and are only called for files that need an inexact match.
+     * @param deleted old name to blob id
+     * @param added new name to blob id
+     * @param oldContents contents of a deleted file
+     * @param newContents contents of an added file
+     * @param threshold minimum similarity in percent
+     * @param limit largest number of files to compare
+     * @return old name to new name
+     */
+    static TreeMap<String, String> detect(Map<String, String> deleted,
+            Map<String, String> added, Function<String, byte[]> oldContents,
+            Function<String, byte[]> newContents, int threshold, int limit) {
+        TreeMap<String, String> renames = new TreeMap<>();
+        HashMap<String, ArrayDeque<String>> byBlob = new HashMap<>();
+        for (String f : new TreeMap<>(deleted).keySet()) {
+            byBlob.computeIfAbsent(deleted.get(f), k -> new ArrayDeque<>())
+                .add(f);
+        }
+        ArrayList<String> newFiles = new ArrayList<>();
+        for (String f : new TreeMap<>(added).keySet()) {
+            ArrayDeque<String> same = byBlob.get(added.get(f));
+            if (same != null && !same.isEmpty()) {
+                renames.put(same.poll(), f);
+            } else {
+                newFiles.add(f);
+            }
+        }
+        ArrayList<String> oldFiles = new ArrayList<>();
+        for (String f : new TreeMap<>(deleted).keySet()) {
+            if (!renames.containsKey(f)) {
+                oldFiles.add(f);
+            }
+        }
+        if (oldFiles.isEmpty() || newFiles.isEmpty() || threshold > 100
+                || oldFiles.size() > limit || newFiles.size() > limit) {
+            return renames;
+        }
+        boolean[] oldUsed = new boolean[oldFiles.size()];
+        boolean[] newUsed = new boolean[newFiles.size()];
+        for (long[] match : scored(oldFiles, newFiles, oldContents,
+                newContents, threshold)) {
+            int i = (int) match[1];
+            int j = (int) match[2];
+            if (!oldUsed[i] && !newUsed[j]) {
+                oldUsed[i] = true;
+                newUsed[j] = true;
+                renames.put(oldFiles.get(i), newFiles.get(j));
+            }
+        }
+        return renames;
+    }
+
+    /**
+     * Return the copies among the files in ADDED of the files in SOURCES,
+     * each given as a map from file name to blob id, as a map from new name
+     * to the name it was copied from. Every added file is paired with the
+     * source it is most similar to, provided that the similarity is at
+     * least THRESHOLD percent; an added file equal to a source is always
+     * paired with it. A source may be copied any number of times. If
+     * either map has more than LIMIT files, only equal files are paired.
+     * OLDCONTENTS and NEWCONTENTS give the contents of a source or added
+     * file, and are only called for files that need an inexact match.
+     * @param sources old name to blob id
+     * @param added new name to blob id
+     * @param oldContents contents of a source
+     * @param newContents contents of an added file
+     * @param threshold minimum similarity in percent
+     * @param limit largest number of files to compare
+     * @return new name to old name
+     */
+    static TreeMap<String, String> copies(Map<String, String> sources,
+            Map<String, String> added, Function<String, byte[]> oldContents,
+            Function<String, byte[]> newContents, int threshold, int limit) {
+        TreeMap<String, String> copies = new TreeMap<>();
+        HashMap<String, String> byBlob = new HashMap<>();
+        for (String f : new TreeMap<>(sources).keySet()) {
+            byBlob.putIfAbsent(sources.get(f), f);
+        }
+        ArrayList<String> newFiles = new ArrayList<>();
+        for (String f : new TreeMap<>(added).keySet()) {
+            String same = byBlob.get(added.get(f));
+            if (same != null) {
+                copies.put(f, same);
+            } else {
+                newFiles.add(f);
+            }
+        }
+        ArrayList<String> oldFiles = new ArrayList<>(
+                new TreeMap<>(sources).keySet());
+        if (oldFiles.isEmpty() || newFiles.isEmpty() || threshold > 100
+                || oldFiles.size() > limit || newFiles.size() > limit) {
+            return copies;
+        }
+        for (long[] match : scored(oldFiles, newFiles, oldContents,
+                newContents, threshold)) {
+            String f = newFiles.get((int) match[2]);
+            if (!copies.containsKey(f)) {
+                copies.put(f, oldFiles.get((int) match[1]));
+            }
+        }
+        return copies;
+    }
+
+    /**
+     * Return the pairs of a file in OLDFILES and one in NEWFILES, read with
+     * OLDCONTENTS and NEWCONTENTS, that are at least THRESHOLD percent
+     * similar, as {similarity, old index, new index}, most similar first
+     * and then in order of index.
+     * @param oldFiles old file names
+     * @param newFiles new file names
+     * @param oldContents reads an old file
+     * @param newContents reads a new file
+     * @param threshold minimum similarity in percent
+     * @return scored pairs
+     */
+    private static List<long[]> scored(List<String> oldFiles,
+            List<String> newFiles, Function<String, byte[]> oldContents,
+            Function<String, byte[]> newContents, int threshold) {
+        List<HashSet<Long>> oldLines = lineSets(oldFiles, oldContents);
+        List<HashSet<Long>> newLines = lineSets(newFiles, newContents);
+        ArrayList<long[]> scored = new ArrayList<>();
+        for (long pair : candidates(oldLines, newLines)) {
+            int i = (int) (pair >>> 32);
+            int j = (int) pair;
+            int score = similarity(oldLines.get(i), newLines.get(j));
+            if (score >= threshold) {
+                scored.add(new long[] { score, i, j });
+            }
+        }
+        Collections.sort(scored, (x, y) -> x[0] != y[0]
+                ? Long.compare(y[0], x[0])
+                : x[1] != y[1] ? Long.compare(x[1], y[1])
+                : Long.compare(x[2], y[2]));
+        return scored;
+    }
+
+    /**
+     * Return the sets of hashed lines of FILES, read with CONTENTS.
+     * @param files file names
+     * @param contents reads a file
+     * @return line hash sets, in the order of FILES
+     */
+    private static List<HashSet<Long>> lineSets(List<String> files,
+            Function<String, byte[]> contents) {
+        ArrayList<HashSet<Long>> sets = new ArrayList<>();
+        for (String f : files) {
+            HashSet<Long> lines = new HashSet<>();
+            for (String line : Diff.splitLines(contents.apply(f))) {
+                lines.add(mix(line.trim().hashCode()));
+            }
+            sets.add(lines);
+        }
+        return sets;
+    }
+
+    /**
+     * Return the pairs (i, j), encoded as i * 2^32 + j, of indices into
+     * OLDLINES and NEWLINES whose MinHash signatures agree on at least one
+     * band.
+     * @param oldLines line sets of the deleted files
+     * @param newLines line sets of the added files
+     * @return candidate pairs
+     */
+    private static HashSet<Long> candidates(List<HashSet<Long>> oldLines,
+            List<HashSet<Long>> newLines) {
+        HashMap<Long, ArrayList<Integer>> oldBuckets = new HashMap<>();
+        for (int i = 0; i < oldLines.size(); i++) {
+            for (long key : bandKeys(oldLines.get(i))) {
+                oldBuckets.computeIfAbsent(key, k -> new ArrayList<>()).add(i);
+            }
+        }
+        HashSet<Long> pairs = new HashSet<>();
+        for (int j = 0; j < newLines.size(); j++) {
+            for (long key : bandKeys(newLines.get(j))) {
+                ArrayList<Integer> bucket = oldBuckets.get(key);
+                if (bucket == null || bucket.size() > MAX_BUCKET) {
+                    continue;
+                }
+                for (int i : bucket) {
+                    pairs.add(((long) i << 32) | j);
+                }
+            }
+        }
+        return pairs;
+    }
+
+    /**
+     * Return the bucket keys of the bands of the MinHash signature of
+     * LINES. An empty set has no keys, so empty files are never paired
+     * by similarity.
+     * @param lines hashed lines
+     * @return one key per band
+     */
+    private static long[] bandKeys(HashSet<Long> lines) {
+        if (lines.isEmpty()) {
+            return new long[0];
+        }
+        long[] signature = new long[HASHES];
+        Arrays.fill(signature, Long.MAX_VALUE);
+        for (long line : lines) {
+            for (int k = 0; k < HASHES; k++) {
+                signature[k] = Math.min(signature[k], mix(line ^ SEEDS[k]));
+            }
+        }
+        long[] keys = new long[HASHES / ROWS];
+        for (int b = 0; b < keys.length; b++) {
+            long key = b;
+            for (int r = 0; r < ROWS; r++) {
+                key = mix(key * 31 + signature[b * ROWS + r]);
+            }
+            keys[b] = key;
+        }
+        return keys;
+    }
+
+    /**
+     * Return the similarity of line sets A and B, in percent: the number of
+     * lines they share out of the number of lines in either.
+     * @param a line set
+     * @param b line set
+     * @return similarity from 0 to 100
+     */
+    private static int similarity(HashSet<Long> a, HashSet<Long> b) {
+        HashSet<Long> small = a.size() <= b.size() ? a : b;
+        HashSet<Long> large = small == a ? b : a;
+        int common = 0;
+        for (long line : small) {
+            if (large.contains(line)) {
+                common += 1;
+            }
+        }
+        int union = a.size() + b.size() - common;
+        return union == 0 ? 100 : (int) (100L * common / union);
+    }
+
+    /**
+     * Return a well-mixed 64-bit hash of X (the finalizer of
+     * MurmurHash3).
+     * @param x value
+     * @return hash
+     */
+    private static long mix(long x) {
+        x ^= x >>> 33;
+        x *= 0xff51afd7ed558ccdL;
+        x ^= x >>> 33;
+        x *= 0xc4ceb9fe1a85ec53L;
+        x ^= x >>> 33;
+        return x;
+    }
+}
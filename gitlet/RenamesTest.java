@@ -0,0 +1,121 @@
+package gitlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+/** Tests for rename detection.
+ *  @author Sam Khano Tim Chan
+ */
+public class RenamesTest {
+
+    /** Return a file of the numbered lines FROM to TO, with the line
+     *  EXTRA at the end. */
+    private static String numbered(int from, int to, String extra) {
+        StringBuilder text = new StringBuilder();
+        for (int i = from; i < to; i++) {
+            text.append("line ").append(i).append("\n");
+        }
+        return text.append(extra).append("\n").toString();
+    }
+
+    /** Return the renames from the files in OLD to those in NEW, which map
+     *  names to contents, with THRESHOLD and LIMIT. */
+    private static Map<String, String> detect(Map<String, String> old,
+            Map<String, String> neu, int threshold, int limit) {
+        return Renames.detect(ids(old), ids(neu),
+            f -> old.get(f).getBytes(StandardCharsets.UTF_8),
+            f -> neu.get(f).getBytes(StandardCharsets.UTF_8),
+            threshold, limit);
+    }
+
+    /** Return FILES with their contents replaced by blob ids. */
+    private static Map<String, String> ids(Map<String, String> files) {
+        HashMap<String, String> result = new HashMap<>();
+        for (Map.Entry<String, String> f : files.entrySet()) {
+            result.put(f.getKey(), Utils.sha1("blobs", f.getValue()));
+        }
+        return result;
+    }
+
+    @Test
+    public void exactTest() {
+        HashMap<String, String> old = new HashMap<>();
+        HashMap<String, String> neu = new HashMap<>();
+        old.put("a.txt", "same\n");
+        old.put("b.txt", "same\n");
+        neu.put("c.txt", "same\n");
+        neu.put("d.txt", "same\n");
+        TreeMap<String, String> expected = new TreeMap<>();
+        expected.put("a.txt", "c.txt");
+        expected.put("b.txt", "d.txt");
+        assertEquals(expected, detect(old, neu, 101, 0));
+    }
+
+    @Test
+    public void similarTest() {
+        HashMap<String, String> old = new HashMap<>();
+        HashMap<String, String> neu = new HashMap<>();
+        old.put("a.txt", numbered(0, 40, "a"));
+        old.put("b.txt", numbered(100, 140, "b"));
+        old.put("gone.txt", numbered(200, 240, "gone"));
+        neu.put("x.txt", numbered(100, 140, "x"));
+        neu.put("y.txt", numbered(0, 40, "y"));
+        neu.put("new.txt", numbered(300, 340, "new"));
+        TreeMap<String, String> expected = new TreeMap<>();
+        expected.put("a.txt", "y.txt");
+        expected.put("b.txt", "x.txt");
+        assertEquals(expected, detect(old, neu, 50, 1000));
+    }
+
+    @Test
+    public void bestMatchTest() {
+        HashMap<String, String> old = new HashMap<>();
+        HashMap<String, String> neu = new HashMap<>();
+        old.put("a.txt", numbered(0, 40, "a"));
+        neu.put("far.txt", numbered(10, 40, "far"));
+        neu.put("near.txt", numbered(0, 39, "near"));
+        assertEquals("near.txt", detect(old, neu, 50, 1000).get("a.txt"));
+    }
+
+    @Test
+    public void settingsTest() {
+        HashMap<String, String> old = new HashMap<>();
+        HashMap<String, String> neu = new HashMap<>();
+        old.put("a.txt", numbered(0, 10, "a"));
+        neu.put("b.txt", numbered(0, 10, "b"));
+        assertEquals("b.txt", detect(old, neu, 50, 1000).get("a.txt"));
+        assertTrue(detect(old, neu, 90, 1000).isEmpty());
+        assertTrue(detect(old, neu, 50, 0).isEmpty());
+    }
+
+    @Test
+    public void copiesTest() {
+        HashMap<String, String> old = new HashMap<>();
+        HashMap<String, String> neu = new HashMap<>();
+        old.put("a.txt", numbered(0, 40, "a"));
+        old.put("b.txt", numbered(100, 140, "b"));
+        neu.put("same.txt", numbered(0, 40, "a"));
+        neu.put("x.txt", numbered(0, 40, "x"));
+        neu.put("y.txt", numbered(0, 39, "y"));
+        neu.put("new.txt", numbered(300, 340, "new"));
+        TreeMap<String, String> expected = new TreeMap<>();
+        expected.put("same.txt", "a.txt");
+        expected.put("x.txt", "a.txt");
+        expected.put("y.txt", "a.txt");
+        assertEquals(expected, Renames.copies(ids(old), ids(neu),
+            f -> old.get(f).getBytes(StandardCharsets.UTF_8),
+            f -> neu.get(f).getBytes(StandardCharsets.UTF_8), 50, 1000));
+        expected.remove("x.txt");
+        expected.remove("y.txt");
+        assertEquals(expected, Renames.copies(ids(old), ids(neu),
+            f -> old.get(f).getBytes(StandardCharsets.UTF_8),
+            f -> neu.get(f).getBytes(StandardCharsets.UTF_8), 50, 0));
+    }
+}
@@ -1,8 +1,12 @@
 package gitlet;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Backbone of all the branches.
@@ -11,11 +15,19 @@ import java.util.HashMap;
  */
 public class Repo implements Serializable {
 
-    /** Default constructor. */
-    public Repo() {
-        File staged = new File(Main.getStagedDir());
-        File commits = new File(Main.getCommitDir());
-        File removed = new File(Main.getRemovedDir());
+    /** Pinned so that repos written by earlier builds stay readable. */
+    private static final long serialVersionUID = 7543292213514403122L;
+
+    /** Prefix of the addresses of remotes served by a Daemon. */
+    static final String URL_PREFIX = "gitlet://";
+
+    /** Default constructor, which creates the directories of
+     *  REPOSITORY that hold commits and the staging area.
+     *  @param repository repository described */
+    public Repo(Repository repository) {
+        File staged = new File(repository.stagedDir());
+        File commits = new File(repository.commitDir());
+        File removed = new File(repository.removedDir());
         staged.mkdir();
         commits.mkdir();
         removed.mkdir();
@@ -43,8 +55,19 @@ public class Repo implements Serializable {
         return getCommit(currentBranchName);
     }
 
-    /** Return the branch information. */
+    /** Return the branch information, reading every branch that has not
+     *  been read yet. */
     public HashMap<String, String> getBranchInfo() {
+        if (refs != null && !allBranches) {
+            for (Map.Entry<String, String> ref : refs.all().entrySet()) {
+                if (!loadedBranches.containsKey(ref.getKey())
+                        && !branchInfo.containsKey(ref.getKey())) {
+                    branchInfo.put(ref.getKey(), ref.getValue());
+                    loadedBranches.put(ref.getKey(), ref.getValue());
+                }
+            }
+            allBranches = true;
+        }
         return branchInfo;
     }
 
@@ -60,6 +83,7 @@ public class Repo implements Serializable {
      * @return SHA associated with the BranchName.
      */
     public String getCommit(String branchName) {
+        read(branchName);
         assert branchInfo.containsKey(branchName);
         return branchInfo.get(branchName);
     }
@@ -69,8 +93,10 @@ public class Repo implements Serializable {
      * @param branchName name of the branch.
      */
     public void newBranch(String branchName) {
+        read(branchName);
+        read(currentBranchName);
         if (branchInfo.containsKey(branchName)) {
-            Main.error("A branch with that name already exists.");
+            throw new StateException("A branch with that name already exists.");
         }
         branchInfo.put(branchName, branchInfo.get(currentBranchName));
     }
@@ -80,10 +106,12 @@ public class Repo implements Serializable {
      * @param branchName name of the branch to be deleted.
      */
     public void removeBranch(String branchName) {
+        read(branchName);
         if (!branchInfo.containsKey(branchName)) {
-            Main.error("A branch with that name does not exist.");
+            throw new NotFoundException(
+                    "A branch with that name does not exist.");
         } else if (currentBranchName.equals(branchName)) {
-            Main.error("Cannot remove the current branch.");
+            throw new StateException("Cannot remove the current branch.");
         }
         branchInfo.remove(branchName);
     }
@@ -93,7 +121,7 @@ public class Repo implements Serializable {
      * @param commitId SHA1 of the commit.
      */
     public void updateBranch(String commitId) {
-        branchInfo.put(currentBranchName, commitId);
+        updateBranch(currentBranchName, commitId);
     }
 
     /**
@@ -102,6 +130,7 @@ public class Repo implements Serializable {
      * @param commitId SHA1 of the commit.
      */
     public void updateBranch(String branchName, String commitId) {
+        read(branchName);
         branchInfo.put(branchName, commitId);
     }
 
@@ -111,38 +140,137 @@ public class Repo implements Serializable {
      * @return boolean
      */
     public boolean containsBranch(String branchName) {
+        read(branchName);
         return branchInfo.containsKey(branchName);
     }
 
 
+    /**
+     * Take the branches from REFS, reading each only when it is first
+     * used, and remember the heads read as the ones later updates
+     * expect.
+     * @param branches stored branches
+     */
+    void setRefs(Refs branches) {
+        refs = branches;
+        branchInfo = new HashMap<>();
+        loadedBranches = new HashMap<>();
+        allBranches = false;
+    }
+
+    /**
+     * Remember the branches as they are now as the heads later updates
+     * expect, once they have been stored or read from the repo file.
+     */
+    void branchesSaved() {
+        loadedBranches = new HashMap<>(branchInfo);
+    }
+
+    /**
+     * Read the branch BRANCHNAME from the refs, unless it has been read,
+     * created or changed already.
+     * @param branchName name of the branch
+     */
+    private void read(String branchName) {
+        if (refs == null || allBranches
+                || loadedBranches.containsKey(branchName)
+                || branchInfo.containsKey(branchName)
+                || !refs.contains(branchName)) {
+            return;
+        }
+        String commitId = refs.get(branchName);
+        branchInfo.put(branchName, commitId);
+        loadedBranches.put(branchName, commitId);
+    }
+
+    /**
+     * Return the branches read, created or changed so far, without
+     * reading the others.
+     * @return branch name to head commit id
+     */
+    Map<String, String> branches() {
+        return branchInfo;
+    }
+
+    /**
+     * Return the branches as they were read, which saving this repo
+     * expects them still to be. Branches never read are left out, since
+     * this repo cannot have changed them.
+     * @return branch name to head commit id
+     */
+    Map<String, String> getLoadedBranches() {
+        return loadedBranches == null
+                ? Collections.emptyMap() : loadedBranches;
+    }
+
+    /**
+     * Write this repo to OUT without its branches, which are stored as
+     * refs of their own.
+     * @param out destination
+     * @throws IOException on failure
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        HashMap<String, String> branches = branchInfo;
+        branchInfo = new HashMap<>();
+        try {
+            out.defaultWriteObject();
+        } finally {
+            branchInfo = branches;
+        }
+    }
+
     /** Name of current branch.*/
     private String currentBranchName = "master";
 
     /** Map<Branch name, SHA1 of the branch's head commit>.*/
     private HashMap<String, String> branchInfo;
 
+    /** Branches as they were read, or null for a new repo. */
+    private transient HashMap<String, String> loadedBranches;
+
+    /** Where branches not yet read are stored, or null for a new repo. */
+    private transient Refs refs;
+
+    /** True iff every stored branch has been read. */
+    private transient boolean allBranches;
+
     /** Map<Remote name, string of remote path>. */
     private HashMap<String, String> remoteServer;
 
     /**
-     * Add a new remove server.
+     * Add a new remove server. The address is either the path of a .gitlet
+     * directory, ending with a separator, or a gitlet:// address.
      * @param remoteName name of the remote sever
      * @param remoteAddress address of the remote server
      */
     public void addRemote(String remoteName, String remoteAddress) {
         if (remoteServer.containsKey(remoteName)) {
-            Main.error("A remote with that name already exists.");
+            throw new StateException("A remote with that name already exists.");
+        }
+        if (isUrl(remoteAddress)) {
+            NetRemote.validate(remoteAddress);
         }
         remoteServer.put(remoteName, remoteAddress);
     }
 
+    /**
+     * Check if an address names a remote served by a Daemon rather than a
+     * directory.
+     * @param remoteAddress address of a remote
+     * @return boolean
+     */
+    public static boolean isUrl(String remoteAddress) {
+        return remoteAddress.startsWith(URL_PREFIX);
+    }
+
     /**
      * Removing a server.
      * @param remoteName Name of the remote server
      */
     public void removeRemote(String remoteName) {
         if (!remoteServer.containsKey(remoteName)) {
-            Main.error("A remote with that name does not exist.");
+            throw new NotFoundException(
+                    "A remote with that name does not exist.");
         }
         remoteServer.remove(remoteName);
     }
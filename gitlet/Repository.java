@@ -0,0 +1,501 @@
+package gitlet;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * A repository on disk: the paths of a .gitlet directory and of the
+ * working directory around it, the objects stored there and the settings
+ * and rules read from them. Each Repository keeps its own caches, so
+ * several can be open at once, say a local repository and a remote one,
+ * without one's state leaking into the other's.
+ * @author Sam Khano Tim Chan
+ */
+class Repository {
+
+    /** Directory holding commits, relative to a .gitlet directory. */
+    static final String COMMITS = "commits/";
+
+    /** Directory holding blobs, relative to a .gitlet directory: the
+     *  .gitlet directory itself. */
+    static final String BLOBS = "";
+
+    /**
+     * The repository whose .gitlet directory is DIR. Its working directory
+     * is the one containing DIR; for a relative DIR with no parent, such
+     * as .gitlet/, that is the current directory.
+     * @param dir path of the .gitlet directory, ending with a separator
+     */
+    Repository(String dir) {
+        _dir = dir;
+        _workTree = new File(dir).getParentFile();
+        _refs = new Refs(dir);
+    }
+
+    /**
+     * Return the path of the .gitlet directory.
+     * @return path, ending with a separator
+     */
+    String dir() {
+        return _dir;
+    }
+
+    /**
+     * Return the path of the directory holding commits.
+     * @return path, ending with a separator
+     */
+    String commitDir() {
+        return _dir + COMMITS;
+    }
+
+    /**
+     * Return the path of the directory holding staged files.
+     * @return path, ending with a separator
+     */
+    String stagedDir() {
+        return _dir + "staged/";
+    }
+
+    /**
+     * Return the path of the directory marking files for removal.
+     * @return path, ending with a separator
+     */
+    String removedDir() {
+        return _dir + "removed/";
+    }
+
+    /**
+     * Return the path of the file holding branches and remotes.
+     * @return path
+     */
+    String repoFile() {
+        return _dir + "repo.txt";
+    }
+
+    /**
+     * Return the working directory.
+     * @return working directory
+     */
+    File workTree() {
+        return _workTree == null ? new File(".") : _workTree;
+    }
+
+    /**
+     * Return the file NAME of the working directory.
+     * @param name name relative to the working directory
+     * @return file
+     */
+    File file(String name) {
+        return _workTree == null ? new File(name) : new File(_workTree, name);
+    }
+
+    /**
+     * Return the file storing the blob BLOBID.
+     * @param blobId SHA-1 of the blob
+     * @return file
+     */
+    File object(String blobId) {
+        return new File(_dir + blobPath(blobId));
+    }
+
+    /**
+     * Return the file storing the commit COMMITID.
+     * @param commitId SHA-1 of the commit
+     * @return file
+     */
+    File commitFile(String commitId) {
+        return commitFile(_dir, commitId);
+    }
+
+    /**
+     * Return the file storing the commit COMMITID in the .gitlet directory,
+     * or directory laid out like one, DIR, for which there may be no
+     * Repository, such as the directory a pack is read into.
+     * @param dir path of the directory, ending with a separator
+     * @param commitId SHA-1 of the commit
+     * @return file
+     */
+    static File commitFile(String dir, String commitId) {
+        return new File(dir + commitPath(commitId));
+    }
+
+    /**
+     * Return the path of the commit COMMITID relative to a .gitlet
+     * directory.
+     * @param commitId SHA-1 of the commit
+     * @return relative path
+     */
+    static String commitPath(String commitId) {
+        return COMMITS + commitId;
+    }
+
+    /**
+     * Return the path of the blob BLOBID relative to a .gitlet directory.
+     * @param blobId SHA-1 of the blob
+     * @return relative path
+     */
+    static String blobPath(String blobId) {
+        return BLOBS + blobId;
+    }
+
+    /**
+     * Return true iff PATH, relative to a .gitlet directory, is that of a
+     * commit.
+     * @param path relative path of an object
+     * @return true for a commit, false for a blob
+     */
+    static boolean isCommitPath(String path) {
+        return path.startsWith(COMMITS);
+    }
+
+    /**
+     * Return the branches and remotes of this repository. A repository
+     * written by an earlier build, which kept its branches in the repo
+     * file, is read as it is until migrate() moves them to refs.
+     * @return repo, or null if there is none
+     */
+    Repo loadRepo() {
+        Repo repo = Utils.loadObj(new Repo("temp"), repoFile());
+        if (repo == null) {
+            return null;
+        }
+        if (_refs.exists()) {
+            repo.setRefs(_refs);
+        } else {
+            repo.branchesSaved();
+        }
+        return repo;
+    }
+
+    /**
+     * Move the branches of a repository written by an earlier build from
+     * the repo file to refs, if that has not been done yet. Only a command
+     * holding the write lock, or about to store the repo, may do this.
+     */
+    void migrate() {
+        if (_refs.exists()) {
+            return;
+        }
+        Repo repo = Utils.loadObj(new Repo("temp"), repoFile());
+        if (repo == null) {
+            return;
+        }
+        for (Map.Entry<String, String> branch
+                : repo.getBranchInfo().entrySet()) {
+            try {
+                _refs.update(branch.getKey(), null, branch.getValue());
+            } catch (StaleRefException excp) {
+                /* Moved by a concurrent command already. */
+            }
+        }
+    }
+
+    /**
+     * Store REPO as the branches and remotes of this repository. Only the
+     * branches REPO changed since it was read are written, each provided
+     * that no other command has moved it meanwhile, and the repo file is
+     * rewritten only if the rest of REPO changed. The branches of a
+     * repository written by an earlier build are first moved to refs,
+     * since the repo file is written without them.
+     * @param repo repo
+     * @throws StaleRefException if a changed branch was moved meanwhile
+     */
+    void saveRepo(Repo repo) {
+        migrate();
+        Map<String, String> loaded = repo.getLoadedBranches();
+        Map<String, String> branches = repo.branches();
+        for (Map.Entry<String, String> branch
+                : new TreeMap<>(branches).entrySet()) {
+            String name = branch.getKey();
+            if (!loaded.containsKey(name)
+                    || !Objects.equals(branch.getValue(), loaded.get(name))) {
+                moveRef(name, loaded.get(name), branch.getValue(), false);
+            }
+        }
+        for (String name : new TreeSet<>(loaded.keySet())) {
+            if (!branches.containsKey(name)) {
+                moveRef(name, loaded.get(name), null, true);
+            }
+        }
+        byte[] bytes = Utils.serialize(repo);
+        File file = new File(repoFile());
+        if (!file.isFile()
+                || !Arrays.equals(bytes, Utils.readContents(file))) {
+            if (_journal != null) {
+                _journal.replace(file, bytes);
+            } else {
+                Utils.writeContents(file, bytes);
+            }
+        }
+        repo.branchesSaved();
+    }
+
+    /**
+     * Move the branch NAME from EXPECTED to VALUE, or delete it if DELETE,
+     * as part of the current journaled change if there is one, and at
+     * once otherwise. A branch is moved outside the journal only once the
+     * journal is checkpointed, so that a change left in it is never
+     * replayed over this move.
+     * @param name branch name
+     * @param expected head last seen
+     * @param value new head
+     * @param delete true iff the branch is to be deleted
+     */
+    private void moveRef(String name, String expected, String value,
+            boolean delete) {
+        if (_journal != null) {
+            _journal.ref(name, expected, value, delete);
+            return;
+        }
+        Journal.checkpoint(this);
+        if (delete) {
+            _refs.delete(name, expected);
+        } else {
+            _refs.update(name, expected, value);
+        }
+    }
+
+    /**
+     * Make the changes CHANGE makes to this repository one journaled
+     * change: objects it stores are written at once, but it deletes files,
+     * moves branches and rewrites the repo file only once the whole change
+     * is on disk. If CHANGE throws, none of these is made.
+     * @param change change
+     */
+    void journaled(Runnable change) {
+        Journal journal = new Journal(this, Journal.synced(this));
+        _journal = journal;
+        try {
+            change.run();
+        } finally {
+            _journal = null;
+        }
+        journal.commit();
+    }
+
+    /**
+     * Store CONTENTS as the object FILE, unless it is already stored.
+     * @param file object file
+     * @param contents contents
+     * @param id Journal.objectId of CONTENTS, which for a blob is its id
+     */
+    void storeObject(File file, byte[] contents, String id) {
+        if (_journal != null) {
+            _journal.object(file, contents, id);
+        } else if (!file.exists()) {
+            Utils.writeContents(file, contents);
+        }
+    }
+
+    /**
+     * Delete FILE of the .gitlet directory, once the current journaled
+     * change is on disk if there is one, and at once otherwise.
+     * @param file file
+     */
+    void delete(File file) {
+        if (_journal != null) {
+            _journal.delete(file);
+        } else {
+            file.delete();
+        }
+    }
+
+    /**
+     * Return the branches of this repository.
+     * @return branches
+     */
+    Refs refs() {
+        return _refs;
+    }
+
+    /**
+     * Take the write lock of this repository, to be released once the
+     * changes are made, waiting for it as long as the settings allow.
+     * @return lock
+     * @throws StateException if another command keeps the lock
+     */
+    Lock lock() {
+        return new Lock(_dir,
+                config().getInt(Lock.TIMEOUT, Lock.DEFAULT_TIMEOUT));
+    }
+
+    /**
+     * Return the commit COMMITID. Commits never change once stored, so
+     * each is read from disk at most once.
+     * @param commitId commit id
+     * @return commit, or null if there is no such commit
+     */
+    Commit loadCommit(String commitId) {
+        Commit c = _commits.get(commitId);
+        Trace.count(c == null ? Trace.CACHE_MISSES : Trace.CACHE_HITS, 1);
+        if (c == null) {
+            c = Utils.loadObj(new Commit("temp"),
+                    commitFile(commitId).getPath());
+            if (c != null) {
+                _commits.put(commitId, c);
+            }
+        }
+        return c;
+    }
+
+    /**
+     * Store the commit C and return its id.
+     * @param c commit
+     * @return commit id
+     */
+    String saveCommit(Commit c) {
+        String commitId = c.hashId();
+        byte[] contents = Utils.serialize(c);
+        storeObject(commitFile(commitId), contents,
+                Journal.objectId(contents));
+        _commits.put(commitId, c);
+        return commitId;
+    }
+
+    /**
+     * Return the history ending at the commit TIP, newest first, as
+     * followed through first parents. Commits are read as the iteration
+     * reaches them, and the history ends at the shallow boundary, if any.
+     * @param tip id of the newest commit, or null for an empty history
+     * @return commits
+     */
+    Iterator<Commit> history(String tip) {
+        Set<String> shallow = Shallow.load(_dir);
+        return new Iterator<Commit>() {
+            @Override
+            public boolean hasNext() {
+                return _next != null;
+            }
+
+            @Override
+            public Commit next() {
+                if (_next == null) {
+                    throw new NoSuchElementException();
+                }
+                Commit c = loadCommit(_next);
+                if (c == null) {
+                    throw new NotFoundException(
+                            "No commit with that id exists.");
+                }
+                _next = shallow.contains(_next) ? null : c.getParent();
+                return c;
+            }
+
+            /** Id of the commit next() returns. */
+            private String _next = tip;
+        };
+    }
+
+    /**
+     * Return the contents of the blob BLOBID.
+     * @param blobId SHA-1 of the blob
+     * @return contents
+     */
+    byte[] readBlob(String blobId) {
+        return Utils.readContents(object(blobId));
+    }
+
+    /**
+     * Store CONTENTS as a blob, unless it is already stored.
+     * @param contents contents of a file
+     * @return SHA-1 of the blob
+     */
+    String saveBlob(byte[] contents) {
+        String blobId = Utils.sha1("blobs", contents);
+        storeObject(object(blobId), contents, blobId);
+        return blobId;
+    }
+
+    /**
+     * Return the settings of this repository, loading them on first use
+     * and again whenever the config file changes.
+     * @return settings
+     */
+    Config config() {
+        File file = new File(_dir + Config.CONFIG_FILE);
+        FileStamp stamp = FileStamp.of(file);
+        if (_config == null || !stamp.equals(_configStamp)) {
+            _configStamp = stamp;
+            _config = new Config(_dir);
+        }
+        return _config;
+    }
+
+    /**
+     * Return the rules of the .gitletignore file in the working directory,
+     * compiling them on first use and again whenever the file changes.
+     * @return ignore rules
+     */
+    PathRules ignoreRules() {
+        File file = file(PathRules.IGNORE_FILE);
+        FileStamp stamp = FileStamp.of(file);
+        if (_ignore == null || !stamp.equals(_ignoreStamp)) {
+            _ignoreStamp = stamp;
+            _ignore = PathRules.load(file);
+        }
+        return _ignore;
+    }
+
+    /**
+     * Return the sparse-checkout rules of this repository, loading them on
+     * first use and again whenever the rule file changes. Empty rules mean
+     * that sparse checkout is off.
+     * @return sparse-checkout rules
+     */
+    PathRules sparseRules() {
+        File file = new File(_dir + Main.SPARSE_FILE);
+        FileStamp stamp = FileStamp.of(file);
+        if (_sparse == null || !stamp.equals(_sparseStamp)) {
+            _sparseStamp = stamp;
+            _sparse = PathRules.load(file);
+        }
+        return _sparse;
+    }
+
+    /** Forget the sparse-checkout rules, so that they are loaded again on
+     *  next use. */
+    void reloadSparseRules() {
+        _sparse = null;
+    }
+
+    /** Path of the .gitlet directory, ending with a separator. */
+    private final String _dir;
+
+    /** Working directory, or null for the current directory. */
+    private final File _workTree;
+
+    /** Branches. */
+    private final Refs _refs;
+
+    /** The current journaled change, or null if there is none. */
+    private Journal _journal;
+
+    /** Commits read so far, by id. */
+    private final HashMap<String, Commit> _commits = new HashMap<>();
+
+    /** Settings, or null if not yet loaded. */
+    private Config _config;
+
+    /** Stamp of the config file when _config was loaded. */
+    private FileStamp _configStamp;
+
+    /** Compiled .gitletignore rules, or null if not yet loaded. */
+    private PathRules _ignore;
+
+    /** Stamp of the .gitletignore file when _ignore was compiled. */
+    private FileStamp _ignoreStamp;
+
+    /** Compiled sparse-checkout rules, or null if not yet loaded. */
+    private PathRules _sparse;
+
+    /** Stamp of the sparse-checkout file when _sparse was compiled. */
+    private FileStamp _sparseStamp;
+}
@@ -0,0 +1,117 @@
+package gitlet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tests for repository contexts.
+ *  @author Sam Khano Tim Chan
+ */
+public class RepositoryTest {
+
+    /** Working directories of the repositories under test. */
+    private static final String[] WORK = { "repository-a", "repository-b" };
+
+    @Before
+    public void setUp() {
+        tearDown();
+        for (String work : WORK) {
+            new File(work + "/.gitlet").mkdirs();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        for (String work : WORK) {
+            if (new File(work).exists()) {
+                Utils.recursiveDelete(new File(work));
+            }
+        }
+    }
+
+    @Test
+    public void pathsTest() {
+        Repository local = new Repository(Main.DEFAULT_GIT_DIR);
+        assertEquals(new File("f.txt"), local.file("f.txt"));
+        assertEquals(".gitlet/commits/", local.commitDir());
+        Repository a = new Repository(WORK[0] + "/.gitlet/");
+        assertEquals(new File(WORK[0], "f.txt"), a.file("f.txt"));
+        assertEquals(new File(WORK[0]), a.workTree());
+    }
+
+    @Test
+    public void independentTest() {
+        Repository a = new Repository(WORK[0] + "/.gitlet/");
+        Repository b = new Repository(WORK[1] + "/.gitlet/");
+        Utils.writeContents(new File(a.dir() + Config.CONFIG_FILE),
+                "diff.algorithm=histogram\n".getBytes());
+        assertEquals(Diff.HISTOGRAM, a.config().get(Diff.ALGORITHM, null));
+        assertNull(b.config().get(Diff.ALGORITHM, null));
+
+        new Repo(a);
+        String blob = a.saveBlob("one".getBytes());
+        assertArrayEquals("one".getBytes(), a.readBlob(blob));
+        assertFalse(b.object(blob).exists());
+        Commit c = new Commit("one", "", null);
+        String id = a.saveCommit(c);
+        assertSame(c, a.loadCommit(id));
+        assertNull(b.loadCommit(id));
+    }
+
+    @Test
+    public void reloadTest() throws IOException {
+        Repository a = new Repository(WORK[0] + "/.gitlet/");
+        File file = new File(a.dir() + Config.CONFIG_FILE);
+        Utils.writeContents(file, "a.b=one\n".getBytes());
+        assertEquals("one", a.config().get("a.b", null));
+        long modified = file.lastModified();
+        Utils.writeContents(file, "a.b=two\n".getBytes());
+        file.setLastModified(modified);
+        assertEquals("two", a.config().get("a.b", null));
+        Files.write(file.toPath(), "a.b=six\n".getBytes());
+        file.setLastModified(modified);
+        assertEquals("six", a.config().get("a.b", null));
+    }
+
+    @Test
+    public void lockTest() {
+        Repository a = new Repository(WORK[0] + "/.gitlet/");
+        Repository b = new Repository(WORK[1] + "/.gitlet/");
+        try (Lock lock = a.lock()) {
+            try {
+                new Lock(a.dir(), 0);
+                fail();
+            } catch (StateException excp) {
+                assertTrue(excp.getMessage().startsWith("Another gitlet"));
+            }
+            b.lock().close();
+        }
+        a.lock().close();
+        assertFalse(new File(a.dir() + Lock.LOCK_FILE).exists());
+    }
+
+    @Test
+    public void atomicWriteTest() {
+        Repository a = new Repository(WORK[0] + "/.gitlet/");
+        File file = new File(a.dir() + "f.txt");
+        Utils.writeContents(file, "one".getBytes());
+        Utils.writeContents(file, "two".getBytes());
+        assertArrayEquals("two".getBytes(), Utils.readContents(file));
+        Utils.writeContents(Utils.tempFile(file.toPath()).toFile(),
+                "partial".getBytes());
+        assertEquals(Arrays.asList("f.txt"), Utils.plainFilenamesIn(a.dir()));
+    }
+}
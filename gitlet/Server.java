@@ -0,0 +1,274 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Runs gitlet commands for clients in one long-lived process, so that
+ * the JVM starts once and the repository's caches stay warm from one
+ * command to the next. The server listens on a Unix-domain socket in the
+ * .gitlet directory. Each connection carries one command: the client
+ * sends a flag saying whether its user sits at a terminal, then the
+ * number of arguments and each argument as a length and UTF-8 bytes. The
+ * server answers with frames, each a kind byte, a length and that many
+ * bytes of standard output (OUT) or standard error (ERR), in the order
+ * the command wrote them, and ends with an EXIT frame holding the status
+ * the command would have exited with. Commands are run one at a time.
+ * @author Sam Khano Tim Chan
+ */
+class Server {
+
+    /** Name of the socket file inside the .gitlet directory. */
+    static final String SOCKET_FILE = "server.sock";
+
+    /** Frame ending a reply, followed by an exit status. */
+    static final byte EXIT = 0;
+
+    /** Frame of standard output. */
+    static final byte OUT = 1;
+
+    /** Frame of standard error. */
+    static final byte ERR = 2;
+
+    /** Largest frame written. */
+    static final int FRAME_SIZE = 8192;
+
+    /**
+     * A server running commands on REPOSITORY.
+     * @param repository repository served
+     * @throws IOException if the socket cannot be bound
+     */
+    Server(Repository repository) throws IOException {
+        _repository = repository;
+        File socket = new File(repository.dir() + SOCKET_FILE);
+        if (socket.exists()) {
+            try (SocketChannel probe = connect(socket.getPath())) {
+                throw new StateException("A server is already running.");
+            } catch (IOException excp) {
+                socket.delete();
+            }
+        }
+        _socket = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        _socket.bind(UnixDomainSocketAddress.of(socket.getPath()));
+        socket.deleteOnExit();
+    }
+
+    /** Serve connections until this server is closed. A connection that
+     *  fails, breaks the protocol or runs into a bug is dropped. */
+    void serve() {
+        while (_socket.isOpen()) {
+            try (SocketChannel client = _socket.accept()) {
+                handle(client);
+            } catch (IOException | RuntimeException excp) {
+                continue;
+            }
+        }
+    }
+
+    /**
+     * Stop serving.
+     * @throws IOException on failure
+     */
+    void close() throws IOException {
+        _socket.close();
+        new File(_repository.dir() + SOCKET_FILE).delete();
+    }
+
+    /**
+     * Run the command carried by the connection CLIENT.
+     * @param client connection
+     * @throws IOException on failure
+     */
+    private void handle(SocketChannel client) throws IOException {
+        DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Channels.newInputStream(client)));
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(client)));
+        boolean interactive = in.readBoolean();
+        String[] args = new String[in.readInt()];
+        for (int i = 0; i < args.length; i++) {
+            byte[] arg = new byte[in.readInt()];
+            in.readFully(arg);
+            args[i] = new String(arg, StandardCharsets.UTF_8);
+        }
+        Frames frames = new Frames(out);
+        PrintStream stdout = System.out, stderr = System.err;
+        System.setOut(new PrintStream(frames.stream(OUT), true,
+                StandardCharsets.UTF_8));
+        System.setErr(new PrintStream(frames.stream(ERR), true,
+                StandardCharsets.UTF_8));
+        Main.setRepository(_repository);
+        Main.setInteractive(interactive);
+        int status = 0;
+        try {
+            if (args.length > 0
+                    && (args[0].equals("server") || args[0].equals("serve"))) {
+                throw new UsageException(
+                        "Cannot run that command through the server.");
+            }
+            Main.run(args);
+        } catch (GitletException excp) {
+            System.err.println(excp.getMessage());
+        } catch (RuntimeException excp) {
+            System.err.println(excp);
+            status = 1;
+        } finally {
+            System.out.flush();
+            System.err.flush();
+            System.setOut(stdout);
+            System.setErr(stderr);
+        }
+        frames.flush();
+        out.writeByte(EXIT);
+        out.writeInt(status);
+        out.flush();
+    }
+
+    /**
+     * Run the command ARGS on the server listening on the socket file
+     * SOCKET, copying its standard output to OUT and its standard error to
+     * ERR, and return its exit status. INTERACTIVE says whether the user
+     * sits at a terminal.
+     * @param socket path of the socket file
+     * @param args command and operands
+     * @param interactive true iff progress should be reported
+     * @param out destination of standard output
+     * @param err destination of standard error
+     * @return exit status
+     * @throws IOException if the server cannot be reached
+     */
+    static int run(String socket, String[] args, boolean interactive,
+            OutputStream out, OutputStream err) throws IOException {
+        try (SocketChannel server = connect(socket)) {
+            DataOutputStream request = new DataOutputStream(
+                    new BufferedOutputStream(
+                        Channels.newOutputStream(server)));
+            request.writeBoolean(interactive);
+            request.writeInt(args.length);
+            for (String arg : args) {
+                byte[] bytes = arg.getBytes(StandardCharsets.UTF_8);
+                request.writeInt(bytes.length);
+                request.write(bytes);
+            }
+            request.flush();
+            DataInputStream reply = new DataInputStream(
+                    new BufferedInputStream(Channels.newInputStream(server)));
+            while (true) {
+                byte kind = reply.readByte();
+                if (kind == EXIT) {
+                    return reply.readInt();
+                }
+                byte[] data = new byte[reply.readInt()];
+                reply.readFully(data);
+                (kind == ERR ? err : out).write(data);
+                (kind == ERR ? err : out).flush();
+            }
+        }
+    }
+
+    /**
+     * Return a connection to the server listening on the socket file
+     * SOCKET.
+     * @param socket path of the socket file
+     * @return connection
+     * @throws IOException if there is no such server
+     */
+    private static SocketChannel connect(String socket) throws IOException {
+        return SocketChannel.open(UnixDomainSocketAddress.of(socket));
+    }
+
+    /** Output of a command, written as OUT and ERR frames in the order it
+     *  was produced. */
+    private static class Frames {
+
+        /**
+         * Frames written to OUT.
+         * @param out destination
+         */
+        Frames(DataOutputStream out) {
+            _out = out;
+        }
+
+        /**
+         * Return a stream whose bytes are sent in frames of kind KIND.
+         * @param kind OUT or ERR
+         * @return stream
+         */
+        OutputStream stream(byte kind) {
+            return new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    write(new byte[] { (byte) b }, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len)
+                        throws IOException {
+                    append(kind, b, off, len);
+                }
+            };
+        }
+
+        /**
+         * Add LEN bytes of B, starting at OFF, to the output of kind KIND.
+         * @param kind OUT or ERR
+         * @param b bytes
+         * @param off start
+         * @param len number of bytes
+         * @throws IOException on failure
+         */
+        private void append(byte kind, byte[] b, int off, int len)
+                throws IOException {
+            if (kind != _kind) {
+                flush();
+                _kind = kind;
+            }
+            _pending.write(b, off, len);
+            if (_pending.size() >= FRAME_SIZE) {
+                flush();
+            }
+        }
+
+        /**
+         * Send the output not yet sent as one frame.
+         * @throws IOException on failure
+         */
+        void flush() throws IOException {
+            if (_pending.size() > 0) {
+                _out.writeByte(_kind);
+                _out.writeInt(_pending.size());
+                _pending.writeTo(_out);
+                _pending.reset();
+            }
+        }
+
+        /** Destination of the frames. */
+        private final DataOutputStream _out;
+
+        /** Output not yet sent. */
+        private final ByteArrayOutputStream _pending =
+            new ByteArrayOutputStream();
+
+        /** Kind of the output not yet sent. */
+        private byte _kind = OUT;
+    }
+
+    /** The repository served. */
+    private final Repository _repository;
+
+    /** The listening socket. */
+    private final ServerSocketChannel _socket;
+}
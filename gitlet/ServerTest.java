@@ -0,0 +1,106 @@
+package gitlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tests for running commands through a server.
+ *  @author Sam Khano Tim Chan
+ */
+public class ServerTest {
+
+    /** Working directory of the served repository. */
+    private static final String WORK = "server-work";
+
+    @Before
+    public void setUp() throws IOException {
+        removeDir();
+        new File(WORK).mkdir();
+        _repository = new Repository(WORK + "/.gitlet/");
+        Main.setRepository(_repository);
+        Main.init();
+        _server = new Server(_repository);
+        Thread thread = new Thread(() -> {
+            Trace.start(new String[] { "server" }, true, null);
+            _server.serve();
+        });
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        _server.close();
+        Main.setRepository(new Repository(Main.DEFAULT_GIT_DIR));
+        removeDir();
+    }
+
+    /** Delete the test directory. */
+    private static void removeDir() {
+        if (new File(WORK).exists()) {
+            Utils.recursiveDelete(new File(WORK));
+        }
+    }
+
+    /** Run ARGS on the server, returning standard output followed by
+     *  standard error. */
+    private String run(String... args) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        assertEquals(0, Server.run(_repository.dir() + Server.SOCKET_FILE,
+                args, false, out, err));
+        return out.toString() + err.toString();
+    }
+
+    @Test
+    public void commandsTest() throws IOException {
+        Utils.writeContents(new File(WORK, "f.txt"), "one\n".getBytes());
+        assertEquals("", run("add", "f.txt"));
+        assertEquals("", run("commit", "one"));
+        assertEquals("", run("branch", "other"));
+        assertEquals("A branch with that name already exists.\n",
+                run("branch", "other"));
+        assertTrue(run("log").contains("one"));
+        assertTrue(run("status").contains("*master\nother\n"));
+    }
+
+    @Test
+    public void traceTest() throws IOException {
+        String reply = run("--trace", "status");
+        assertTrue(reply.startsWith("=== Branches ==="));
+        assertTrue(reply.contains("Trace of status: "));
+        assertTrue(reply.contains("objects loaded"));
+    }
+
+    @Test
+    public void refusedTest() throws IOException {
+        assertEquals("Cannot run that command through the server.\n",
+                run("server"));
+        assertEquals("Please enter a command.\n", run());
+    }
+
+    @Test
+    public void failedTest() throws IOException {
+        new File(WORK, "dir").mkdir();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        assertEquals(1, Server.run(_repository.dir() + Server.SOCKET_FILE,
+                new String[] {"add", "dir"}, false, out, err));
+        assertTrue(err.toString().contains("must be a normal file"));
+        Utils.writeContents(new File(WORK, "f.txt"), "one\n".getBytes());
+        assertEquals("", run("add", "f.txt"));
+    }
+
+    /** The served repository. */
+    private Repository _repository;
+
+    /** The server under test. */
+    private Server _server;
+}
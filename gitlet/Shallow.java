@@ -0,0 +1,75 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.TreeSet;
+
+/**
+ * The shallow boundary of a repository fetched with a depth limit: the
+ * commits it has without their parents, one id per line in the shallow
+ * file of its .gitlet directory. Every other commit a repository has comes
+ * with its whole history, so walks back through the history stop at these
+ * commits as if they were initial commits. A commit leaves the boundary
+ * once a deeper fetch brings its parent.
+ * @author Sam Khano Tim Chan
+ */
+class Shallow {
+
+    /** Name of the shallow file inside the .gitlet directory. */
+    static final String SHALLOW_FILE = "shallow";
+
+    /**
+     * Return the shallow boundary of the .gitlet directory DIR, which is
+     * empty unless the repository is shallow.
+     * @param dir .gitlet directory
+     * @return ids of the commits whose parents are missing
+     */
+    static TreeSet<String> load(String dir) {
+        TreeSet<String> ids = new TreeSet<>();
+        File file = new File(dir + SHALLOW_FILE);
+        if (file.isFile()) {
+            try {
+                for (String line : Files.readAllLines(file.toPath(),
+                        StandardCharsets.UTF_8)) {
+                    if (!line.isEmpty()) {
+                        ids.add(line);
+                    }
+                }
+            } catch (IOException excp) {
+                throw new StorageException("Could not read shallow file.");
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Add the commits IDS to the shallow boundary of the .gitlet directory
+     * DIR, and remove the commits whose parents DIR now has.
+     * @param dir .gitlet directory
+     * @param ids ids of commits fetched without their parents
+     */
+    static void add(String dir, Collection<String> ids) {
+        TreeSet<String> old = load(dir);
+        TreeSet<String> all = new TreeSet<>(old);
+        all.addAll(ids);
+        all.removeIf(id -> {
+            Commit c = Utils.loadObj(new Commit("temp"),
+                    Repository.commitFile(dir, id).getPath());
+            return c != null && c.getParent() != null
+                    && Repository.commitFile(dir, c.getParent()).isFile();
+        });
+        if (all.equals(old)) {
+            return;
+        }
+        File file = new File(dir + SHALLOW_FILE);
+        if (all.isEmpty()) {
+            file.delete();
+            return;
+        }
+        Utils.writeContents(file, (String.join("\n", all) + "\n")
+                .getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,31 @@
+package gitlet;
+
+/**
+ * An update of a branch that another command changed after it was read.
+ * Nothing is lost: the other command's change stands, and the failed one
+ * may simply be run again.
+ * @author Sam Khano Tim Chan
+ */
+public class StaleRefException extends StateException {
+
+    /**
+     * A failed update of the branch BRANCH.
+     * @param branch branch name
+     */
+    public StaleRefException(String branch) {
+        super("Branch " + branch
+                + " was changed by another command; try again.");
+        _branch = branch;
+    }
+
+    /**
+     * Return the branch that could not be updated.
+     * @return branch name
+     */
+    public String getBranch() {
+        return _branch;
+    }
+
+    /** The branch that could not be updated. */
+    private final String _branch;
+}
@@ -0,0 +1,18 @@
+package gitlet;
+
+/**
+ * A command that the state of the repository or of the working
+ * directory does not allow, such as one that would overwrite an untracked
+ * file or that finds nothing to do.
+ * @author Sam Khano Tim Chan
+ */
+public class StateException extends GitletException {
+
+    /**
+     * A failure reported to the user as MSG.
+     * @param msg message
+     */
+    public StateException(String msg) {
+        super(msg);
+    }
+}
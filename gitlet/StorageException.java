@@ -0,0 +1,17 @@
+package gitlet;
+
+/**
+ * A failure to read or write the files of a repository, or to reach a
+ * remote.
+ * @author Sam Khano Tim Chan
+ */
+public class StorageException extends GitletException {
+
+    /**
+     * A failure reported to the user as MSG.
+     * @param msg message
+     */
+    public StorageException(String msg) {
+        super(msg);
+    }
+}
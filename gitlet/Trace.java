@@ -0,0 +1,287 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Where one command spends its time: wall time by phase, and counts of
+ * the I/O it does. A command is traced when run as
+ * java gitlet.Main --trace[=FILE] ..., or when the environment variable
+ * GITLET_TRACE is 1 or a file name. The trace is printed to the standard
+ * error when it ends, or appended to FILE as one line of JSON.
+ *
+ * Phases are exclusive: time spent writing a file while serializing an
+ * object is charged to writing, not to serializing, and time in no
+ * instrumented phase is charged to "other". The instrumented operations
+ * call enter() and exit(), and count(), which do nothing on a thread that
+ * is not tracing, so they cost one thread-local lookup when tracing is
+ * off. Work handed to other threads, such as the blobs push and fetch
+ * copy in parallel, is charged to the phase the tracing thread waits in,
+ * and its bytes are counted there once the threads finish. Commands a batch runs are part of the batch's trace; the server
+ * and serve commands are not traced, but each command the server runs
+ * is, and its trace goes to the standard error of the client.
+ * @author Sam Khano Tim Chan
+ */
+class Trace {
+
+    /** Option of Main selecting a trace. */
+    static final String OPTION = "--trace";
+
+    /** Environment variable selecting a trace of every command. */
+    static final String ENV = "GITLET_TRACE";
+
+    /** Phases. */
+    static final int OTHER = 0, READ = 1, WRITE = 2, LIST = 3, HASH = 4,
+        SERIALIZE = 5, DESERIALIZE = 6, LOCK = 7, SYNC = 8, COPY = 9;
+
+    /** Names of the phases, by phase. */
+    private static final String[] PHASES = {
+        "other", "read", "write", "list", "hash", "serialize", "deserialize",
+        "lock", "sync", "copy"
+    };
+
+    /** Counters. */
+    static final int OBJECTS_LOADED = 0, OBJECTS_SERIALIZED = 1,
+        BYTES_READ = 2, BYTES_WRITTEN = 3, FILES_LISTED = 4,
+        DIRECTORIES_LISTED = 5, BYTES_HASHED = 6, CACHE_HITS = 7,
+        CACHE_MISSES = 8;
+
+    /** Names of the counters, by counter. */
+    private static final String[] COUNTERS = {
+        "objects loaded", "objects serialized", "bytes read",
+        "bytes written", "files listed", "directories listed",
+        "bytes hashed", "cache hits", "cache misses"
+    };
+
+    /** Commands that serve others and run until stopped, which are not
+     *  traced themselves so that each command they run gets a trace of
+     *  its own. */
+    private static final Set<String> SERVING = Set.of("server", "serve");
+
+    /** The trace of the command this thread is running, if any. */
+    private static final ThreadLocal<Trace> CURRENT = new ThreadLocal<>();
+
+    /**
+     * A trace of the command ARGS, reported to DESTINATION.
+     * @param args command and operands
+     * @param destination file name, or null for the standard error
+     */
+    private Trace(String[] args, String destination) {
+        _command = String.join(" ", args);
+        _destination = destination;
+        _start = _since = System.nanoTime();
+    }
+
+    /**
+     * Return the destination the option OPTION selects: null for the
+     * standard error, or a file name.
+     * @param option --trace or --trace=FILE
+     * @return file name, or null
+     * @throws UsageException if OPTION is malformed
+     */
+    static String destination(String option) {
+        if (option.equals(OPTION)) {
+            return null;
+        } else if (option.startsWith(OPTION + "=")
+                && option.length() > OPTION.length() + 1) {
+            return option.substring(OPTION.length() + 1);
+        }
+        throw new UsageException("Incorrect operands.");
+    }
+
+    /**
+     * Start tracing the command ARGS on this thread, reporting to
+     * DESTINATION, as destination() returns it, or as the environment
+     * selects if not OPTIONED. Return the trace, or null if the command is
+     * not traced, serves other commands, or this thread is already tracing
+     * a command, which then includes this one.
+     * @param args command and operands
+     * @param optioned true iff --trace was given
+     * @param destination file name, or null for the standard error
+     * @return trace, or null
+     */
+    static Trace start(String[] args, boolean optioned, String destination) {
+        if (!optioned) {
+            String env = System.getenv(ENV);
+            if (env == null || env.isEmpty() || env.equals("0")) {
+                return null;
+            }
+            destination = env.equals("1") ? null : env;
+        }
+        if (CURRENT.get() != null
+                || args.length > 0 && SERVING.contains(args[0])) {
+            return null;
+        }
+        Trace trace = new Trace(args, destination);
+        CURRENT.set(trace);
+        return trace;
+    }
+
+    /**
+     * Charge the time since the last change of phase to the current phase
+     * of this thread's trace, if any, and enter PHASE. Pass the result to
+     * exit() when PHASE ends.
+     * @param phase phase entered
+     * @return phase left, or -1 if this thread is not tracing
+     */
+    static int enter(int phase) {
+        Trace trace = CURRENT.get();
+        return trace == null ? -1 : trace.switchTo(phase);
+    }
+
+    /**
+     * Return to the phase PREVIOUS, which enter() returned.
+     * @param previous phase to return to, or -1
+     */
+    static void exit(int previous) {
+        if (previous >= 0) {
+            Trace trace = CURRENT.get();
+            if (trace != null) {
+                trace.switchTo(previous);
+            }
+        }
+    }
+
+    /**
+     * Add N to COUNTER of this thread's trace, if any.
+     * @param counter counter
+     * @param n amount
+     */
+    static void count(int counter, long n) {
+        Trace trace = CURRENT.get();
+        if (trace != null) {
+            trace._counts[counter] += n;
+        }
+    }
+
+    /**
+     * Charge the time since the last change of phase to the current phase,
+     * and enter PHASE.
+     * @param phase phase entered
+     * @return phase left
+     */
+    private int switchTo(int phase) {
+        long now = System.nanoTime();
+        _nanos[_phase] += now - _since;
+        _since = now;
+        int previous = _phase;
+        _phase = phase;
+        return previous;
+    }
+
+    /** Stop tracing, and report the trace. */
+    void finish() {
+        switchTo(OTHER);
+        CURRENT.remove();
+        long total = _since - _start;
+        if (_destination == null) {
+            print(System.err, total);
+            return;
+        }
+        try {
+            Files.write(Paths.get(_destination),
+                    (json(total) + "\n").getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException excp) {
+            System.err.println("Could not write the trace to "
+                    + _destination + ".");
+        }
+    }
+
+    /**
+     * Print this trace, of a command that took TOTAL nanoseconds, to OUT.
+     * @param out stream
+     * @param total nanoseconds
+     */
+    private void print(PrintStream out, long total) {
+        out.printf("Trace of %s: %.1f ms%n", _command, millis(total));
+        for (int p = 0; p < PHASES.length; p++) {
+            if (_nanos[p] > 0) {
+                out.printf("  %-20s %10.1f ms %5.1f%%%n", PHASES[p],
+                        millis(_nanos[p]),
+                        total == 0 ? 0.0 : 100.0 * _nanos[p] / total);
+            }
+        }
+        for (int c = 0; c < COUNTERS.length; c++) {
+            out.printf("  %-20s %10d%n", COUNTERS[c], _counts[c]);
+        }
+    }
+
+    /**
+     * Return this trace, of a command that took TOTAL nanoseconds, as a
+     * JSON object on one line. Names are written with underscores.
+     * @param total nanoseconds
+     * @return JSON
+     */
+    private String json(long total) {
+        StringBuilder result = new StringBuilder("{\"command\": ");
+        quote(result, _command);
+        result.append(String.format(Locale.ROOT,
+                ", \"ms\": %.3f, \"phases\": {", millis(total)));
+        for (int p = 0; p < PHASES.length; p++) {
+            result.append(String.format(Locale.ROOT, "%s\"%s\": %.3f",
+                    p == 0 ? "" : ", ", PHASES[p], millis(_nanos[p])));
+        }
+        result.append("}, \"counters\": {");
+        for (int c = 0; c < COUNTERS.length; c++) {
+            result.append(String.format("%s\"%s\": %d", c == 0 ? "" : ", ",
+                    COUNTERS[c].replace(' ', '_'), _counts[c]));
+        }
+        return result.append("}}").toString();
+    }
+
+    /**
+     * Append S to OUT as a JSON string.
+     * @param out buffer
+     * @param s string
+     */
+    private static void quote(StringBuilder out, String s) {
+        out.append('"');
+        for (char c : s.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < ' ') {
+                out.append(String.format("\\u%04x", (int) c));
+            } else {
+                out.append(c);
+            }
+        }
+        out.append('"');
+    }
+
+    /**
+     * Return NANOS nanoseconds in milliseconds.
+     * @param nanos nanoseconds
+     * @return milliseconds
+     */
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    /** The command traced. */
+    private final String _command;
+
+    /** File the trace is appended to, or null for the standard error. */
+    private final String _destination;
+
+    /** When the command started, in nanoseconds. */
+    private final long _start;
+
+    /** When the current phase was last entered, in nanoseconds. */
+    private long _since;
+
+    /** The current phase. */
+    private int _phase = OTHER;
+
+    /** Nanoseconds spent in each phase. */
+    private final long[] _nanos = new long[PHASES.length];
+
+    /** Counts, by counter. */
+    private final long[] _counts = new long[COUNTERS.length];
+}
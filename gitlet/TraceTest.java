@@ -0,0 +1,99 @@
+package gitlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tests for command tracing.
+ *  @author Sam Khano Tim Chan
+ */
+public class TraceTest {
+
+    /** Directory holding the files under test. */
+    private static final String WORK = "trace-work";
+
+    @Before
+    public void setUp() {
+        tearDown();
+        new File(WORK).mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        if (new File(WORK).exists()) {
+            Utils.recursiveDelete(new File(WORK));
+        }
+    }
+
+    /**
+     * Return the value of the counter NAME in the JSON trace TRACE.
+     * @param trace JSON
+     * @param name counter name, with underscores
+     * @return value
+     */
+    private static long counter(String trace, String name) {
+        Matcher m = Pattern.compile("\"" + name + "\": (\\d+)")
+            .matcher(trace);
+        assertTrue(m.find());
+        return Long.parseLong(m.group(1));
+    }
+
+    @Test
+    public void countersTest() {
+        File out = new File(WORK, "trace.json");
+        File data = new File(WORK, "data");
+        Trace trace = Trace.start(new String[] { "test", "one" }, true,
+                out.getPath());
+        Utils.writeContents(data, new byte[100]);
+        Utils.readContents(data);
+        Utils.sha1("ab", new byte[3]);
+        Utils.plainFilenamesIn(WORK);
+        assertNull(Trace.start(new String[] { "nested" }, true, null));
+        trace.finish();
+        assertEquals(-1, Trace.enter(Trace.READ));
+
+        String json = new String(Utils.readContents(out));
+        assertTrue(json.startsWith("{\"command\": \"test one\", "));
+        assertTrue(json.endsWith("}}\n"));
+        assertEquals(100, counter(json, "bytes_written"));
+        assertEquals(100, counter(json, "bytes_read"));
+        assertEquals(5, counter(json, "bytes_hashed"));
+        assertEquals(1, counter(json, "directories_listed"));
+        assertEquals(1, counter(json, "files_listed"));
+    }
+
+    @Test
+    public void phasesTest() {
+        Trace trace = Trace.start(new String[] { "test" }, true,
+                new File(WORK, "trace.json").getPath());
+        int outer = Trace.enter(Trace.SERIALIZE);
+        int inner = Trace.enter(Trace.WRITE);
+        assertEquals(Trace.SERIALIZE, inner);
+        Trace.exit(inner);
+        Trace.exit(outer);
+        assertEquals(Trace.OTHER, outer);
+        assertEquals(Trace.OTHER, Trace.enter(Trace.OTHER));
+        trace.finish();
+    }
+
+    @Test
+    public void optionTest() {
+        assertNull(Trace.destination("--trace"));
+        assertEquals("t.json", Trace.destination("--trace=t.json"));
+        try {
+            Trace.destination("--trace=");
+            fail();
+        } catch (UsageException excp) {
+            assertEquals("Incorrect operands.", excp.getMessage());
+        }
+    }
+}
@@ -0,0 +1,581 @@
+package gitlet;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Copies history from one .gitlet directory to another, sending only the
+ * objects the receiving side lacks. Objects are always written parents
+ * first, and a commit only after all of its blobs, so a receiver that has
+ * a commit also has every object reachable from it. The sender can
+ * therefore walk back from the tip it wants to send and stop at the first
+ * commit the receiver already has: that commit is their common base, and
+ * nothing older needs to be looked at. A shallow receiver breaks that
+ * rule at its shallow boundary, whose commits it has without their
+ * parents, so the sender is told that boundary, and a transfer with a
+ * depth limit to a shallow receiver walks on through the commits the
+ * receiver has, sending those it lacks, which deepens its history. Each
+ * object is streamed from file
+ * to file through a small fixed buffer, so the memory a transfer needs
+ * does not grow with the size of the history or of the files.
+ * When the two sides are on either end of a connection, the objects are
+ * written to and read from a pack stream instead: a sequence of objects,
+ * each a type byte, an id, a length and the contents, ending with END.
+ * @author Sam Khano Tim Chan
+ */
+class Transfer {
+
+    /** Pack stream type byte marking the end of the stream. */
+    static final byte END = 0;
+
+    /** Pack stream type byte of a blob. */
+    static final byte BLOB = 1;
+
+    /** Pack stream type byte of a commit. */
+    static final byte COMMIT = 2;
+
+    /** Key of the setting giving the number of objects copied at a time
+     *  between directories. */
+    static final String PARALLELISM = "transfer.parallelism";
+
+    /** Default number of objects copied at a time. */
+    static final int DEFAULT_PARALLELISM = 4;
+
+    /** Milliseconds between two progress reports. */
+    private static final long REPORT_INTERVAL = 100;
+
+    /** Size of the buffer used to copy objects from a pack stream. */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * A transfer from the .gitlet directory FROMDIR to the .gitlet
+     * directory TODIR, both ending with a separator. Either is null when
+     * that side is at the other end of a connection.
+     * @param fromDir sending side, or null
+     * @param toDir receiving side, or null
+     */
+    Transfer(String fromDir, String toDir) {
+        _fromDir = fromDir;
+        _toDir = toDir;
+        _shallow = fromDir == null ? new HashSet<>() : Shallow.load(fromDir);
+        _theirShallow = toDir == null ? new HashSet<>() : Shallow.load(toDir);
+    }
+
+    /**
+     * Send at most DEPTH commits from each tip, or all of them if DEPTH is
+     * 0. The oldest commit sent then lacks its parent on the receiving
+     * side, and is listed in boundary().
+     * @param depth largest number of commits to send
+     */
+    void setDepth(int depth) {
+        _depth = depth;
+    }
+
+    /**
+     * Return the commits sent without their parents, either because of
+     * the depth limit or because the sending side is itself shallow. The
+     * receiving side must add them to its shallow boundary.
+     * @return boundary commits
+     */
+    List<String> boundary() {
+        return _boundary;
+    }
+
+    /**
+     * Report progress to OUT, as lines starting with LABEL giving the
+     * numbers of objects and bytes copied so far. With a null OUT, which
+     * is the default, nothing is reported.
+     * @param out where to report, or null
+     * @param label what the transfer is doing
+     */
+    void reportTo(PrintStream out, String label) {
+        _progress = out;
+        _label = label;
+    }
+
+    /**
+     * Hard-link objects into the receiving side instead of copying them
+     * if LINK, falling back to a copy for any object that cannot be linked
+     * (for example because the two sides are on different file systems).
+     * Objects are never modified once written, so both sides can share
+     * them.
+     * @param link whether to link objects
+     */
+    void linkObjects(boolean link) {
+        _link = link;
+    }
+
+    /**
+     * Return the number of objects copied so far.
+     * @return objects copied
+     */
+    synchronized int objects() {
+        return _objects;
+    }
+
+    /**
+     * Return the number of bytes copied so far.
+     * @return bytes copied
+     */
+    synchronized long bytes() {
+        return _bytes;
+    }
+
+    /**
+     * Return true iff the receiving side has the commit COMMITID.
+     * @param commitId SHA-1 of the commit
+     * @return whether it is present
+     */
+    boolean has(String commitId) {
+        return _haves.contains(commitId) || (_toDir != null
+                && Repository.commitFile(_toDir, commitId).isFile());
+    }
+
+    /**
+     * Record that the receiving side has the commits HAVES, and so every
+     * object reachable from them.
+     * @param haves SHA-1s of commits
+     */
+    void addHaves(Collection<String> haves) {
+        _haves.addAll(haves);
+    }
+
+    /**
+     * Record that the receiving side has the commits SHALLOW without their
+     * parents, being a shallow repository with that boundary.
+     * @param shallow SHA-1s of commits
+     */
+    void addShallow(Collection<String> shallow) {
+        _theirShallow.addAll(shallow);
+    }
+
+    /**
+     * Return the ids of the commits reachable from TIP on the sending side
+     * that the receiving side lacks, newest first. This is empty when the
+     * receiver already has TIP, whatever the length of its history, unless
+     * there is a depth limit and the receiver is shallow: the walk then
+     * goes on through the commits it has, down to the depth limit, so that
+     * the commits beyond its boundary are sent. The walk also ends at the
+     * depth limit and at the sender's own shallow boundary, recording the
+     * last commit in boundary() unless the receiver has its parent.
+     * @param tip SHA-1 of the commit to send
+     * @return missing commits
+     */
+    List<String> missingCommits(String tip) {
+        ArrayList<String> missing = new ArrayList<>();
+        boolean deepen = _depth > 0 && !_theirShallow.isEmpty();
+        String id = tip;
+        for (int n = 1; id != null; n += 1) {
+            boolean had = has(id);
+            if (had && !deepen) {
+                break;
+            } else if (!had) {
+                missing.add(id);
+            }
+            String parent = load(id).getParent();
+            if (parent != null && (_shallow.contains(id) || n == _depth)) {
+                if (!has(parent)) {
+                    _boundary.add(id);
+                }
+                break;
+            }
+            id = parent;
+        }
+        return missing;
+    }
+
+    /**
+     * Copy the commits MISSING, newest first as returned by
+     * missingCommits, together with the blobs they use that the receiving
+     * side lacks, oldest commit first.
+     * @param missing commits to copy
+     */
+    void send(List<String> missing) {
+        send(missing, 1);
+    }
+
+    /**
+     * Copy the commits MISSING as send(MISSING) does, copying up to
+     * PARALLELISM blobs at a time. Blobs are independent of each other, so
+     * they are copied concurrently, each skipped without being read if the
+     * receiving side turns out to have it already; the commits are then
+     * copied one by one, oldest first, so that a commit never becomes
+     * visible before its blobs or its parent.
+     * @param missing commits to copy
+     * @param parallelism largest number of blobs copied at a time
+     */
+    void send(List<String> missing, int parallelism) {
+        List<String> paths = objectsToSend(missing);
+        ArrayList<String> commits = new ArrayList<>();
+        ArrayList<String> blobs = new ArrayList<>();
+        for (String path : paths) {
+            (Repository.isCommitPath(path) ? commits : blobs).add(path);
+        }
+        int phase = Trace.enter(Trace.COPY);
+        long copied = 0;
+        try {
+            if (parallelism <= 1 || blobs.size() <= 1) {
+                for (String blob : blobs) {
+                    copied += copy(blob);
+                }
+            } else {
+                copied += copyAll(blobs, parallelism);
+            }
+            for (String commit : commits) {
+                copied += copy(commit);
+            }
+        } finally {
+            Trace.exit(phase);
+            Trace.count(Trace.BYTES_READ, copied);
+            Trace.count(Trace.BYTES_WRITTEN, copied);
+        }
+        done();
+    }
+
+    /**
+     * Copy BLOBS, paths relative to the .gitlet directory, on up to
+     * PARALLELISM threads. The threads do not trace, so the caller
+     * charges the time it waits to its own copy phase and counts the
+     * bytes returned.
+     * @param blobs objects to copy
+     * @param parallelism largest number of objects copied at a time
+     * @return number of bytes copied
+     */
+    private long copyAll(List<String> blobs, int parallelism) {
+        ExecutorService pool = Executors.newFixedThreadPool(
+                Math.min(parallelism, blobs.size()));
+        try {
+            ArrayList<Future<Long>> copies = new ArrayList<>();
+            for (String blob : blobs) {
+                copies.add(pool.submit(() -> copy(blob)));
+            }
+            long copied = 0;
+            for (Future<Long> copy : copies) {
+                copied += copy.get();
+            }
+            return copied;
+        } catch (InterruptedException | ExecutionException excp) {
+            throw new StorageException("Could not copy objects.");
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Write the commits MISSING, newest first as returned by
+     * missingCommits, to OUT as a pack stream, together with the blobs
+     * they use that the receiving side is not known to have.
+     * @param out pack stream
+     * @param missing commits to send
+     * @throws IOException on failure
+     */
+    void writePack(DataOutputStream out, List<String> missing)
+            throws IOException {
+        for (String path : objectsToSend(missing)) {
+            File object = new File(_fromDir + path);
+            boolean commit = Repository.isCommitPath(path);
+            out.writeByte(commit ? COMMIT : BLOB);
+            out.writeUTF(object.getName());
+            out.writeLong(object.length());
+            int phase = Trace.enter(Trace.COPY);
+            try {
+                long bytes = Files.copy(object.toPath(), out);
+                Trace.count(Trace.BYTES_READ, bytes);
+                counted(bytes);
+            } finally {
+                Trace.exit(phase);
+            }
+        }
+        out.writeByte(END);
+        out.flush();
+        done();
+    }
+
+    /**
+     * Read the objects of the pack stream IN into the receiving side,
+     * skipping those it already has. Objects with malformed ids are
+     * refused, so a pack can never write outside the .gitlet directory.
+     * @param in pack stream
+     * @throws IOException on failure or a malformed stream
+     */
+    void readPack(DataInputStream in) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        for (byte type = in.readByte(); type != END; type = in.readByte()) {
+            String id = in.readUTF();
+            long length = in.readLong();
+            if ((type != BLOB && type != COMMIT) || !Utils.isId(id)
+                    || length < 0) {
+                throw new IOException("malformed pack");
+            }
+            File object = new File(_toDir + (type == COMMIT
+                    ? Repository.commitPath(id) : Repository.blobPath(id)));
+            if (object.exists()) {
+                in.skipNBytes(length);
+                continue;
+            }
+            Path temp = Utils.tempFile(object.toPath());
+            int phase = Trace.enter(Trace.COPY);
+            try {
+                try (OutputStream out = new FileOutputStream(temp.toFile())) {
+                    for (long left = length; left > 0;) {
+                        int n = in.read(buffer, 0,
+                                (int) Math.min(buffer.length, left));
+                        if (n < 0) {
+                            throw new EOFException();
+                        }
+                        out.write(buffer, 0, n);
+                        left -= n;
+                    }
+                }
+                Trace.count(Trace.BYTES_WRITTEN, length);
+                Utils.replace(temp, object.toPath());
+            } finally {
+                Trace.exit(phase);
+                Files.deleteIfExists(temp);
+            }
+            counted(length);
+        }
+        done();
+    }
+
+    /**
+     * Return the paths, relative to the .gitlet directory, of the objects
+     * to send for the commits MISSING, in the order they must be written:
+     * each commit's new blobs, then the commit, oldest commit first. Blobs
+     * of the commit MISSING builds on are known to the receiver, and are
+     * left out even when it cannot be asked about them directly. Whether
+     * the receiver has the other blobs is checked as they are copied.
+     * @param missing commits to send, newest first
+     * @return object paths
+     */
+    private List<String> objectsToSend(List<String> missing) {
+        ArrayList<String> paths = new ArrayList<>();
+        HashSet<String> sent = new HashSet<>();
+        String oldest = missing.isEmpty() ? null
+                : missing.get(missing.size() - 1);
+        if (oldest != null && !_boundary.contains(oldest)
+                && !_shallow.contains(oldest)) {
+            String base = load(oldest).getParent();
+            if (base != null) {
+                sent.addAll(load(base).getBlobs().values());
+            }
+        }
+        for (int i = missing.size() - 1; i >= 0; i--) {
+            String commitId = missing.get(i);
+            for (String blobId : load(commitId).getBlobs().values()) {
+                if (sent.add(blobId)) {
+                    paths.add(Repository.blobPath(blobId));
+                }
+            }
+            paths.add(Repository.commitPath(commitId));
+        }
+        return paths;
+    }
+
+    /**
+     * Return true iff the commit ANCESTOR is TIP or one of its ancestors
+     * in the .gitlet directory DIR, looking no further back than its
+     * shallow boundary.
+     * @param dir .gitlet directory
+     * @param ancestor SHA-1 of the possible ancestor
+     * @param tip SHA-1 of the commit to walk back from
+     * @return whether ANCESTOR is reachable from TIP
+     */
+    static boolean isAncestor(String dir, String ancestor, String tip) {
+        return isAncestor(dir, null, ancestor, tip);
+    }
+
+    /**
+     * Return true iff the commit ANCESTOR is TIP or one of its ancestors,
+     * as isAncestor(DIR, ANCESTOR, TIP) does, but finding commits in the
+     * directory INCOMING, laid out as a .gitlet directory, before DIR. A
+     * commit found in neither ends the walk, so a history with a commit
+     * missing does not reach ANCESTOR.
+     * @param dir .gitlet directory
+     * @param incoming directory of objects not yet stored, or null
+     * @param ancestor SHA-1 of the possible ancestor
+     * @param tip SHA-1 of the commit to walk back from
+     * @return whether ANCESTOR is reachable from TIP
+     */
+    static boolean isAncestor(String dir, String incoming, String ancestor,
+            String tip) {
+        TreeSet<String> shallow = Shallow.load(dir);
+        for (String id = tip; id != null;) {
+            if (id.equals(ancestor)) {
+                return true;
+            } else if (shallow.contains(id)) {
+                return false;
+            }
+            File file = Repository.commitFile(dir, id);
+            if (incoming != null
+                    && Repository.commitFile(incoming, id).isFile()) {
+                file = Repository.commitFile(incoming, id);
+            }
+            Commit c = Utils.loadObj(new Commit("temp"), file.getPath());
+            if (c == null) {
+                return false;
+            }
+            id = c.getParent();
+        }
+        return false;
+    }
+
+    /**
+     * Move the objects readPack stored in the directory INCOMING into the
+     * .gitlet directory DIR, blobs before commits, so that no commit is
+     * stored before its blobs. Objects DIR already has are dropped.
+     * @param incoming directory the pack was read into
+     * @param dir .gitlet directory
+     * @throws IOException on failure
+     */
+    static void storeIncoming(String incoming, String dir)
+            throws IOException {
+        for (String sub : new String[] { Repository.BLOBS,
+                Repository.COMMITS }) {
+            List<String> ids = Utils.plainFilenamesIn(incoming + sub);
+            if (ids == null) {
+                continue;
+            }
+            for (String id : ids) {
+                Path object = Paths.get(dir + sub + id);
+                if (!Files.exists(object)) {
+                    Utils.replace(Paths.get(incoming + sub + id), object);
+                }
+            }
+        }
+    }
+
+    /**
+     * Return the commit COMMITID of the sending side.
+     * @param commitId SHA-1 of the commit
+     * @return commit
+     */
+    private Commit load(String commitId) {
+        return Utils.loadObj(new Commit("temp"),
+                Repository.commitFile(_fromDir, commitId).getPath());
+    }
+
+    /**
+     * Copy the object at PATH, relative to the .gitlet directory, from the
+     * sending to the receiving side, and count it, unless the receiving
+     * side already has it. May be called from several threads at once,
+     * so it does not trace; its caller counts the bytes it returns.
+     * @param path path of the object
+     * @return number of bytes copied, or 0 if linked or already there
+     */
+    private long copy(String path) {
+        Path source = Paths.get(_fromDir + path);
+        Path dest = Paths.get(_toDir + path);
+        if (Files.exists(dest)) {
+            return 0;
+        }
+        if (_link) {
+            try {
+                Files.createLink(dest, source);
+                counted(Files.size(source));
+                return 0;
+            } catch (IOException | UnsupportedOperationException excp) {
+                /* Not linkable: copy it instead. */
+            }
+        }
+        Path temp = Utils.tempFile(dest);
+        try (InputStream in = Files.newInputStream(source)) {
+            try {
+                long bytes = Files.copy(in, temp,
+                        StandardCopyOption.REPLACE_EXISTING);
+                counted(bytes);
+                Utils.replace(temp, dest);
+                return bytes;
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException excp) {
+            throw new StorageException("Could not copy object " + path + ".");
+        }
+    }
+
+    /**
+     * Count one more object copied, of BYTES bytes, and report progress
+     * if it is time to.
+     * @param bytes size of the object
+     */
+    private synchronized void counted(long bytes) {
+        _objects += 1;
+        _bytes += bytes;
+        long now = System.currentTimeMillis();
+        if (_progress != null && now - _reported >= REPORT_INTERVAL) {
+            _reported = now;
+            _progress.printf("\r%s: %d objects, %d bytes", _label,
+                    _objects, _bytes);
+            _progress.flush();
+        }
+    }
+
+    /** Report the end of the transfer, if anything was copied. */
+    private void done() {
+        if (_progress != null && _objects > 0) {
+            _progress.printf("\r%s: %d objects, %d bytes, done.%n", _label,
+                    _objects, _bytes);
+        }
+    }
+
+    /** The sending .gitlet directory. */
+    private final String _fromDir;
+
+    /** The receiving .gitlet directory. */
+    private final String _toDir;
+
+    /** True iff objects are hard-linked rather than copied. */
+    private boolean _link;
+
+    /** The sending side's shallow boundary. */
+    private final Set<String> _shallow;
+
+    /** The receiving side's shallow boundary. */
+    private final Set<String> _theirShallow;
+
+    /** Largest number of commits to send from a tip, or 0. */
+    private int _depth;
+
+    /** Commits sent without their parents. */
+    private final ArrayList<String> _boundary = new ArrayList<>();
+
+    /** Commits the receiving side is known to have. */
+    private final HashSet<String> _haves = new HashSet<>();
+
+    /** Where progress is reported, or null. */
+    private PrintStream _progress;
+
+    /** What the transfer is doing, for progress reports. */
+    private String _label;
+
+    /** Time of the last progress report, in milliseconds. */
+    private long _reported;
+
+    /** Number of objects copied. */
+    private int _objects;
+
+    /** Number of bytes copied. */
+    private long _bytes;
+}
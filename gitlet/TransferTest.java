@@ -0,0 +1,174 @@
+package gitlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tests for copying history between .gitlet directories.
+ *  @author Sam Khano Tim Chan
+ */
+public class TransferTest {
+
+    /** Sending .gitlet directory. */
+    private static final String FROM = "transfer-from/";
+
+    /** Receiving .gitlet directory. */
+    private static final String TO = "transfer-to/";
+
+    @Before
+    public void setUp() {
+        tearDown();
+        for (String dir : new String[] { FROM, TO }) {
+            new File(dir + "commits").mkdirs();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        for (String dir : new String[] { FROM, TO }) {
+            if (new File(dir).exists()) {
+                Utils.recursiveDelete(new File(dir));
+            }
+        }
+    }
+
+    /** Store in DIR the commit ID with parent PARENT, tracking the file
+     *  f.txt as the blob BLOB with contents BLOB. */
+    private static void commit(String dir, String id, String parent,
+            String blob) {
+        Commit c = new Commit(id, "", parent);
+        c.setBlobs(Collections.singletonMap("f.txt", blob));
+        Utils.saveObj(c, dir + "commits/" + id);
+        Utils.writeContents(new File(dir + blob), blob.getBytes());
+    }
+
+    @Test
+    public void missingTest() {
+        commit(FROM, "c1", null, "b1");
+        commit(FROM, "c2", "c1", "b2");
+        commit(FROM, "c3", "c2", "b1");
+        commit(TO, "c1", null, "b1");
+        Transfer transfer = new Transfer(FROM, TO);
+        List<String> missing = transfer.missingCommits("c3");
+        assertEquals(Arrays.asList("c3", "c2"), missing);
+
+        File stale = new File(TO + "b1");
+        stale.setLastModified(0);
+        transfer.send(missing);
+        assertTrue(transfer.has("c2"));
+        assertTrue(transfer.has("c3"));
+        assertTrue(new File(TO + "b2").isFile());
+        assertEquals(3, transfer.objects());
+        assertEquals(new File(FROM + "b2").length()
+                + new File(FROM + "commits/c2").length()
+                + new File(FROM + "commits/c3").length(), transfer.bytes());
+        assertEquals(0, stale.lastModified());
+        assertTrue(transfer.missingCommits("c3").isEmpty());
+    }
+
+    @Test
+    public void parallelTest() {
+        String parent = null;
+        for (int i = 0; i < 20; i++) {
+            commit(FROM, "c" + i, parent, "b" + i);
+            parent = "c" + i;
+        }
+        Utils.writeContents(new File(TO + "b3"), "b3".getBytes());
+        Transfer transfer = new Transfer(FROM, TO);
+        transfer.send(transfer.missingCommits(parent), 4);
+        for (int i = 0; i < 20; i++) {
+            assertTrue(transfer.has("c" + i));
+            assertTrue(new File(TO + "b" + i).isFile());
+        }
+        assertEquals(39, transfer.objects());
+    }
+
+    @Test
+    public void tracedTest() {
+        String parent = null;
+        for (int i = 0; i < 8; i++) {
+            commit(FROM, "c" + i, parent, "b" + i);
+            parent = "c" + i;
+        }
+        File out = new File(TO + "trace.json");
+        Trace trace = Trace.start(new String[] { "push" }, true,
+                out.getPath());
+        Transfer transfer = new Transfer(FROM, TO);
+        transfer.send(transfer.missingCommits(parent), 4);
+        trace.finish();
+        String json = new String(Utils.readContents(out));
+        assertTrue(json.contains("\"copy\": "));
+        assertTrue(json.contains("\"bytes_written\": "
+                + transfer.bytes() + ","));
+    }
+
+    @Test
+    public void depthTest() {
+        commit(FROM, "c1", null, "b1");
+        commit(FROM, "c2", "c1", "b2");
+        commit(FROM, "c3", "c2", "b3");
+        Transfer transfer = new Transfer(FROM, TO);
+        transfer.setDepth(2);
+        transfer.send(transfer.missingCommits("c3"));
+        assertEquals(Arrays.asList("c2"), transfer.boundary());
+        assertTrue(transfer.has("c2"));
+        assertFalse(transfer.has("c1"));
+        assertFalse(new File(TO + "b1").exists());
+
+        Shallow.add(TO, transfer.boundary());
+        assertFalse(Transfer.isAncestor(TO, "c1", "c3"));
+        commit(FROM, "c4", "c3", "b4");
+        Transfer back = new Transfer(TO, FROM + "unused/");
+        back.missingCommits("c3");
+        assertEquals(Arrays.asList("c2"), back.boundary());
+    }
+
+    @Test
+    public void deepenTest() {
+        commit(FROM, "c1", null, "b1");
+        commit(FROM, "c2", "c1", "b2");
+        commit(FROM, "c3", "c2", "b3");
+        commit(FROM, "c4", "c3", "b4");
+        Transfer transfer = new Transfer(FROM, TO);
+        transfer.setDepth(1);
+        transfer.send(transfer.missingCommits("c4"));
+        Shallow.add(TO, transfer.boundary());
+        assertEquals(Collections.singleton("c4"), Shallow.load(TO));
+
+        Transfer deeper = new Transfer(FROM, TO);
+        deeper.setDepth(3);
+        List<String> missing = deeper.missingCommits("c4");
+        assertEquals(Arrays.asList("c3", "c2"), missing);
+        deeper.send(missing);
+        Shallow.add(TO, deeper.boundary());
+        assertEquals(Collections.singleton("c2"), Shallow.load(TO));
+        assertTrue(new File(TO + "b2").isFile());
+
+        Transfer full = new Transfer(FROM, TO);
+        full.setDepth(10);
+        full.send(full.missingCommits("c4"));
+        Shallow.add(TO, full.boundary());
+        assertTrue(Shallow.load(TO).isEmpty());
+        assertTrue(Transfer.isAncestor(TO, "c1", "c4"));
+    }
+
+    @Test
+    public void ancestorTest() {
+        commit(FROM, "c1", null, "b1");
+        commit(FROM, "c2", "c1", "b2");
+        assertTrue(Transfer.isAncestor(FROM, "c1", "c2"));
+        assertTrue(Transfer.isAncestor(FROM, "c2", "c2"));
+        assertFalse(Transfer.isAncestor(FROM, "c2", "c1"));
+        commit(FROM, "c4", "c3", "b4");
+        assertFalse(Transfer.isAncestor(FROM, "c1", "c4"));
+    }
+}
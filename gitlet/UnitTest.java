@@ -12,7 +12,12 @@ public class UnitTest {
     /** Run the JUnit tests in the loa package. Add xxxTest.class entries to
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
-        textui.runClasses(UnitTest.class, MainTest.class);
+        textui.runClasses(UnitTest.class, MainTest.class,
+                PathRulesTest.class, DiffTest.class, Merge3Test.class,
+                RenamesTest.class, TransferTest.class, DaemonTest.class,
+                RepositoryTest.class, ServerTest.class, BatchTest.class,
+                GitletTest.class, RefsTest.class,
+                JournalTest.class, TraceTest.class);
     }
 
     /** A dummy test to avoid complaint. */
@@ -0,0 +1,16 @@
+package gitlet;
+
+/**
+ * A command given the wrong operands, or no command at all.
+ * @author Sam Khano Tim Chan
+ */
+public class UsageException extends GitletException {
+
+    /**
+     * A failure reported to the user as MSG.
+     * @param msg message
+     */
+    public UsageException(String msg) {
+        super(msg);
+    }
+}
@@ -1,18 +1,27 @@
 package gitlet;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Formatter;
 import java.util.List;
 import java.util.Set;
@@ -25,19 +34,26 @@ class Utils {
 
     /* SHA-1 HASH VALUES. */
 
+    /** The length of a complete SHA-1 UID as a hexadecimal numeral. */
+    static final int UID_LENGTH = 40;
+
     /** Returns the SHA-1 hash of the concatenation of VALS, which may
      *  be any mixture of byte arrays and Strings. */
     static String sha1(Object... vals) {
+        int phase = Trace.enter(Trace.HASH);
         try {
             MessageDigest md = MessageDigest.getInstance("SHA-1");
             for (Object val : vals) {
+                byte[] bytes;
                 if (val instanceof byte[]) {
-                    md.update((byte[]) val);
+                    bytes = (byte[]) val;
                 } else if (val instanceof String) {
-                    md.update(((String) val).getBytes(StandardCharsets.UTF_8));
+                    bytes = ((String) val).getBytes(StandardCharsets.UTF_8);
                 } else {
                     throw new IllegalArgumentException("improper type to sha1");
                 }
+                md.update(bytes);
+                Trace.count(Trace.BYTES_HASHED, bytes.length);
             }
             Formatter result = new Formatter();
             for (byte b : md.digest()) {
@@ -46,6 +62,8 @@ class Utils {
             return result.toString();
         } catch (NoSuchAlgorithmException excp) {
             throw new IllegalArgumentException("System does not support SHA-1");
+        } finally {
+            Trace.exit(phase);
         }
     }
 
@@ -55,6 +73,12 @@ class Utils {
         return sha1(vals.toArray(new Object[vals.size()]));
     }
 
+    /** Returns true iff ID has the form of a SHA-1 hash value: 40
+     *  lowercase hexadecimal digits. */
+    static boolean isId(String id) {
+        return id.length() == UID_LENGTH && id.matches("[0-9a-f]+");
+    }
+
     /* FILE DELETION */
 
     /** Deletes FILE if it exists and is not a directory.  Returns true
@@ -86,25 +110,85 @@ class Utils {
      *  be a normal file.  Throws IllegalArgumentException
      *  in case of problems. */
     static byte[] readContents(File file) {
-        if (!file.isFile()) {
-            throw new IllegalArgumentException("must be a normal file");
-        }
+        int phase = Trace.enter(Trace.READ);
         try {
-            return Files.readAllBytes(file.toPath());
+            if (!file.isFile()) {
+                throw new IllegalArgumentException("must be a normal file");
+            }
+            byte[] contents = Files.readAllBytes(file.toPath());
+            Trace.count(Trace.BYTES_READ, contents.length);
+            return contents;
         } catch (IOException excp) {
             throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            Trace.exit(phase);
         }
     }
 
     /** Write the entire contents of BYTES to FILE, creating or overwriting
-     *  it as needed.  Throws IllegalArgumentException in case of problems. */
+     *  it as needed.  The bytes go to a temporary file beside FILE that is
+     *  then renamed over it, so that a reader sees either the old contents
+     *  or the new, never part of them.  Throws IllegalArgumentException in
+     *  case of problems. */
     static void writeContents(File file, byte[] bytes) {
+        int phase = Trace.enter(Trace.WRITE);
         try {
             if (file.isDirectory()) {
                 throw
                     new IllegalArgumentException("cannot overwrite directory");
             }
-            Files.write(file.toPath(), bytes);
+            Path temp = tempFile(file.toPath());
+            try {
+                Files.write(temp, bytes);
+                replace(temp, file.toPath());
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            Trace.count(Trace.BYTES_WRITTEN, bytes.length);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            Trace.exit(phase);
+        }
+    }
+
+    /** Suffix of the temporary files that writes go through. */
+    static final String TEMP_SUFFIX = ".gitlet-tmp";
+
+    /** Return the temporary file through which the current thread writes
+     *  FILE: a sibling of FILE, so that it can be renamed over it, and
+     *  named after the process and thread so that no other writer uses
+     *  it.  Directory listings leave such files out. */
+    static Path tempFile(Path file) {
+        return file.resolveSibling(file.getFileName() + "."
+                + ProcessHandle.current().pid() + "-"
+                + Thread.currentThread().getId() + TEMP_SUFFIX);
+    }
+
+    /** Rename TEMP to FILE, replacing FILE if it exists, in one step where
+     *  the file system allows it. */
+    static void replace(Path temp, Path file) throws IOException {
+        try {
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException excp) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /** Replace FILE in the working directory with a copy of the stored
+     *  object BLOB, made by the file system without passing through the
+     *  heap.  FILE is always unlinked first, so a hard link to another
+     *  file is never written through.  Throws IllegalArgumentException
+     *  in case of problems. */
+    static void checkoutContents(File blob, File file) {
+        if (file.isDirectory()) {
+            throw new IllegalArgumentException("cannot overwrite directory");
+        }
+        try {
+            Files.deleteIfExists(file.toPath());
+            Files.copy(blob.toPath(), file.toPath());
+            file.setWritable(true);
         } catch (IOException excp) {
             throw new IllegalArgumentException(excp.getMessage());
         }
@@ -112,25 +196,33 @@ class Utils {
 
     /* DIRECTORIES */
 
-    /** Filter out all but plain files. */
+    /** Filter out all but plain files, and the temporary files of writes
+     *  in progress. */
     private static final FilenameFilter PLAIN_FILES =
         new FilenameFilter() {
             @Override
             public boolean accept(File dir, String name) {
-                return new File(dir, name).isFile();
+                return !name.endsWith(TEMP_SUFFIX)
+                    && new File(dir, name).isFile();
             }
         };
 
     /** Returns a list of the names of all plain files in the directory DIR, in
-     *  lexicographic order as Java Strings.  Returns null if DIR does
-     *  not denote a directory. */
+     *  lexicographic order as Java Strings, leaving out temporary files.
+     *  Returns null if DIR does not denote a directory. */
     static List<String> plainFilenamesIn(File dir) {
-        String[] files = dir.list(PLAIN_FILES);
-        if (files == null) {
-            return null;
-        } else {
+        int phase = Trace.enter(Trace.LIST);
+        try {
+            String[] files = dir.list(PLAIN_FILES);
+            if (files == null) {
+                return null;
+            }
+            Trace.count(Trace.DIRECTORIES_LISTED, 1);
+            Trace.count(Trace.FILES_LISTED, files.length);
             Arrays.sort(files);
             return Arrays.asList(files);
+        } finally {
+            Trace.exit(phase);
         }
     }
 
@@ -141,6 +233,41 @@ class Utils {
         return plainFilenamesIn(new File(dir));
     }
 
+    /** Returns a list of the names of all plain files in the directory DIR
+     *  that are not selected by SKIP, in lexicographic order as Java
+     *  Strings.  Names selected by SKIP are dropped before they are
+     *  examined, so skipped entries cost no further file-system calls.
+     *  Returns null if DIR does not denote a directory. */
+    static List<String> plainFilenamesIn(File dir, PathRules skip) {
+        if (skip.isEmpty()) {
+            return plainFilenamesIn(dir);
+        }
+        int phase = Trace.enter(Trace.LIST);
+        try {
+            String[] names = dir.list();
+            if (names == null) {
+                return null;
+            }
+            ArrayList<String> files = new ArrayList<>();
+            for (String name : names) {
+                if (name.endsWith(TEMP_SUFFIX)
+                        || skip.matches(name, false)) {
+                    continue;
+                }
+                File f = new File(dir, name);
+                if (f.isFile()) {
+                    files.add(name);
+                }
+            }
+            Trace.count(Trace.DIRECTORIES_LISTED, 1);
+            Trace.count(Trace.FILES_LISTED, files.size());
+            Collections.sort(files);
+            return files;
+        } finally {
+            Trace.exit(phase);
+        }
+    }
+
     /**
      * Serialize an object of type T, given the object's SHA-1 code.
      * @param obj type T
@@ -148,15 +275,30 @@ class Utils {
      * @param <T> t
      */
     static <T> void saveObj(T obj, String sha1) {
-        File outFile = new File(sha1);
         try {
-            ObjectOutputStream out = new ObjectOutputStream(
-                    new FileOutputStream(outFile));
+            writeContents(new File(sha1), serialize(obj));
+        } catch (IllegalArgumentException excp) {
+            throw new StorageException("Could not serialize object");
+        }
+    }
+
+    /**
+     * Return OBJ serialized, as saveObj would store it.
+     * @param obj object
+     * @return serialized form
+     */
+    static byte[] serialize(Object obj) {
+        int phase = Trace.enter(Trace.SERIALIZE);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
             out.writeObject(obj);
-            out.close();
         } catch (IOException excp) {
-            Main.error("Could not serialize object");
+            throw new StorageException("Could not serialize object");
+        } finally {
+            Trace.exit(phase);
         }
+        Trace.count(Trace.OBJECTS_SERIALIZED, 1);
+        return bytes.toByteArray();
     }
 
     /**
@@ -171,13 +313,18 @@ class Utils {
     static <T> T loadObj(T tempObj, String sha1) {
         T obj = null;
         File inFile = new File(sha1);
+        int phase = Trace.enter(Trace.DESERIALIZE);
         try {
             ObjectInputStream inp = new ObjectInputStream(
                     new FileInputStream(inFile));
             obj = (T) inp.readObject();
             inp.close();
+            Trace.count(Trace.OBJECTS_LOADED, 1);
+            Trace.count(Trace.BYTES_READ, inFile.length());
         } catch (IOException | ClassNotFoundException excp) {
             obj = null;
+        } finally {
+            Trace.exit(phase);
         }
         return obj;
     }
@@ -229,71 +376,61 @@ class Utils {
     }
 
     /**
-     * Delete all staged files.
+     * Delete all files staged in REPOSITORY.
+     * @param repository repository
      */
-    static void clearStage() {
+    static void clearStage(Repository repository) {
         File file;
-        File staged = new File(Main.getStagedDir());
+        File staged = new File(repository.stagedDir());
         for (String s : plainFilenamesIn(staged)) {
-            file = new File(Main.getStagedDir() + s);
+            file = new File(repository.stagedDir() + s);
             file.delete();
         }
     }
 
     /**
-     * Resolve conflicts.
-     * @param currCommit current commit
-     * @param inC if it is in currCommit
-     * @param mergingCommit given commit
-     * @param inM if it is in mergingCommit
+     * Resolve conflicts by writing file F of the working directory of
+     * REPOSITORY with the blobs CURRBLOB and MERGINGBLOB, either of which
+     * is null if F is absent on that side, between conflict markers. Both
+     * versions are streamed from the object store into the file, so
+     * neither is ever held on the heap as a whole.
+     * @param repository repository
+     * @param currBlob blob in the current commit, or null
+     * @param mergingBlob blob in the given commit, or null
      * @param f name of the file
      */
-    static void resolveConflicts(Commit currCommit, boolean inC,
-            Commit mergingCommit, boolean inM, String f) {
-        try {
-            String head = "<<<<<<< HEAD\n";
-            byte[] contents = head.getBytes();
-            byte[] newContents = contents;
-            if (inC) {
-                String path = currCommit.getBlob(f);
-                byte[] c = readContents(new File(Main.getGitletDir() + path));
-                newContents = concat(contents, c);
+    static void resolveConflicts(Repository repository, String currBlob,
+            String mergingBlob, String f) {
+        File file = repository.file(f);
+        file.delete();
+        try (OutputStream out = new BufferedOutputStream(
+                new FileOutputStream(file))) {
+            out.write(Merge3.HEAD_MARKER.getBytes(StandardCharsets.UTF_8));
+            if (currBlob != null) {
+                transferBlob(repository, currBlob, out);
             }
-            String seperate = "=======\n";
-            byte[] contents2 = concat(newContents, seperate.getBytes());
-            byte[] contents3 = contents2;
-            if (inM) {
-                String path = mergingCommit.getBlob(f);
-                byte[] m = readContents(new File(Main.getGitletDir() + path));
-                contents3 = concat(contents2, m);
+            out.write(Merge3.SEPARATOR.getBytes(StandardCharsets.UTF_8));
+            if (mergingBlob != null) {
+                transferBlob(repository, mergingBlob, out);
             }
-            String end = ">>>>>>>\n";
-            byte[] finalFile = concat(contents3, end.getBytes());
-            Utils.writeContents(new File(f), finalFile);
-        } catch (IllegalArgumentException e) {
-            System.exit(0);
+            out.write(Merge3.END_MARKER.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException excp) {
+            throw new StorageException("Could not write " + f + ".");
         }
     }
 
     /**
-     * Concatenates two byte arrays.
-     * @param a arr
-     * @param b arr
-     * @return new byte arr
+     * Copy the contents of the blob BLOBID of REPOSITORY to OUT.
+     * @param repository repository
+     * @param blobId SHA-1 of the blob
+     * @param out destination
+     * @throws IOException on failure
      */
-    static byte[] concat(byte[] a, byte[] b) {
-        byte[] c;
-        if (a == null) {
-            c = new byte[b.length];
-            System.arraycopy(b, 0, c, 0, b.length);
-        } else if (b == null) {
-            c = new byte[a.length];
-            System.arraycopy(a, 0, c, 0, a.length);
-        } else {
-            c = new byte[a.length + b.length];
-            System.arraycopy(a, 0, c, 0, a.length);
-            System.arraycopy(b, 0, c, a.length, b.length);
+    static void transferBlob(Repository repository, String blobId,
+            OutputStream out) throws IOException {
+        try (InputStream in = new FileInputStream(
+                repository.object(blobId))) {
+            in.transferTo(out);
         }
-        return c;
     }
 }